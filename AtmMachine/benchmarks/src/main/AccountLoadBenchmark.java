@@ -0,0 +1,63 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loads the account data the way Atm.getBankAccountDataFromFile does, through
+ * an AccountDataStore over a temporary directory. Loading is measured both from
+ * the accounts.txt file, as on a first start, and from the binary snapshot
+ * written on every later save.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountLoadBenchmark {
+	@Param({ "10000", "100000" })
+	private int accountCount;
+
+	@Param({ "text", "snapshot" })
+	private String loadedFrom;
+
+	private Path directory;
+
+	@Setup(Level.Trial)
+	public void createAccountData() throws IOException {
+		directory = BenchmarkAccounts.createAccountsDirectory(accountCount);
+		if (loadedFrom.equals("snapshot")) {
+			try (AccountDataStore accountDataStore = BenchmarkAccounts.newDataStore(directory)) {
+				accountDataStore.compact(accountDataStore.load());
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteAccountData() throws IOException {
+		BenchmarkAccounts.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	public BankAccountList load() throws IOException {
+		try (AccountDataStore accountDataStore = BenchmarkAccounts.newDataStore(directory)) {
+			return accountDataStore.load();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saves the account data the way Atm.printUpdatedInfoToBankAccountDataFile
+ * does, compacting every account into a new snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountSaveBenchmark {
+	@Param({ "10000", "100000" })
+	private int accountCount;
+
+	private Path directory;
+	private AccountDataStore accountDataStore;
+	private BankAccountList bankAccounts;
+
+	@Setup(Level.Trial)
+	public void loadAccountData() throws IOException {
+		directory = BenchmarkAccounts.createAccountsDirectory(accountCount);
+		accountDataStore = BenchmarkAccounts.newDataStore(directory);
+		bankAccounts = accountDataStore.load();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteAccountData() throws IOException {
+		accountDataStore.close();
+		BenchmarkAccounts.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	public void save() throws IOException {
+		accountDataStore.compact(bankAccounts);
+	}
+}
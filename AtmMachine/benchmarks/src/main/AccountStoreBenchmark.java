@@ -0,0 +1,101 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the heap BankAccountList with the OffHeapBankAccountList: the cost
+ * of looking up and updating a random account, and how long a full garbage
+ * collection takes while the accounts are live, which is the pause a terminal
+ * would see. The heap each list retains and the direct memory the off-heap list
+ * allocates are printed when the accounts are created.
+ *
+ * For ten million accounts run with -p accountCount=10000000 and enough heap
+ * and direct memory, e.g. -jvmArgs "-Xmx4g -XX:MaxDirectMemorySize=2g".
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g", "-XX:MaxDirectMemorySize=1g" })
+public class AccountStoreBenchmark {
+	private static final int LOOKUPS = 1 << 16;
+
+	@Param({ "heap", "off-heap" })
+	private String backend;
+
+	@Param({ "1000000" })
+	private int accountCount;
+
+	private BankAccountList bankAccounts;
+	private int[] accountNumbers;
+	private int next;
+
+	@Setup
+	public void createAccounts() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		System.gc();
+		long heapBefore = memory.getHeapMemoryUsage().getUsed();
+		BankAccountList emptyList = backend.equals("off-heap") ? new OffHeapBankAccountList() : new BankAccountList();
+		bankAccounts = BenchmarkAccounts.fillAccountList(emptyList, accountCount);
+		System.gc();
+		long heapRetained = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+		long offHeapBytes = bankAccounts instanceof OffHeapBankAccountList
+				? ((OffHeapBankAccountList) bankAccounts).getOffHeapBytes()
+				: 0;
+		System.out.printf("%n%s list of %d accounts: %d MB retained on the heap, %d MB off the heap%n", backend,
+				accountCount, heapRetained >> 20, offHeapBytes >> 20);
+
+		accountNumbers = new int[LOOKUPS];
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < LOOKUPS; i++) {
+			accountNumbers[i] = BenchmarkAccounts.FIRST_ACCOUNT_NUMBER + random.nextInt(accountCount);
+		}
+	}
+
+	@TearDown
+	public void releaseAccounts() {
+		bankAccounts = null;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public long getBalance() {
+		return bankAccounts.getAccount(accountNumbers[next++ & (LOOKUPS - 1)]).getActualBalance();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public BankAccount updateBalance() {
+		BankAccount account = bankAccounts.getAccount(accountNumbers[next++ & (LOOKUPS - 1)]);
+		synchronized (account.getLock()) {
+			account.restoreBalances(account.getActualBalance() + 1, account.getAvailableBalance() + 1);
+		}
+		return account;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 2)
+	@Measurement(iterations = 10)
+	public BankAccountList fullCollectionPause() {
+		System.gc();
+		return bankAccounts;
+	}
+}
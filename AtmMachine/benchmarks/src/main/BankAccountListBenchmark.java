@@ -0,0 +1,65 @@
+package main;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looks up accounts by number in lists of increasing size, in a random order
+ * so the lookups are not all served from the CPU caches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BankAccountListBenchmark {
+	private static final int LOOKUPS = 1 << 16;
+
+	@Param({ "1000", "100000", "1000000" })
+	private int accountCount;
+
+	private BankAccountList bankAccounts;
+	private int[] accountNumbers;
+	private int[] cardNumbers;
+	private int next;
+
+	@Setup
+	public void createAccounts() {
+		bankAccounts = BenchmarkAccounts.newAccountList(accountCount);
+		accountNumbers = new int[LOOKUPS];
+		cardNumbers = new int[LOOKUPS];
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < LOOKUPS; i++) {
+			accountNumbers[i] = BenchmarkAccounts.FIRST_ACCOUNT_NUMBER + random.nextInt(accountCount);
+			cardNumbers[i] = bankAccounts.getAccount(accountNumbers[i]).getCardNumber();
+		}
+	}
+
+	@Benchmark
+	public BankAccount getAccount() {
+		return bankAccounts.getAccount(accountNumbers[next++ & (LOOKUPS - 1)]);
+	}
+
+	@Benchmark
+	public BankAccount getMissingAccount() {
+		return bankAccounts.getAccount(-accountNumbers[next++ & (LOOKUPS - 1)]);
+	}
+
+	@Benchmark
+	public BankAccount getAccountByCardNumber() {
+		return bankAccounts.getAccountByCardNumber(cardNumbers[next++ & (LOOKUPS - 1)]);
+	}
+}
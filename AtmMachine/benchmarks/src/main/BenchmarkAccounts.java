@@ -0,0 +1,72 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Builds the account data the benchmarks run against: accounts numbered from
+ * FIRST_ACCOUNT_NUMBER upwards, written to an accounts.txt file in a temporary
+ * directory laid out the way the ATM lays out its working directory. Every
+ * account shares one PIN hash, since hashing a PIN per account would make
+ * setting up large account counts take minutes.
+ */
+final class BenchmarkAccounts {
+	static final int FIRST_ACCOUNT_NUMBER = 1_000_000;
+	static final long STARTING_BALANCE = Money.fromDollars(10_000);
+	static final int PIN_NUMBER = 1234;
+	static final PinHash PIN_HASH = PinHash.create(PIN_NUMBER);
+
+	private BenchmarkAccounts() {
+	}
+
+	static BankAccount newAccount(int index) {
+		return new BankAccount(FIRST_ACCOUNT_NUMBER + index, PIN_HASH, STARTING_BALANCE,
+				"Benchmark Account " + index);
+	}
+
+	static BankAccountList newAccountList(int accountCount) {
+		return fillAccountList(new BankAccountList(), accountCount);
+	}
+
+	static BankAccountList fillAccountList(BankAccountList bankAccounts, int accountCount) {
+		bankAccounts.ensureCapacity(accountCount);
+		for (int i = 0; i < accountCount; i++) {
+			bankAccounts.addAccount(newAccount(i));
+		}
+		return bankAccounts;
+	}
+
+	/**
+	 * Creates a temporary directory holding an accounts.txt file.
+	 */
+	static Path createAccountsDirectory(int accountCount) throws IOException {
+		Path directory = Files.createTempDirectory("atm-benchmark");
+		try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve("accounts.txt"),
+				StandardCharsets.UTF_8)) {
+			for (int i = 0; i < accountCount; i++) {
+				writer.write(newAccount(i).toString());
+				writer.newLine();
+			}
+		}
+		return directory;
+	}
+
+	static AccountDataStore newDataStore(Path directory) throws IOException {
+		return new AccountDataStore(directory.resolve("accounts.snapshot").toString(),
+				directory.resolve("accounts.txt").toString(), directory.resolve("accounts.journal").toString(),
+				Long.MAX_VALUE);
+	}
+
+	static void deleteDirectory(Path directory) throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+}
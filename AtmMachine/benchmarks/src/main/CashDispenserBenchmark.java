@@ -0,0 +1,67 @@
+package main;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures working out which notes to dispense: from a cached table, building
+ * the table from scratch as happens when a cassette runs low, and reserving and
+ * releasing notes the way a refused withdrawal does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CashDispenserBenchmark {
+	private static final int AMOUNTS = 1 << 10;
+	private static final int[] DENOMINATION_UNITS = { 20, 10, 4, 2, 1 };
+	private static final int[] LOW_NOTE_COUNTS = { 3, 1, 7, 0, 2 };
+
+	private CashDispenser cashDispenser;
+	private long[] amounts;
+	private int next;
+
+	@Setup
+	public void createDispenser() {
+		cashDispenser = CashDispenser.withStandardCassettes();
+		amounts = new long[AMOUNTS];
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < AMOUNTS; i++) {
+			amounts[i] = Money.fromDollars(5 * (1 + random.nextInt(200)));
+		}
+	}
+
+	@Benchmark
+	public int[] findNotes() {
+		return cashDispenser.findNotes(amounts[next++ & (AMOUNTS - 1)]);
+	}
+
+	@Benchmark
+	public int[] reserveAndRelease() {
+		int[] notes = cashDispenser.reserve(amounts[next++ & (AMOUNTS - 1)]);
+		if (notes != null) {
+			cashDispenser.release(notes);
+		}
+		return notes;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Object buildTable() {
+		return new CashDispenser.DispenseTable(DENOMINATION_UNITS, LOW_NOTE_COUNTS,
+				DENOMINATION_UNITS[0] * CashDispenser.MAX_NOTES);
+	}
+}
@@ -0,0 +1,59 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of PIN checks: the plain int comparison used before
+ * PINs were hashed, a full PBKDF2 verification against the PIN hash, and a
+ * verification answered by the PinVerificationCache. Run with several threads
+ * to see how each holds up when many terminals log in at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class PinVerificationBenchmark {
+	private BankAccount account;
+	private PinVerificationCache cache;
+	private int storedPinNumber;
+	private int enteredPinNumber;
+
+	@Setup
+	public void createAccount() {
+		account = BenchmarkAccounts.newAccount(0);
+		cache = new PinVerificationCache(1 << 16, TimeUnit.MINUTES.toNanos(5));
+		cache.verify(account, BenchmarkAccounts.PIN_NUMBER);
+		storedPinNumber = BenchmarkAccounts.PIN_NUMBER;
+		enteredPinNumber = BenchmarkAccounts.PIN_NUMBER;
+	}
+
+	@Benchmark
+	public boolean plainCompare() {
+		return storedPinNumber == enteredPinNumber;
+	}
+
+	@Benchmark
+	public boolean hashedVerify() {
+		return account.isCorrectPin(enteredPinNumber);
+	}
+
+	@Benchmark
+	public boolean cachedVerify() {
+		return cache.verify(account, enteredPinNumber);
+	}
+}
@@ -0,0 +1,59 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders the receipt of a deposit with Atm.printReceipt into a stream that
+ * discards it, so only the formatting is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiptBenchmark {
+	private Path directory;
+	private AccountLedger ledger;
+	private Atm atm;
+
+	@Setup(Level.Trial)
+	public void depositIntoAccount() throws IOException {
+		directory = BenchmarkAccounts.createAccountsDirectory(1000);
+		AccountDataStore accountDataStore = BenchmarkAccounts.newDataStore(directory);
+		ledger = new AccountLedger(accountDataStore.load(), accountDataStore);
+		atm = new Atm(new TransactionEngine(ledger), new PrintStream(OutputStream.nullOutputStream()), false);
+		atm.acceptAccountNumber(String.valueOf(BenchmarkAccounts.FIRST_ACCOUNT_NUMBER));
+		atm.acceptPinNumber(String.valueOf(BenchmarkAccounts.PIN_NUMBER));
+		atm.acceptTransactionAmount("25");
+		atm.depositTransactionAmountIntoAccount();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteAccountData() throws IOException {
+		ledger.close();
+		BenchmarkAccounts.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	public void printReceipt() {
+		atm.printReceipt();
+	}
+}
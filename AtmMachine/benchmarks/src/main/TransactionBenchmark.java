@@ -0,0 +1,67 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Deposits into and withdraws from an account, both directly through
+ * BankAccount.setAccountBalance and through the AccountLedger, which also
+ * journals each transaction and forces it to disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+	private static final long AMOUNT = Money.fromDollars(25);
+
+	private BankAccount account;
+	private Path directory;
+	private AccountLedger ledger;
+	private BankAccount ledgerAccount;
+
+	@Setup(Level.Trial)
+	public void createAccounts() throws IOException {
+		account = BenchmarkAccounts.newAccount(0);
+		directory = BenchmarkAccounts.createAccountsDirectory(1000);
+		AccountDataStore accountDataStore = BenchmarkAccounts.newDataStore(directory);
+		ledger = new AccountLedger(accountDataStore.load(), accountDataStore);
+		ledgerAccount = ledger.getAccount(BenchmarkAccounts.FIRST_ACCOUNT_NUMBER);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteAccountData() throws IOException {
+		ledger.close();
+		BenchmarkAccounts.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	public long depositAndWithdraw() {
+		account.setAccountBalance(account.getActualBalance() + AMOUNT);
+		account.setAccountBalance(account.getActualBalance() - AMOUNT);
+		return account.getAvailableBalance();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public boolean ledgerDepositAndWithdraw() throws IOException {
+		ledger.deposit(ledgerAccount, AMOUNT);
+		return ledger.withdraw(ledgerAccount, AMOUNT).isApproved();
+	}
+}
@@ -0,0 +1,74 @@
+package main;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of taking transaction numbers from many threads at
+ * once: a new Random per number, a thread-local random number, and an ID from
+ * the shared lock-free TransactionIdGenerator. Also measures how much the
+ * TransactionDeduplicator adds to each transaction, both for new IDs and for
+ * retries of an ID already applied.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class TransactionIdBenchmark {
+	private static final TransactionResult RESULT = TransactionResult.withoutAccount(TransactionStatus.APPROVED,
+			TransactionEngine.DEPOSIT);
+	private static final String REQUEST = "1000001 100";
+
+	private TransactionIdGenerator generator;
+	private TransactionDeduplicator deduplicator;
+	private long appliedId;
+
+	@Setup
+	public void createGenerator() throws Exception {
+		generator = new TransactionIdGenerator(1);
+		deduplicator = new TransactionDeduplicator(1 << 16, new AtmMetrics());
+		appliedId = generator.nextId();
+		deduplicator.applyOnce(appliedId, TransactionEngine.DEPOSIT, REQUEST, () -> RESULT);
+	}
+
+	@Benchmark
+	public long newRandom() {
+		return new Random().nextInt(Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public long threadLocalRandom() {
+		return ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public long generatedId() {
+		return generator.nextId();
+	}
+
+	@Benchmark
+	public TransactionResult deduplicateNewId() throws Exception {
+		return deduplicator.applyOnce(generator.nextId(), TransactionEngine.DEPOSIT, REQUEST, () -> RESULT);
+	}
+
+	@Benchmark
+	public TransactionResult deduplicateRetry() throws Exception {
+		return deduplicator.applyOnce(appliedId, TransactionEngine.DEPOSIT, REQUEST, () -> RESULT);
+	}
+}
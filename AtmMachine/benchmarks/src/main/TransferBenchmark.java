@@ -0,0 +1,82 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs transfers between random pairs of accounts through a shared
+ * AccountLedger from many threads at once. With two accounts every transfer
+ * contends for the same pair of locks, and with more accounts the pairs overlap
+ * less and less. Each transfer is journaled and committed, with concurrent
+ * commits sharing disk flushes as they do for terminals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class TransferBenchmark {
+	private static final long AMOUNT = Money.fromDollars(1);
+
+	@Param({ "heap", "off-heap" })
+	private String backend;
+
+	@Param({ "2", "16", "1024" })
+	private int accountCount;
+
+	private Path directory;
+	private AccountLedger ledger;
+	private BankAccount[] accounts;
+
+	@Setup(Level.Trial)
+	public void createAccounts() throws IOException {
+		directory = BenchmarkAccounts.createAccountsDirectory(accountCount);
+		AccountDataStore accountDataStore = BenchmarkAccounts.newDataStore(directory);
+		BankAccountList emptyList = backend.equals("off-heap") ? new OffHeapBankAccountList() : new BankAccountList();
+		ledger = new AccountLedger(accountDataStore.load(emptyList), accountDataStore);
+		accounts = new BankAccount[accountCount];
+		for (int i = 0; i < accountCount; i++) {
+			accounts[i] = ledger.getAccount(BenchmarkAccounts.FIRST_ACCOUNT_NUMBER + i);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteAccountData() throws IOException {
+		ledger.close();
+		BenchmarkAccounts.deleteDirectory(directory);
+	}
+
+	/**
+	 * Each thread's own choice of account pairs.
+	 */
+	@State(Scope.Thread)
+	public static class Pairs {
+		private final SplittableRandom random = new SplittableRandom();
+	}
+
+	@Benchmark
+	public boolean transfer(Pairs pairs) throws IOException {
+		int from = pairs.random.nextInt(accountCount);
+		int to = (from + 1 + pairs.random.nextInt(accountCount - 1)) % accountCount;
+		return ledger.transfer(accounts[from], accounts[to], AMOUNT).isApproved();
+	}
+}
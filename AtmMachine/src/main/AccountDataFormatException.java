@@ -0,0 +1,41 @@
+package main;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a line of the account data file cannot be parsed into a
+ * BankAccount.
+ */
+public class AccountDataFormatException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final long lineNumber;
+	private final String problem;
+
+	public AccountDataFormatException(long lineNumber, String problem) {
+		super("Line " + lineNumber + ": " + problem);
+		this.lineNumber = lineNumber;
+		this.problem = problem;
+	}
+
+	/**
+	 * Gets the 1-based number of the malformed line.
+	 *
+	 * @return the line number.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Creates a copy of this exception with its line number shifted by an offset,
+	 * used when the line was counted from the start of a section of the file rather
+	 * than from the start of the file itself.
+	 *
+	 * @param lineOffset: the number of lines that precede the section.
+	 * @return the exception with the adjusted line number.
+	 */
+	public AccountDataFormatException withLineOffset(long lineOffset) {
+		return new AccountDataFormatException(lineNumber + lineOffset, problem);
+	}
+}
@@ -0,0 +1,266 @@
+package main;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the account data durable. Every deposit and withdrawal is appended to
+ * a transaction journal as it happens, and the accounts are periodically
+ * compacted into a new binary snapshot, after which the journal starts over.
+ * Loading reads the last snapshot and replays the journal on top of it. Until
+ * the first snapshot has been written, the accounts are loaded from the text
+ * account data file instead.
+ *
+ * Compaction rotates the journal before taking the snapshot rather than
+ * stopping transactions, so the snapshot may already contain some of the
+ * transactions journaled after the rotation. Replaying those records on top of
+ * it is harmless because each record holds absolute balances.
+ *
+ * A compaction falls due once the journal has grown to half the size of the
+ * snapshot, so the time spent rewriting the snapshot stays in proportion to
+ * the transactions it absorbs and a restart never replays much more than it
+ * loads. The committing thread that notices a compaction is due only hands it
+ * to a background thread, so no session waits for the snapshot to be written.
+ */
+public class AccountDataStore implements AutoCloseable {
+	private static final long DEFAULT_MIN_COMPACTION_BYTES = 1024 * 1024;
+	private static final int SNAPSHOT_BYTES_PER_JOURNAL_BYTE = 2;
+
+	private final Path snapshotFile;
+	private final Path textFile;
+	private final TransactionJournal journal;
+	private final long minCompactionBytes;
+	private final AtomicBoolean isCompacting;
+	private final ExecutorService compactionExecutor;
+	private final AtmMetrics metrics;
+	private volatile long snapshotBytes;
+	private String loadedFileName;
+	private long bytesLoaded;
+	private long loadElapsedNanos;
+	private long journalRecordsReplayed;
+
+	public AccountDataStore(String snapshotFileName, String textFileName, String journalFileName)
+			throws IOException {
+		this(snapshotFileName, textFileName, journalFileName, DEFAULT_MIN_COMPACTION_BYTES);
+	}
+
+	/**
+	 * @param minCompactionBytes: the size the journal must reach before it is
+	 *        compacted, however small the snapshot is.
+	 */
+	public AccountDataStore(String snapshotFileName, String textFileName, String journalFileName,
+			long minCompactionBytes) throws IOException {
+		this(snapshotFileName, textFileName, journalFileName, minCompactionBytes, new AtmMetrics());
+	}
+
+	/**
+	 * @param metrics: where load and save latencies are recorded.
+	 */
+	public AccountDataStore(String snapshotFileName, String textFileName, String journalFileName,
+			long minCompactionBytes, AtmMetrics metrics) throws IOException {
+		this.snapshotFile = Paths.get(snapshotFileName);
+		this.textFile = Paths.get(textFileName);
+		this.journal = new TransactionJournal(journalFileName);
+		this.minCompactionBytes = minCompactionBytes;
+		this.isCompacting = new AtomicBoolean();
+		this.compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "account-compaction");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Rebuilds the accounts from the last snapshot and the transactions journaled
+	 * since it was written. A snapshot in an older format is rewritten straight
+	 * away. Plain PINs from before PINs were hashed are refused rather than
+	 * hashed here, since that would hold up every start for hours on a large
+	 * file; AccountSnapshotConverter hashes them once ahead of time.
+	 *
+	 * @return a list of all the current BankAccounts.
+	 */
+	public BankAccountList load() throws IOException {
+		return load(new BankAccountList());
+	}
+
+	/**
+	 * Rebuilds the accounts into a given list, such as an OffHeapBankAccountList.
+	 *
+	 * @param bankAccounts: the empty list to add the accounts to.
+	 * @return the list, holding all the current BankAccounts.
+	 */
+	public BankAccountList load(BankAccountList bankAccounts) throws IOException {
+		long startTime = System.nanoTime();
+		boolean isOlderSnapshot = false;
+		if (Files.exists(snapshotFile)) {
+			loadedFileName = snapshotFile.toString();
+			isOlderSnapshot = AccountSnapshot.isOlderFormat(snapshotFile);
+			AccountSnapshot.read(snapshotFile, bankAccounts);
+		} else {
+			loadedFileName = textFile.toString();
+			new AccountFileLoader(loadedFileName).load(bankAccounts);
+		}
+		bytesLoaded = Files.size(Paths.get(loadedFileName));
+		snapshotBytes = bytesLoaded;
+		journalRecordsReplayed = journal.replay(bankAccounts);
+		if (isOlderSnapshot || journal.hasSealedFile() || journal.isOlderFormat()) {
+			compact(bankAccounts);
+		}
+		loadElapsedNanos = System.nanoTime() - startTime;
+		metrics.recordLatency(AtmMetrics.Operation.LOAD, loadElapsedNanos);
+		return bankAccounts;
+	}
+
+	/**
+	 * Journals a deposit or withdrawal that has just been applied to an account.
+	 * The caller must hold the account's lock so that records for the same account
+	 * reach the journal in the order the transactions were applied.
+	 *
+	 * @param transactionType: TransactionJournal.DEPOSIT, WITHDRAWAL or
+	 *        HOLD_RELEASE.
+	 * @param account: the account after the transaction was applied.
+	 * @param amount: the amount of the transaction in cents.
+	 * @return the journal sequence number to pass to commitTransactions.
+	 */
+	public long appendTransaction(byte transactionType, BankAccount account, long amount) throws IOException {
+		return journal.append(transactionType, account, amount);
+	}
+
+	/**
+	 * Adds a transfer to the transaction journal as one pair of records. The
+	 * caller must hold the locks of both accounts.
+	 *
+	 * @param fromAccount: the account paying, after the transfer was applied.
+	 * @param toAccount: the account paid, after the transfer was applied.
+	 * @param amount: the amount transferred in cents.
+	 * @return the journal sequence number to pass to commitTransactions.
+	 */
+	public long appendTransfer(BankAccount fromAccount, BankAccount toAccount, long amount) throws IOException {
+		return journal.appendTransfer(fromAccount, toAccount, amount);
+	}
+
+	/**
+	 * Makes journaled transactions durable, starting a compaction of the accounts
+	 * into a new snapshot in the background once the journal has grown large
+	 * enough. This should be called without holding any account's lock.
+	 *
+	 * @param sequence: the sequence number returned by appendTransaction.
+	 * @param bankAccounts: all the accounts, used if a compaction is due.
+	 */
+	public void commitTransactions(long sequence, BankAccountList bankAccounts) throws IOException {
+		journal.commit(sequence);
+		if (isCompactionDue() && isCompacting.compareAndSet(false, true)) {
+			compactionExecutor.execute(() -> compactInBackground(bankAccounts));
+		}
+	}
+
+	/**
+	 * Checks if the journal has grown large enough, compared to the snapshot, to
+	 * be compacted away.
+	 *
+	 * @return {true} if a compaction is due; {false} otherwise.
+	 */
+	private boolean isCompactionDue() {
+		long journalBytes = journal.getByteCount();
+		return journalBytes >= minCompactionBytes && journalBytes * SNAPSHOT_BYTES_PER_JOURNAL_BYTE >= snapshotBytes;
+	}
+
+	/**
+	 * Compacts on the compaction thread. A compaction that fails leaves the
+	 * journal to be replayed as before and is tried again once the next commit
+	 * finds one due.
+	 */
+	private void compactInBackground(BankAccountList bankAccounts) {
+		try {
+			compact(bankAccounts);
+		} catch (IOException | RuntimeException e) {
+			metrics.recordEvent(AtmMetrics.Event.COMPACTION_FAILED);
+		} finally {
+			isCompacting.set(false);
+		}
+	}
+
+	/**
+	 * Writes every account to a new snapshot and then deletes the journal records
+	 * it contains. The journal is rotated first, the snapshot is written to a
+	 * temporary file that atomically replaces the old one, and only then is the
+	 * sealed journal file deleted, so a crash at any point leaves a snapshot and
+	 * journal files that replay to the same balances.
+	 *
+	 * @param bankAccounts: the accounts to write.
+	 */
+	public synchronized void compact(BankAccountList bankAccounts) throws IOException {
+		long startTime = System.nanoTime();
+		if (!journal.hasSealedFile()) {
+			journal.rotate();
+		}
+		Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+		AccountSnapshot.write(temporaryFile, bankAccounts);
+		Files.move(temporaryFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		journal.deleteSealedFile();
+		snapshotBytes = Files.size(snapshotFile);
+		metrics.recordSince(AtmMetrics.Operation.SAVE, startTime);
+	}
+
+	/**
+	 * Gets the name of the file the accounts were last loaded from.
+	 *
+	 * @return the snapshot file name, or the text file name before the first
+	 *         snapshot exists.
+	 */
+	public String getLoadedFileName() {
+		return loadedFileName;
+	}
+
+	public long getBytesLoaded() {
+		return bytesLoaded;
+	}
+
+	public long getLoadElapsedNanos() {
+		return loadElapsedNanos;
+	}
+
+	/**
+	 * Gets the rate at which the last load read the account data.
+	 *
+	 * @return the load throughput in megabytes per second.
+	 */
+	public double getLoadMegabytesPerSecond() {
+		double seconds = Math.max(loadElapsedNanos, 1) / 1_000_000_000.0;
+		return bytesLoaded / (1024.0 * 1024.0) / seconds;
+	}
+
+	public long getJournalRecordsReplayed() {
+		return journalRecordsReplayed;
+	}
+
+	public AtmMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Waits for a compaction running in the background to finish and closes the
+	 * journal.
+	 */
+	@Override
+	public void close() throws IOException {
+		compactionExecutor.shutdown();
+		try {
+			compactionExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a compaction to finish");
+		} finally {
+			journal.close();
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Loads the account data file by memory-mapping it and parsing the records
+ * straight from the mapped bytes. The file is split into chunks that end on line
+ * boundaries, the chunks are parsed in parallel on a fork-join pool and the
+ * results are merged back together in file order.
+ */
+public class AccountFileLoader {
+	private static final long MAX_CHUNK_SIZE = 1L << 28;
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final int BOUNDARY_SCAN_SIZE = 8192;
+
+	private final Path accountsFile;
+	private final ForkJoinPool pool;
+	private boolean hashesPlainPins;
+	private long bytesLoaded;
+	private int accountsLoaded;
+	private long elapsedNanos;
+
+	public AccountFileLoader(String fileName) {
+		this(fileName, ForkJoinPool.commonPool());
+	}
+
+	public AccountFileLoader(String fileName, ForkJoinPool pool) {
+		this.accountsFile = Paths.get(fileName);
+		this.pool = pool;
+	}
+
+	/**
+	 * Hashes plain PINs left from before PINs were hashed instead of refusing
+	 * them, such as when converting an old file once.
+	 *
+	 * @param hashesPlainPins: whether plain PINs are hashed.
+	 */
+	public void setHashesPlainPins(boolean hashesPlainPins) {
+		this.hashesPlainPins = hashesPlainPins;
+	}
+
+	/**
+	 * Creates the BankAccountList containing a BankAccount for every record of the
+	 * account data file.
+	 *
+	 * @return a list of all the BankAccounts in the file.
+	 * @throws AccountDataFormatException if any line of the file is malformed.
+	 * @throws IOException                if the file cannot be read.
+	 */
+	public BankAccountList load() throws IOException {
+		return load(new BankAccountList());
+	}
+
+	/**
+	 * Adds a BankAccount for every record of the account data file to a list.
+	 *
+	 * @param bankAccounts: the empty list to add the accounts to.
+	 * @return the list.
+	 * @throws AccountDataFormatException if any line of the file is malformed.
+	 * @throws IOException                if the file cannot be read.
+	 */
+	public BankAccountList load(BankAccountList bankAccounts) throws IOException {
+		long startTime = System.nanoTime();
+		try (FileChannel channel = FileChannel.open(accountsFile, StandardOpenOption.READ)) {
+			long[] chunkStarts = findChunkStarts(channel);
+			ChunkResults results = new ChunkResults(chunkStarts.length - 1);
+			pool.invoke(new ParseChunks(channel, chunkStarts, results, hashesPlainPins, 0, chunkStarts.length - 1));
+			results.rethrowFirstFailure();
+			results.mergeInto(bankAccounts, accountsFile);
+			bytesLoaded = channel.size();
+		}
+		accountsLoaded = bankAccounts.size();
+		elapsedNanos = System.nanoTime() - startTime;
+		return bankAccounts;
+	}
+
+	/**
+	 * Splits the file into roughly equal chunks, moving each split point forward
+	 * to the start of the next line so that no record is split between two chunks.
+	 *
+	 * @return the start offset of every chunk followed by the size of the file.
+	 */
+	private long[] findChunkStarts(FileChannel channel) throws IOException {
+		long fileSize = channel.size();
+		long targetChunkSize = fileSize / ((long) pool.getParallelism() * CHUNKS_PER_THREAD);
+		targetChunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, targetChunkSize));
+
+		List<Long> chunkStarts = new ArrayList<>();
+		long chunkStart = 0;
+		while (chunkStart < fileSize) {
+			chunkStarts.add(chunkStart);
+			chunkStart = findNextLineStart(channel, chunkStart + targetChunkSize, fileSize);
+		}
+		chunkStarts.add(fileSize);
+
+		long[] starts = new long[chunkStarts.size()];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = chunkStarts.get(i);
+		}
+		return starts;
+	}
+
+	/**
+	 * Finds the offset just past the first newline at or after a position.
+	 */
+	private static long findNextLineStart(FileChannel channel, long position, long fileSize) throws IOException {
+		ByteBuffer scanBuffer = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+		long scanPosition = position - 1;
+		while (scanPosition < fileSize) {
+			scanBuffer.clear();
+			int bytesRead = channel.read(scanBuffer, scanPosition);
+			for (int i = 0; i < bytesRead; i++) {
+				if (scanBuffer.get(i) == '\n') {
+					return scanPosition + i + 1;
+				}
+			}
+			scanPosition += Math.max(bytesRead, 1);
+		}
+		return fileSize;
+	}
+
+	public int getAccountsLoaded() {
+		return accountsLoaded;
+	}
+
+	public long getBytesLoaded() {
+		return bytesLoaded;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Gets the rate at which the last load read the account data file.
+	 *
+	 * @return the load throughput in megabytes per second.
+	 */
+	public double getMegabytesPerSecond() {
+		double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000.0;
+		return bytesLoaded / (1024.0 * 1024.0) / seconds;
+	}
+
+	/**
+	 * The accounts, line counts and failures of every chunk, kept by chunk index so
+	 * that the original record order survives the parallel parse.
+	 */
+	private static class ChunkResults {
+		private final List<List<BankAccount>> accounts;
+		private final long[] linesParsed;
+		private final AccountDataFormatException[] failures;
+		private final IOException[] readFailures;
+
+		ChunkResults(int chunkCount) {
+			this.accounts = new ArrayList<>(chunkCount);
+			for (int i = 0; i < chunkCount; i++) {
+				accounts.add(null);
+			}
+			this.linesParsed = new long[chunkCount];
+			this.failures = new AccountDataFormatException[chunkCount];
+			this.readFailures = new IOException[chunkCount];
+		}
+
+		/**
+		 * Throws the failure of the earliest failed chunk, converting its line number
+		 * to a line number within the whole file. Every chunk before it was parsed to
+		 * the end, so their line counts are complete.
+		 */
+		void rethrowFirstFailure() throws IOException {
+			long linesBeforeChunk = 0;
+			for (int i = 0; i < failures.length; i++) {
+				if (readFailures[i] != null) {
+					throw readFailures[i];
+				}
+				if (failures[i] != null) {
+					throw failures[i].withLineOffset(linesBeforeChunk);
+				}
+				linesBeforeChunk += linesParsed[i];
+			}
+		}
+
+		void mergeInto(BankAccountList bankAccounts, Path accountsFile) throws IOException {
+			int totalAccounts = 0;
+			for (List<BankAccount> chunkAccounts : accounts) {
+				totalAccounts += chunkAccounts.size();
+			}
+			bankAccounts.ensureCapacity(totalAccounts);
+			for (List<BankAccount> chunkAccounts : accounts) {
+				for (BankAccount account : chunkAccounts) {
+					try {
+						bankAccounts.addAccount(account);
+					} catch (IllegalArgumentException e) {
+						throw new IOException(accountsFile + ": " + e.getMessage());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses a range of chunks, splitting the range in half until a single chunk
+	 * is left.
+	 */
+	private static class ParseChunks extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long[] chunkStarts;
+		private final ChunkResults results;
+		private final boolean hashesPlainPins;
+		private final int firstChunk;
+		private final int endChunk;
+
+		ParseChunks(FileChannel channel, long[] chunkStarts, ChunkResults results, boolean hashesPlainPins,
+				int firstChunk, int endChunk) {
+			this.channel = channel;
+			this.chunkStarts = chunkStarts;
+			this.results = results;
+			this.hashesPlainPins = hashesPlainPins;
+			this.firstChunk = firstChunk;
+			this.endChunk = endChunk;
+		}
+
+		@Override
+		protected void compute() {
+			int chunkCount = endChunk - firstChunk;
+			if (chunkCount > 1) {
+				int middleChunk = firstChunk + chunkCount / 2;
+				invokeAll(new ParseChunks(channel, chunkStarts, results, hashesPlainPins, firstChunk, middleChunk),
+						new ParseChunks(channel, chunkStarts, results, hashesPlainPins, middleChunk, endChunk));
+			} else if (chunkCount == 1) {
+				parseChunk(firstChunk);
+			}
+		}
+
+		private void parseChunk(int chunk) {
+			long chunkStart = chunkStarts[chunk];
+			long chunkSize = chunkStarts[chunk + 1] - chunkStart;
+			if (chunkSize > Integer.MAX_VALUE) {
+				results.failures[chunk] = new AccountDataFormatException(1, "the line is too long");
+				return;
+			}
+			AccountRecordParser parser = null;
+			try {
+				MappedByteBuffer chunkBuffer = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkSize);
+				parser = new AccountRecordParser(chunkBuffer, 0, (int) chunkSize, hashesPlainPins);
+				results.accounts.set(chunk, parser.parseAll());
+			} catch (AccountDataFormatException e) {
+				results.failures[chunk] = e;
+			} catch (IOException e) {
+				results.readFailures[chunk] = e;
+			}
+			if (parser != null) {
+				results.linesParsed[chunk] = parser.getLinesParsed();
+			}
+		}
+	}
+}
@@ -0,0 +1,405 @@
+package main;
+
+import java.io.IOException;
+
+/**
+ * The thread-safe entry point for changing account balances, shared by every
+ * ATM session in the JVM. Each update runs under the lock of the account it
+ * touches, so transactions on the same account are applied one at a time while
+ * the balance checks and updates of different accounts can run side by side.
+ * The lock is also held while the transaction is appended to the journal,
+ * keeping each account's journal records in the order they were applied.
+ * Committing the journal to disk happens after the lock is released.
+ *
+ * Transactions on different accounts still wait for one another at a few
+ * shared points: the journal's append lock, which every record is written
+ * under, and its commit lock, which one thread holds while forcing a group of
+ * records to disk; the TransactionHistory's write lock while an entry is
+ * appended; the WithdrawalLimiter's striped locks when two withdrawals hash to
+ * the same stripe; and, with an OffHeapBankAccountList, the fixed pool of
+ * account locks, which unrelated accounts may share.
+ *
+ * A transfer holds the locks of both accounts it touches, taken in the order of
+ * their lock ranks. Every thread taking two locks takes them in the same order,
+ * so concurrent transfers between overlapping accounts cannot deadlock.
+ *
+ * A transaction takes effect when its record is appended to the journal. The
+ * balances are changed first so that the record carries them, and are put back
+ * under the same lock if the append fails, in which case the transaction is
+ * refused with a TransactionNotAppliedException and may safely be retried. A
+ * failure once the record is appended, such as while committing, leaves the
+ * transaction applied.
+ *
+ * When the ledger has a TransactionHistory, every applied deposit and
+ * withdrawal is also appended to it under the same lock. Once hold clearing is
+ * started, the held part of every deposit is released after the hold period.
+ */
+public class AccountLedger implements AutoCloseable {
+	private final BankAccountList bankAccounts;
+	private final AccountDataStore accountDataStore;
+	private final TransactionHistory history;
+	private volatile HoldClearingScheduler holdClearing;
+	private volatile WithdrawalLimiter withdrawalLimiter;
+
+	public AccountLedger(BankAccountList bankAccounts, AccountDataStore accountDataStore) {
+		this(bankAccounts, accountDataStore, null);
+	}
+
+	/**
+	 * @param history: the history to record applied transactions in, or null to
+	 *        keep no history.
+	 */
+	public AccountLedger(BankAccountList bankAccounts, AccountDataStore accountDataStore,
+			TransactionHistory history) {
+		this.bankAccounts = bankAccounts;
+		this.accountDataStore = accountDataStore;
+		this.history = history;
+	}
+
+	/**
+	 * Gets a BankAccount with the matching account number.
+	 *
+	 * @param accountNumber: the account number of the account to be retrieved.
+	 * @return the BankAccount with the matching account number if found; null
+	 *         otherwise.
+	 */
+	public BankAccount getAccount(int accountNumber) {
+		return bankAccounts.getAccount(accountNumber);
+	}
+
+	/**
+	 * Gets a BankAccount with the matching card number.
+	 *
+	 * @param cardNumber: the card number of the account to be retrieved.
+	 * @return the BankAccount with the matching card number if found; null
+	 *         otherwise.
+	 */
+	public BankAccount getAccountByCardNumber(int cardNumber) {
+		return bankAccounts.getAccountByCardNumber(cardNumber);
+	}
+
+	/**
+	 * Adds an account moved here from another ledger, such as when accounts are
+	 * rebalanced between partitions, holding the part of its balance not yet
+	 * available for a full hold period. No other call may be made on the ledger
+	 * while it runs, and the account is only durable once the ledger is
+	 * compacted.
+	 *
+	 * @param account: the account to add.
+	 * @throws IllegalArgumentException if the account is already in the ledger.
+	 */
+	public void addAccount(BankAccount account) {
+		HoldClearingScheduler scheduler = holdClearing;
+		if (scheduler == null) {
+			bankAccounts.addAccount(account);
+			return;
+		}
+		scheduler.runBetweenClearingRuns(() -> bankAccounts.addAccount(account));
+		scheduler.addHold(account.getAccountNumber(), account.getActualBalance() - account.getAvailableBalance());
+	}
+
+	/**
+	 * Removes an account that has been moved to another ledger. No other call may
+	 * be made on the ledger while it runs, and the removal is only durable once
+	 * the ledger is compacted. Holds still due on the account are dropped when
+	 * they fall due.
+	 *
+	 * @param accountNumber: the account number of the account to remove.
+	 * @return {true} if the account was found and removed; {false} otherwise.
+	 */
+	public boolean removeAccount(int accountNumber) {
+		HoldClearingScheduler scheduler = holdClearing;
+		if (scheduler == null) {
+			return bankAccounts.removeAccount(accountNumber);
+		}
+		boolean[] isRemoved = new boolean[1];
+		scheduler.runBetweenClearingRuns(() -> isRemoved[0] = bankAccounts.removeAccount(accountNumber));
+		return isRemoved[0];
+	}
+
+	/**
+	 * Deposits an amount into an account and journals the deposit.
+	 *
+	 * @param account: the account to deposit into.
+	 * @param amount:  the amount in cents.
+	 * @return the approved deposit with the account's balances right after it.
+	 */
+	public TransactionResult deposit(BankAccount account, long amount) throws IOException {
+		long sequence;
+		TransactionResult result;
+		synchronized (account.getLock()) {
+			long actualBalance = account.getActualBalance();
+			long availableBalance = account.getAvailableBalance();
+			account.setAccountBalance(actualBalance + amount);
+			try {
+				sequence = accountDataStore.appendTransaction(TransactionJournal.DEPOSIT, account, amount);
+			} catch (IOException | RuntimeException e) {
+				account.restoreBalances(actualBalance, availableBalance);
+				throw new TransactionNotAppliedException(e);
+			}
+			appendToHistory(TransactionJournal.DEPOSIT, account, amount);
+			result = TransactionResult.forAccount(TransactionStatus.APPROVED, TransactionEngine.DEPOSIT, account,
+					amount);
+		}
+		holdDeposit(account, amount);
+		accountDataStore.commitTransactions(sequence, bankAccounts);
+		return result;
+	}
+
+	/**
+	 * Withdraws an amount from an account and journals the withdrawal, provided
+	 * the available balance covers it and it is within the withdrawal limits. The
+	 * checks and the withdrawal happen atomically, so two concurrent withdrawals
+	 * cannot both spend the same funds or the same allowance.
+	 *
+	 * @param account: the account to withdraw from.
+	 * @param amount:  the amount in cents.
+	 * @return the approved withdrawal, or INSUFFICIENT_FUNDS,
+	 *         DAILY_LIMIT_EXCEEDED or WITHDRAWAL_RATE_EXCEEDED if it was refused,
+	 *         with the account's balances right after.
+	 */
+	public TransactionResult withdraw(BankAccount account, long amount) throws IOException {
+		long sequence;
+		TransactionResult result;
+		synchronized (account.getLock()) {
+			if (isNotEnoughFunds(account, amount)) {
+				return TransactionResult.forAccount(TransactionStatus.INSUFFICIENT_FUNDS,
+						TransactionEngine.WITHDRAWAL, account, amount);
+			}
+			WithdrawalLimiter limiter = withdrawalLimiter;
+			if (limiter != null) {
+				TransactionStatus limitStatus = limiter.checkAndRecordWithdrawal(account, amount);
+				if (limitStatus != TransactionStatus.APPROVED) {
+					return TransactionResult.forAccount(limitStatus, TransactionEngine.WITHDRAWAL, account, amount);
+				}
+			}
+			long actualBalance = account.getActualBalance();
+			long availableBalance = account.getAvailableBalance();
+			account.setAccountBalance(actualBalance - amount);
+			try {
+				sequence = accountDataStore.appendTransaction(TransactionJournal.WITHDRAWAL, account, amount);
+			} catch (IOException | RuntimeException e) {
+				account.restoreBalances(actualBalance, availableBalance);
+				if (limiter != null) {
+					limiter.cancelWithdrawal(account, amount);
+				}
+				throw new TransactionNotAppliedException(e);
+			}
+			appendToHistory(TransactionJournal.WITHDRAWAL, account, amount);
+			result = TransactionResult.forAccount(TransactionStatus.APPROVED, TransactionEngine.WITHDRAWAL, account,
+					amount);
+		}
+		accountDataStore.commitTransactions(sequence, bankAccounts);
+		return result;
+	}
+
+	/**
+	 * Moves an amount from one account to another and journals the transfer,
+	 * provided the paying account's available balance covers it. The funds are
+	 * available in the account paid straight away. The check and both balance
+	 * changes happen atomically.
+	 *
+	 * @param fromAccount: the account to transfer from.
+	 * @param toAccount:   the account to transfer to, which must be another
+	 *                     account.
+	 * @param amount:      the amount in cents.
+	 * @return the approved transfer, or INSUFFICIENT_FUNDS if it was refused,
+	 *         with the paying account's balances right after.
+	 */
+	public TransactionResult transfer(BankAccount fromAccount, BankAccount toAccount, long amount)
+			throws IOException {
+		boolean isFromLockedFirst = fromAccount.getLockRank() <= toAccount.getLockRank();
+		Object firstLock = isFromLockedFirst ? fromAccount.getLock() : toAccount.getLock();
+		Object secondLock = isFromLockedFirst ? toAccount.getLock() : fromAccount.getLock();
+		long sequence;
+		TransactionResult result;
+		synchronized (firstLock) {
+			synchronized (secondLock) {
+				if (isNotEnoughFunds(fromAccount, amount)) {
+					return TransactionResult.forAccount(TransactionStatus.INSUFFICIENT_FUNDS,
+							TransactionEngine.TRANSFER, fromAccount, amount);
+				}
+				long fromActualBalance = fromAccount.getActualBalance();
+				long fromAvailableBalance = fromAccount.getAvailableBalance();
+				long toActualBalance = toAccount.getActualBalance();
+				long toAvailableBalance = toAccount.getAvailableBalance();
+				fromAccount.setAccountBalance(fromActualBalance - amount);
+				toAccount.addClearedFunds(amount);
+				try {
+					sequence = accountDataStore.appendTransfer(fromAccount, toAccount, amount);
+				} catch (IOException | RuntimeException e) {
+					fromAccount.restoreBalances(fromActualBalance, fromAvailableBalance);
+					toAccount.restoreBalances(toActualBalance, toAvailableBalance);
+					throw new TransactionNotAppliedException(e);
+				}
+				appendToHistory(TransactionJournal.TRANSFER_OUT, fromAccount, amount);
+				appendToHistory(TransactionJournal.TRANSFER_IN, toAccount, amount);
+				result = TransactionResult.forAccount(TransactionStatus.APPROVED, TransactionEngine.TRANSFER,
+						fromAccount, amount);
+			}
+		}
+		accountDataStore.commitTransactions(sequence, bankAccounts);
+		return result;
+	}
+
+	/**
+	 * Applies every record of a batch in order, setting each record's status.
+	 * Records are applied under their account's lock just like single deposits and
+	 * withdrawals, but the journal is committed once for the whole batch rather
+	 * than once per record. A HOLD_RELEASE record makes up to its amount of held
+	 * funds available.
+	 *
+	 * @param batch: the records to apply.
+	 * @return the number of records approved.
+	 */
+	public int applyBatch(TransactionBatch batch) throws IOException {
+		long sequence = 0;
+		int approved = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			if (batch.getStatus(i) != null) {
+				continue;
+			}
+			BankAccount account = bankAccounts.getAccount(batch.getAccountNumber(i));
+			long amount = batch.getAmount(i);
+			if (account == null) {
+				batch.setStatus(i, TransactionStatus.ACCOUNT_NOT_FOUND);
+				continue;
+			}
+			if (amount <= 0) {
+				batch.setStatus(i, TransactionStatus.INVALID_AMOUNT);
+				continue;
+			}
+			byte transactionType = batch.getTransactionType(i);
+			synchronized (account.getLock()) {
+				long actualBalance = account.getActualBalance();
+				long availableBalance = account.getAvailableBalance();
+				try {
+					if (transactionType == TransactionJournal.HOLD_RELEASE) {
+						long releasedFunds = account.releaseHeldFunds(amount);
+						if (releasedFunds > 0) {
+							sequence = accountDataStore.appendTransaction(transactionType, account, releasedFunds);
+						}
+					} else if (transactionType == TransactionJournal.WITHDRAWAL && isNotEnoughFunds(account, amount)) {
+						batch.setStatus(i, TransactionStatus.INSUFFICIENT_FUNDS);
+						continue;
+					} else {
+						long change = transactionType == TransactionJournal.DEPOSIT ? amount : -amount;
+						account.setAccountBalance(actualBalance + change);
+						sequence = accountDataStore.appendTransaction(transactionType, account, amount);
+					}
+				} catch (IOException | RuntimeException e) {
+					account.restoreBalances(actualBalance, availableBalance);
+					throw new TransactionNotAppliedException(e);
+				}
+				if (transactionType != TransactionJournal.HOLD_RELEASE) {
+					appendToHistory(transactionType, account, amount);
+				}
+			}
+			if (transactionType == TransactionJournal.DEPOSIT) {
+				holdDeposit(account, amount);
+			}
+			batch.setStatus(i, TransactionStatus.APPROVED);
+			approved++;
+		}
+		if (sequence != 0) {
+			accountDataStore.commitTransactions(sequence, bankAccounts);
+		}
+		return approved;
+	}
+
+	/**
+	 * Starts releasing the held part of each deposit once a hold period has
+	 * passed, beginning with the funds already held on every account.
+	 *
+	 * @param holdMillis: how long deposits are held for.
+	 * @param tickMillis: how often due holds are released.
+	 * @return the running scheduler, which is stopped when the ledger is closed.
+	 */
+	public HoldClearingScheduler startHoldClearing(long holdMillis, long tickMillis) {
+		HoldClearingScheduler scheduler = new HoldClearingScheduler(this, holdMillis, tickMillis);
+		holdClearing = scheduler;
+		scheduler.start();
+		return scheduler;
+	}
+
+	/**
+	 * Limits the withdrawals made through withdraw from now on. Batches are not
+	 * limited.
+	 *
+	 * @param limiter: the limits to apply, or null to stop limiting withdrawals.
+	 */
+	public void setWithdrawalLimiter(WithdrawalLimiter limiter) {
+		withdrawalLimiter = limiter;
+	}
+
+	private void holdDeposit(BankAccount account, long amount) {
+		HoldClearingScheduler scheduler = holdClearing;
+		if (scheduler != null) {
+			scheduler.addHold(account.getAccountNumber(), BankAccount.getHeldPortionOfDeposit(amount));
+		}
+	}
+
+	/**
+	 * Appends a journaled transaction to the history. The transaction has already
+	 * happened by the time it reaches the history, so an entry that cannot be
+	 * written is counted rather than failing the transaction.
+	 */
+	private void appendToHistory(byte transactionType, BankAccount account, long amount) {
+		if (history == null) {
+			return;
+		}
+		try {
+			history.append(transactionType, account, amount);
+		} catch (IOException | RuntimeException e) {
+			getMetrics().recordEvent(AtmMetrics.Event.HISTORY_WRITE_FAILED);
+		}
+	}
+
+	/**
+	 * Checks if an account has enough available funds to cover an amount.
+	 *
+	 * @param account: the account to check.
+	 * @param amount:  the amount in cents.
+	 * @return {true} if the available balance does not cover the amount; {false}
+	 *         otherwise.
+	 */
+	public static boolean isNotEnoughFunds(BankAccount account, long amount) {
+		return account.getAvailableBalance() - amount < 0;
+	}
+
+	/**
+	 * Compacts every account into a new snapshot.
+	 */
+	public void compact() throws IOException {
+		accountDataStore.compact(bankAccounts);
+	}
+
+	public BankAccountList getBankAccounts() {
+		return bankAccounts;
+	}
+
+	public AtmMetrics getMetrics() {
+		return accountDataStore.getMetrics();
+	}
+
+	/**
+	 * @return the transaction history, or null if the ledger keeps none.
+	 */
+	public TransactionHistory getHistory() {
+		return history;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (holdClearing != null) {
+			holdClearing.close();
+		}
+		try {
+			accountDataStore.close();
+		} finally {
+			if (history != null) {
+				history.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Hammers a shared AccountLedger with random deposits, withdrawals and
+ * transfers between overlapping accounts from many threads at once while held
+ * deposits are being released, then checks that no update was lost: the total
+ * of all balances must equal the starting total plus every accepted deposit
+ * minus every accepted withdrawal, no available balance may go negative or exceed
+ * its actual balance, and reloading the snapshot and journal from disk must
+ * reproduce every balance exactly. Exits with status 1 if any check fails.
+ * The accounts are kept off the heap when -Datm.offHeapAccounts=true is given.
+ *
+ * <pre>
+ * java main.AccountLedgerStressCheck [threads] [operations per thread] [accounts]
+ * </pre>
+ */
+public class AccountLedgerStressCheck {
+	private static final long STARTING_BALANCE = Money.fromDollars(10_000);
+	private static final long COMPACTION_THRESHOLD = 20_000;
+	private static final long HOLD_MILLIS = 20;
+	private static final long HOLD_CLEARING_TICK_MILLIS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+		int operationsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+		int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+		Path directory = Files.createTempDirectory("ledger-stress");
+		Path textFile = directory.resolve("accounts.txt");
+		writeAccounts(textFile, accountCount);
+		AccountLedger ledger = openLedger(directory);
+		ledger.startHoldClearing(HOLD_MILLIS, HOLD_CLEARING_TICK_MILLIS);
+
+		List<Worker> workers = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			workers.add(new Worker(ledger, accountCount, operationsPerThread, i));
+		}
+		long startTime = System.nanoTime();
+		for (Worker worker : workers) {
+			worker.start();
+		}
+		long deposited = 0;
+		long withdrawn = 0;
+		for (Worker worker : workers) {
+			worker.join();
+			if (worker.failure != null) {
+				throw worker.failure;
+			}
+			deposited += worker.deposited;
+			withdrawn += worker.withdrawn;
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+		ledger.close();
+
+		boolean passed = checkTotals(ledger.getBankAccounts(), accountCount, deposited, withdrawn);
+		passed &= checkBalances(ledger.getBankAccounts());
+		AccountLedger reloaded = openLedger(directory);
+		passed &= checkReloadMatches(ledger.getBankAccounts(), reloaded.getBankAccounts());
+		reloaded.close();
+
+		long totalOperations = (long) threadCount * operationsPerThread;
+		System.out.printf("%d threads, %d operations on %d accounts in %d ms (%.0f ops/s): %s\n", threadCount,
+				totalOperations, accountCount, elapsedNanos / 1_000_000, totalOperations / (elapsedNanos / 1e9),
+				passed ? "PASSED" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static AccountLedger openLedger(Path directory) throws IOException {
+		AccountDataStore accountDataStore = new AccountDataStore(directory.resolve("accounts.snapshot").toString(),
+				directory.resolve("accounts.txt").toString(), directory.resolve("accounts.journal").toString(),
+				COMPACTION_THRESHOLD);
+		return new AccountLedger(accountDataStore.load(Atm.newBankAccountList()), accountDataStore);
+	}
+
+	private static void writeAccounts(Path textFile, int accountCount) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < accountCount; i++) {
+			lines.add(new BankAccount(1_000_000 + i, 1000 + i % 9000, STARTING_BALANCE, "Stress Account " + i)
+					.toString());
+		}
+		Files.write(textFile, lines);
+	}
+
+	private static boolean checkTotals(BankAccountList bankAccounts, int accountCount, long deposited,
+			long withdrawn) {
+		long expectedTotal = STARTING_BALANCE * accountCount + deposited - withdrawn;
+		long actualTotal = 0;
+		for (BankAccount account : bankAccounts) {
+			actualTotal += account.getActualBalance();
+		}
+		if (actualTotal != expectedTotal) {
+			System.out.printf("* Lost updates: total balance is %s but should be %s\n",
+					Money.formatCurrency(actualTotal), Money.formatCurrency(expectedTotal));
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean checkBalances(BankAccountList bankAccounts) {
+		boolean passed = true;
+		for (BankAccount account : bankAccounts) {
+			if (account.getAvailableBalance() < 0 || account.getAvailableBalance() > account.getActualBalance()) {
+				System.out.printf("* Account %d has available balance %s and actual balance %s\n",
+						account.getAccountNumber(), Money.formatCurrency(account.getAvailableBalance()),
+						Money.formatCurrency(account.getActualBalance()));
+				passed = false;
+			}
+		}
+		return passed;
+	}
+
+	private static boolean checkReloadMatches(BankAccountList expected, BankAccountList reloaded) {
+		boolean passed = true;
+		for (BankAccount account : expected) {
+			BankAccount reloadedAccount = reloaded.getAccount(account.getAccountNumber());
+			if (reloadedAccount.getActualBalance() != account.getActualBalance()
+					|| reloadedAccount.getAvailableBalance() != account.getAvailableBalance()) {
+				System.out.printf("* Account %d reloaded as %s/%s instead of %s/%s\n", account.getAccountNumber(),
+						Money.formatCurrency(reloadedAccount.getAvailableBalance()),
+						Money.formatCurrency(reloadedAccount.getActualBalance()),
+						Money.formatCurrency(account.getAvailableBalance()),
+						Money.formatCurrency(account.getActualBalance()));
+				passed = false;
+			}
+		}
+		return passed;
+	}
+
+	/**
+	 * Applies a seeded random mix of deposits, withdrawals and transfers, keeping
+	 * its own total of what was deposited and withdrawn.
+	 */
+	private static class Worker extends Thread {
+		private final AccountLedger ledger;
+		private final int accountCount;
+		private final int operations;
+		private final SplittableRandom random;
+		private long deposited;
+		private long withdrawn;
+		private Exception failure;
+
+		Worker(AccountLedger ledger, int accountCount, int operations, long seed) {
+			this.ledger = ledger;
+			this.accountCount = accountCount;
+			this.operations = operations;
+			this.random = new SplittableRandom(seed);
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i = 0; i < operations; i++) {
+					BankAccount account = ledger.getAccount(1_000_000 + random.nextInt(accountCount));
+					long amount = Money.fromDollars(1 + random.nextInt(500));
+					int operation = random.nextInt(3);
+					if (operation == 0) {
+						ledger.deposit(account, amount);
+						deposited += amount;
+					} else if (operation == 1) {
+						if (ledger.withdraw(account, amount).isApproved()) {
+							withdrawn += amount;
+						}
+					} else {
+						BankAccount toAccount = ledger.getAccount(1_000_000 + random.nextInt(accountCount));
+						if (toAccount.getAccountNumber() != account.getAccountNumber()) {
+							ledger.transfer(account, toAccount, amount);
+						}
+					}
+				}
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+	}
+}
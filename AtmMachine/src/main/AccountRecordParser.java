@@ -0,0 +1,228 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses "number pin balance name" account records directly from the bytes of a
+ * buffer. Numbers are accumulated digit by digit so that the only object created
+ * per record is the owner's name, the PIN hash and the BankAccount itself.
+ *
+ * The pin field is a PinHash token. Files written before PINs were hashed hold
+ * the plain PIN instead, which is refused unless the parser was asked to hash
+ * plain PINs: at the full PinHash iteration count that would take hours for a
+ * large file, so it is done once by AccountSnapshotConverter rather than on
+ * every load.
+ */
+public class AccountRecordParser {
+	private final ByteBuffer buffer;
+	private final int end;
+	private final boolean hashesPlainPins;
+	private int position;
+	private long lineNumber;
+	private byte[] nameBytes;
+
+	/**
+	 * @param buffer: the buffer holding the records.
+	 * @param start:  the index of the first byte of the first record.
+	 * @param end:    the index just past the last byte to parse.
+	 */
+	public AccountRecordParser(ByteBuffer buffer, int start, int end) {
+		this(buffer, start, end, false);
+	}
+
+	/**
+	 * @param buffer:          the buffer holding the records.
+	 * @param start:           the index of the first byte of the first record.
+	 * @param end:             the index just past the last byte to parse.
+	 * @param hashesPlainPins: whether a plain PIN is hashed rather than refused.
+	 */
+	public AccountRecordParser(ByteBuffer buffer, int start, int end, boolean hashesPlainPins) {
+		this.buffer = buffer;
+		this.position = start;
+		this.end = end;
+		this.hashesPlainPins = hashesPlainPins;
+		this.lineNumber = 0;
+		this.nameBytes = new byte[64];
+	}
+
+	/**
+	 * Parses every record in the buffer section, skipping blank lines.
+	 *
+	 * @return the parsed accounts in the order they appear.
+	 * @throws AccountDataFormatException if a line is malformed; its line number
+	 *                                    is relative to the start of the section.
+	 */
+	public List<BankAccount> parseAll() throws AccountDataFormatException {
+		List<BankAccount> accounts = new ArrayList<>();
+		while (position < end) {
+			lineNumber++;
+			skipBlanks();
+			if (isAtEndOfLine()) {
+				skipLineTerminator();
+				continue;
+			}
+			accounts.add(parseRecord());
+		}
+		return accounts;
+	}
+
+	/**
+	 * Gets the number of lines consumed so far.
+	 *
+	 * @return the line count.
+	 */
+	public long getLinesParsed() {
+		return lineNumber;
+	}
+
+	private BankAccount parseRecord() throws AccountDataFormatException {
+		int accountNumber = parseInt("account number");
+		skipBlanks();
+		PinHash pinHash = parsePin();
+		skipBlanks();
+		long balance = parseBalance();
+		skipBlanks();
+		String ownersName = parseName();
+		skipLineTerminator();
+		return new BankAccount(accountNumber, pinHash, balance, ownersName);
+	}
+
+	private PinHash parsePin() throws AccountDataFormatException {
+		if (position >= end || buffer.get(position) != '$') {
+			int pinNumber = parseInt("pin number");
+			if (!hashesPlainPins) {
+				throw error("the pin is not hashed; convert the file with AccountSnapshotConverter hash-pins");
+			}
+			return PinHash.create(pinNumber);
+		}
+		int start = position;
+		while (position < end && !isBlank(buffer.get(position)) && !isAtEndOfLine()) {
+			position++;
+		}
+		byte[] token = new byte[position - start];
+		buffer.get(start, token);
+		try {
+			return PinHash.parse(new String(token, StandardCharsets.US_ASCII));
+		} catch (IllegalArgumentException e) {
+			throw error("the pin hash is malformed");
+		}
+	}
+
+	private int parseInt(String fieldName) throws AccountDataFormatException {
+		boolean isNegative = consume('-');
+		long value = parseDigits(fieldName);
+		if (isNegative) {
+			value = -value;
+		}
+		if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+			throw error("the " + fieldName + " is out of range");
+		}
+		requireFieldEnd(fieldName);
+		return (int) value;
+	}
+
+	/**
+	 * Parses a decimal dollar amount into cents, rounding half up on any digits
+	 * past the second decimal place.
+	 */
+	private long parseBalance() throws AccountDataFormatException {
+		boolean isNegative = consume('-');
+		long balance = parseDigits("balance") * 100;
+		if (consume('.')) {
+			int decimalPlaces = 0;
+			while (position < end && isDigit(buffer.get(position))) {
+				int digit = buffer.get(position++) - '0';
+				decimalPlaces++;
+				if (decimalPlaces == 1) {
+					balance += digit * 10;
+				} else if (decimalPlaces == 2) {
+					balance += digit;
+				} else if (decimalPlaces == 3 && digit >= 5) {
+					balance++;
+				}
+			}
+		}
+		requireFieldEnd("balance");
+		return isNegative ? -balance : balance;
+	}
+
+	private long parseDigits(String fieldName) throws AccountDataFormatException {
+		int firstDigit = position;
+		long value = 0;
+		while (position < end && isDigit(buffer.get(position))) {
+			value = value * 10 + (buffer.get(position++) - '0');
+			if (value > Long.MAX_VALUE / 1000) {
+				throw error("the " + fieldName + " is out of range");
+			}
+		}
+		if (position == firstDigit) {
+			throw error("expected a " + fieldName);
+		}
+		return value;
+	}
+
+	private String parseName() {
+		int start = position;
+		int lastNonBlank = position;
+		while (!isAtEndOfLine()) {
+			if (!isBlank(buffer.get(position))) {
+				lastNonBlank = position + 1;
+			}
+			position++;
+		}
+		int length = lastNonBlank - start;
+		if (nameBytes.length < length) {
+			nameBytes = new byte[Math.max(length, nameBytes.length * 2)];
+		}
+		buffer.get(start, nameBytes, 0, length);
+		return new String(nameBytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private void requireFieldEnd(String fieldName) throws AccountDataFormatException {
+		if (position < end && !isBlank(buffer.get(position)) && !isAtEndOfLine()) {
+			throw error("unexpected character after the " + fieldName);
+		}
+	}
+
+	private boolean consume(char expected) {
+		if (position < end && buffer.get(position) == expected) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipBlanks() {
+		while (position < end && isBlank(buffer.get(position))) {
+			position++;
+		}
+	}
+
+	private void skipLineTerminator() {
+		consume('\r');
+		consume('\n');
+	}
+
+	private boolean isAtEndOfLine() {
+		if (position >= end) {
+			return true;
+		}
+		byte b = buffer.get(position);
+		return b == '\n' || b == '\r';
+	}
+
+	private AccountDataFormatException error(String problem) {
+		return new AccountDataFormatException(lineNumber, problem);
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isBlank(byte b) {
+		return b == ' ' || b == '\t';
+	}
+}
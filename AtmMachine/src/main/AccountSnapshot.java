@@ -0,0 +1,225 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes the binary account snapshot format. The file starts with a
+ * magic number, a format version and the number of accounts, followed by one
+ * record per account:
+ *
+ * <pre>
+ * int   account number
+ * int   PIN hash iteration count
+ * byte[16] PIN hash salt
+ * byte[32] PIN hash
+ * long  actual balance in cents
+ * long  available balance in cents
+ * short length of the owner's name in UTF-8 bytes
+ * byte[] owner's name
+ * </pre>
+ *
+ * Records are moved to and from the file through a direct buffer in large
+ * blocks rather than one field at a time.
+ *
+ * Version 1 snapshots, which held the plain PIN as an int in place of the three
+ * PIN hash fields, are only read when asked to hash their PINs, which
+ * AccountSnapshotConverter does once; hashing every PIN on each load would hold
+ * up startup for hours on a large snapshot.
+ */
+public class AccountSnapshot {
+	private static final int MAGIC = 0x41544d53;
+	private static final int VERSION = 2;
+	private static final int PLAIN_PIN_VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+	private static final int FIXED_RECORD_SIZE = 26 + PinHash.SALT_LENGTH + PinHash.HASH_LENGTH;
+	private static final int PLAIN_PIN_FIXED_RECORD_SIZE = 26;
+	private static final int MAX_NAME_LENGTH = Short.MAX_VALUE;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private AccountSnapshot() {
+	}
+
+	/**
+	 * Writes every account to a snapshot file, replacing any existing content, and
+	 * forces it to disk.
+	 *
+	 * @param snapshotFile: the file to write.
+	 * @param bankAccounts: the accounts to write.
+	 */
+	public static void write(Path snapshotFile, BankAccountList bankAccounts) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(bankAccounts.size());
+			for (BankAccount account : bankAccounts) {
+				byte[] name = account.getOwnersName().getBytes(StandardCharsets.UTF_8);
+				if (name.length > MAX_NAME_LENGTH) {
+					throw new IOException("Owner's name of account " + account.getAccountNumber() + " is too long");
+				}
+				if (buffer.remaining() < FIXED_RECORD_SIZE + name.length) {
+					drain(channel, buffer);
+				}
+				buffer.putInt(account.getAccountNumber());
+				PinHash pinHash = account.getPinHash();
+				buffer.putInt(pinHash.getIterations());
+				buffer.put(pinHash.getSalt());
+				buffer.put(pinHash.getHash());
+				synchronized (account.getLock()) {
+					buffer.putLong(account.getActualBalance());
+					buffer.putLong(account.getAvailableBalance());
+				}
+				buffer.putShort((short) name.length);
+				buffer.put(name);
+			}
+			drain(channel, buffer);
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Checks if a snapshot file is in an older format, which should be rewritten
+	 * in the current format as soon as it has been read.
+	 *
+	 * @param snapshotFile: the file to check.
+	 * @return {true} if the file holds an older format version; {false} otherwise.
+	 */
+	public static boolean isOlderFormat(Path snapshotFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			channel.read(header, 0);
+			return header.getInt(0) == MAGIC && header.getInt(4) < VERSION;
+		}
+	}
+
+	/**
+	 * Creates the BankAccountList containing a BankAccount for every record of a
+	 * snapshot file.
+	 *
+	 * @param snapshotFile: the file to read.
+	 * @return a list of all the BankAccounts in the snapshot.
+	 */
+	public static BankAccountList read(Path snapshotFile) throws IOException {
+		return read(snapshotFile, new BankAccountList());
+	}
+
+	/**
+	 * Adds a BankAccount for every record of a snapshot file to a list.
+	 *
+	 * @param snapshotFile: the file to read.
+	 * @param bankAccounts: the empty list to add the accounts to.
+	 * @return the list.
+	 */
+	public static BankAccountList read(Path snapshotFile, BankAccountList bankAccounts) throws IOException {
+		return read(snapshotFile, bankAccounts, false);
+	}
+
+	/**
+	 * Adds a BankAccount for every record of a snapshot file to a list, hashing
+	 * the plain PINs of a version 1 snapshot if asked to.
+	 *
+	 * @param snapshotFile:    the file to read.
+	 * @param bankAccounts:    the empty list to add the accounts to.
+	 * @param hashesPlainPins: whether a version 1 snapshot's PINs are hashed
+	 *                         rather than the snapshot refused.
+	 * @return the list.
+	 */
+	public static BankAccountList read(Path snapshotFile, BankAccountList bankAccounts, boolean hashesPlainPins)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.flip();
+			fill(channel, buffer, HEADER_SIZE);
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(snapshotFile + " is not an account snapshot");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION && version != PLAIN_PIN_VERSION) {
+				throw new IOException("Unsupported account snapshot version " + version);
+			}
+			if (version == PLAIN_PIN_VERSION && !hashesPlainPins) {
+				throw new IOException(snapshotFile
+						+ " holds plain PINs; convert it with AccountSnapshotConverter to-text first");
+			}
+			int accountCount = buffer.getInt();
+			int fixedRecordSize = version == VERSION ? FIXED_RECORD_SIZE : PLAIN_PIN_FIXED_RECORD_SIZE;
+			if (accountCount < 0 || (long) accountCount * fixedRecordSize > channel.size() - HEADER_SIZE) {
+				throw new IOException(snapshotFile + " claims " + accountCount
+						+ " accounts, more than its size can hold");
+			}
+			bankAccounts.ensureCapacity(accountCount);
+			byte[] name = new byte[64];
+			byte[] salt = new byte[PinHash.SALT_LENGTH];
+			byte[] hash = new byte[PinHash.HASH_LENGTH];
+			for (int i = 0; i < accountCount; i++) {
+				fill(channel, buffer, fixedRecordSize);
+				int accountNumber = buffer.getInt();
+				PinHash pinHash;
+				if (version == VERSION) {
+					int iterations = buffer.getInt();
+					buffer.get(salt);
+					buffer.get(hash);
+					pinHash = readPinHash(iterations, salt, hash, i);
+				} else {
+					pinHash = PinHash.create(buffer.getInt());
+				}
+				long actualBalanceCents = buffer.getLong();
+				long availableBalanceCents = buffer.getLong();
+				int nameLength = buffer.getShort();
+				if (nameLength < 0) {
+					throw new IOException("Corrupt account snapshot record " + (i + 1));
+				}
+				fill(channel, buffer, nameLength);
+				if (name.length < nameLength) {
+					name = new byte[nameLength];
+				}
+				buffer.get(name, 0, nameLength);
+				try {
+					bankAccounts.addAccount(new BankAccount(accountNumber, pinHash, actualBalanceCents,
+							availableBalanceCents, new String(name, 0, nameLength, StandardCharsets.UTF_8)));
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Account snapshot record " + (i + 1) + ": " + e.getMessage());
+				}
+			}
+			return bankAccounts;
+		}
+	}
+
+	private static PinHash readPinHash(int iterations, byte[] salt, byte[] hash, int recordIndex)
+			throws IOException {
+		try {
+			return new PinHash(iterations, salt, hash);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt account snapshot record " + (recordIndex + 1));
+		}
+	}
+
+	/**
+	 * Makes sure at least a number of unread bytes are in the buffer, compacting it
+	 * and reading more of the file when they are not.
+	 */
+	private static void fill(FileChannel channel, ByteBuffer buffer, int bytesNeeded) throws IOException {
+		if (buffer.remaining() >= bytesNeeded) {
+			return;
+		}
+		buffer.compact();
+		while (buffer.position() < bytesNeeded) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("Account snapshot is truncated");
+			}
+		}
+		buffer.flip();
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
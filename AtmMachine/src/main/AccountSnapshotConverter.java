@@ -0,0 +1,87 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts account data between the accounts.txt text format and the binary
+ * snapshot format. Plain PINs in files written before PINs were hashed are
+ * hashed along the way, and hash-pins does only that, rewriting a text file
+ * with every PIN hashed. The ATM refuses plain PINs when it loads its account
+ * data, so an old file is converted once with this tool before first use.
+ *
+ * <pre>
+ * java main.AccountSnapshotConverter to-binary accounts.txt accounts.snapshot
+ * java main.AccountSnapshotConverter to-text accounts.snapshot accounts.txt
+ * java main.AccountSnapshotConverter hash-pins old-accounts.txt accounts.txt
+ * </pre>
+ */
+public class AccountSnapshotConverter {
+
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			printUsageMsg();
+			System.exit(1);
+		}
+		String direction = args[0];
+		String inputFileName = args[1];
+		Path outputFile = Paths.get(args[2]);
+		try {
+			BankAccountList bankAccounts;
+			if (direction.equals("to-binary")) {
+				bankAccounts = loadText(inputFileName);
+				AccountSnapshot.write(outputFile, bankAccounts);
+			} else if (direction.equals("to-text")) {
+				bankAccounts = AccountSnapshot.read(Paths.get(inputFileName), new BankAccountList(), true);
+				writeText(outputFile, bankAccounts);
+			} else if (direction.equals("hash-pins")) {
+				bankAccounts = loadText(inputFileName);
+				writeText(outputFile, bankAccounts);
+			} else {
+				printUsageMsg();
+				System.exit(1);
+				return;
+			}
+			System.out.printf("Converted %d accounts from %s to %s.\n", bankAccounts.size(), inputFileName,
+					outputFile);
+		} catch (IOException e) {
+			System.out.printf("* Error: Unable to convert %s: %s\n", inputFileName, e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Loads an accounts.txt text file, hashing any plain PINs in it.
+	 *
+	 * @param textFileName: the file to load.
+	 * @return the accounts.
+	 */
+	private static BankAccountList loadText(String textFileName) throws IOException {
+		AccountFileLoader loader = new AccountFileLoader(textFileName);
+		loader.setHashesPlainPins(true);
+		return loader.load();
+	}
+
+	/**
+	 * Writes every account to a file in the accounts.txt text format.
+	 *
+	 * @param textFile:     the file to write.
+	 * @param bankAccounts: the accounts to write.
+	 */
+	private static void writeText(Path textFile, BankAccountList bankAccounts) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(textFile, StandardCharsets.UTF_8)) {
+			for (BankAccount account : bankAccounts) {
+				writer.write(account.toString());
+				writer.write('\n');
+			}
+		}
+	}
+
+	private static void printUsageMsg() {
+		System.out.println("Usage: AccountSnapshotConverter (to-binary|to-text|hash-pins) <input file> <output file>");
+	}
+}
@@ -1,227 +1,326 @@
 package main;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Random;
-import java.util.Scanner;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 public class Atm {
+	private static final int MINI_STATEMENT_LENGTH = 10;
+	private static final long DEFAULT_HOLD_MILLIS = TimeUnit.DAYS.toMillis(1);
+	private static final long HOLD_CLEARING_TICK_MILLIS = 1000;
+	private static final int DEFAULT_DAILY_WITHDRAWAL_LIMIT_DOLLARS = 1000;
+	private static final int DEFAULT_MAX_WITHDRAWALS = 5;
+	private static final int DEFAULT_WITHDRAWAL_WINDOW_MINUTES = 10;
+	private static final int WITHDRAWAL_LIMITER_CARD_CAPACITY = 1 << 16;
+	private static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 120;
+	private static final long IDLE_SWEEP_MILLIS = 1000;
+	private static final int MAX_PIN_ATTEMPTS = 3;
+	private static final DateTimeFormatter STATEMENT_DATE_FORMAT = DateTimeFormatter
+			.ofPattern("MM/dd/yyyy hh:mma", Locale.US);
+
 
 	private final int GUI_WIDTH, RECEIPT_WIDTH;
 	private final String WELCOME_MSG;
-	private Scanner userInput;
-	private BankAccountList bankAccounts;
-	private BankAccount currentAccount;
+	private PrintStream out;
+	private OutputStream receiptOutput;
+	private boolean exitsSystemOnQuit;
+	private TransactionEngine engine;
+	private TransactionSession session;
+	private TransactionResult lastTransaction;
+	private long lastTransactionId;
 	private int accountNumber;
+	private int cardNumber;
+	private boolean isLoggingInByCard;
 	private int pinNumber;
-	private String transactionType;
-	private double transactionAmount;
+	private int pinAttempts;
+	private int transferAccountNumber;
+	private long transactionAmount;
+	private final StringBuilder currencyBuffer;
+	private final StringBuilder lineBuffer;
+	private final AtmScreens screens;
+	private final ReceiptRenderer receiptRenderer;
+	private CashDispenser cashDispenser;
 
+	/**
+	 * Creates a console ATM that loads the account data itself, or routes to the
+	 * partition nodes holding it, and exits the system when the user quits.
+	 */
 	public Atm() {
+		this(newTransactionEngine(System.out), System.out, true);
+	}
+
+	/**
+	 * Creates an ATM session over a transaction engine shared with other sessions.
+	 * The user's input is handed to the ATM a line at a time by an AtmSession.
+	 * 
+	 * @param engine: the engine that applies this session's transactions.
+	 * @param output: the stream the screens are printed to. Output is buffered and
+	 *        flushed whenever the ATM waits for input.
+	 * @param exitsSystemOnQuit: {true} to save the account data and exit the
+	 *        system when the user quits; {false} to end only this session.
+	 */
+	public Atm(TransactionEngine engine, OutputStream output, boolean exitsSystemOnQuit) {
 		this.GUI_WIDTH = 60;
 		this.RECEIPT_WIDTH = 40;
 		this.WELCOME_MSG = "WELCOME TO SAINT CHARLES COMMUNITY BANK ATM";
-		this.bankAccounts = getBankAccountDataFromFile();
-		this.userInput = new Scanner(System.in);
-		this.currentAccount = null;
+		this.engine = engine;
+		this.session = new TransactionSession();
+		this.out = new PrintStream(new BufferedOutputStream(output, 8192), false, StandardCharsets.UTF_8);
+		this.receiptOutput = out;
+		this.exitsSystemOnQuit = exitsSystemOnQuit;
+		this.lastTransaction = null;
 		this.accountNumber = 0;
 		this.pinNumber = 0;
 		this.transactionAmount = 0;
+		this.cashDispenser = CashDispenser.withStandardCassettes();
+		this.currencyBuffer = new StringBuilder(32);
+		this.lineBuffer = new StringBuilder(GUI_WIDTH * 2);
+		this.screens = AtmScreens.forWidth(GUI_WIDTH, WELCOME_MSG);
+		this.receiptRenderer = new ReceiptRenderer(RECEIPT_WIDTH);
+	}
+
+	/**
+	 * Creates the engine every session shares. When the atm.partitionNodes system
+	 * property lists the host:port addresses of running partition nodes, separated
+	 * by commas, the engine routes each account's requests to the node that owns
+	 * it. Otherwise the accounts are loaded from the local account data files.
+	 * Every ATM routing to the same nodes must be given its own atm.terminalId,
+	 * and the system is exited if none is given or a node finds it in use.
+	 * 
+	 * @param out: the stream the load report is printed to.
+	 * @return the engine.
+	 */
+	public static TransactionEngine newTransactionEngine(PrintStream out) {
+		String partitionNodes = System.getProperty("atm.partitionNodes");
+		if (partitionNodes != null) {
+			if (System.getProperty("atm.terminalId") == null) {
+				printTerminalIdRequiredMsg(out);
+				System.exit(1);
+			}
+			ConsistentHashRing ring = ConsistentHashRing.parse(partitionNodes);
+			PartitionRouter router = new PartitionRouter(ring, TransactionIdGenerator.getShared().getTerminalId());
+			try {
+				router.connectToAllNodes();
+			} catch (IOException e) {
+				router.close();
+				printPartitionConnectFailedMsg(out, e);
+				System.exit(1);
+			}
+			out.printf("Routing accounts to %d partition nodes.\n", ring.getNodes().size());
+			return new PartitionedTransactionEngine(router);
+		}
+		return new TransactionEngine(getBankAccountDataFromFile(out));
 	}
 
 	/**
-	 * Creates the BankAccountList containing many BankAccounts created using parsed
-	 * data from an input data file.
+	 * Creates the AccountLedger over many BankAccounts created using parsed data
+	 * from the last account data snapshot, brought up to date by replaying the
+	 * transaction journal written since. Applied transactions are recorded in the
+	 * transaction history file. The accounts are kept off the heap when the
+	 * atm.offHeapAccounts system property is true. The held part of each deposit
+	 * is released after the number of milliseconds in the atm.holdMillis system
+	 * property, a day by default. Each account may withdraw up to
+	 * atm.dailyWithdrawalLimit dollars a day, and each card may make up to
+	 * atm.maxWithdrawals withdrawals in atm.withdrawalWindowMinutes minutes. The
+	 * system is exited if the account data cannot be loaded.
 	 * 
-	 * @return a list of all the current BankAccounts.
+	 * @param out: the stream the load report is printed to.
+	 * @return the ledger of all the current BankAccounts.
 	 */
-	private BankAccountList getBankAccountDataFromFile() {
-		BankAccountList bankAccounts = new BankAccountList();
-		FileInputStream accountsFileStream = null;
+	public static AccountLedger getBankAccountDataFromFile(PrintStream out) {
+		String snapshotFileName = "accounts.snapshot";
 		String inputFileName = "accounts.txt";
+		String journalFileName = "accounts.journal";
+		String historyFileName = "accounts.history";
 		try {
-			accountsFileStream = new FileInputStream(inputFileName);
-			Scanner accountsData = new Scanner(accountsFileStream);
-
-			while (accountsData.hasNext()) {
-				int accountNumber = accountsData.nextInt();
-				int pinNumber = accountsData.nextInt();
-				double accountBalance = accountsData.nextDouble();
-				String ownersName = accountsData.nextLine().trim();
-				bankAccounts.addAccount(new BankAccount(accountNumber, pinNumber, accountBalance, ownersName));
-			}
-
-			accountsData.close();
-			accountsFileStream.close();
+			AccountDataStore accountDataStore = new AccountDataStore(snapshotFileName, inputFileName,
+					journalFileName);
+			BankAccountList bankAccounts = accountDataStore.load(newBankAccountList());
+			printAccountsLoadedMsg(out, accountDataStore, bankAccounts);
+			TransactionHistory history = new TransactionHistory(Paths.get(historyFileName));
+			AccountLedger ledger = new AccountLedger(bankAccounts, accountDataStore, history);
+			long holdMillis = Long.getLong("atm.holdMillis", DEFAULT_HOLD_MILLIS);
+			ledger.startHoldClearing(holdMillis, Math.min(holdMillis, HOLD_CLEARING_TICK_MILLIS));
+			ledger.setWithdrawalLimiter(newWithdrawalLimiter());
+			return ledger;
 		} catch (IOException e) {
-			e.printStackTrace();
+			printAccountDataLoadFailedMsg(out, e);
+			System.exit(1);
+			return null;
 		}
+	}
 
-		return bankAccounts;
+	private static WithdrawalLimiter newWithdrawalLimiter() {
+		long dailyLimit = Money.fromDollars(
+				Integer.getInteger("atm.dailyWithdrawalLimit", DEFAULT_DAILY_WITHDRAWAL_LIMIT_DOLLARS));
+		int maxWithdrawals = Integer.getInteger("atm.maxWithdrawals", DEFAULT_MAX_WITHDRAWALS);
+		long windowMillis = TimeUnit.MINUTES
+				.toMillis(Integer.getInteger("atm.withdrawalWindowMinutes", DEFAULT_WITHDRAWAL_WINDOW_MINUTES));
+		return new WithdrawalLimiter(dailyLimit, maxWithdrawals, windowMillis, WITHDRAWAL_LIMITER_CARD_CAPACITY);
 	}
 
 	/**
-	 * Generate a symbolic transaction number representing the reference number of
-	 * the current transaction.
+	 * Creates the monitor that logs out sessions left idle for the number of
+	 * seconds in the atm.idleTimeoutSeconds system property, two minutes by
+	 * default.
 	 * 
-	 * @return the generated unsigned transaction number.
+	 * @return the monitor, not yet started.
 	 */
-	private String generateRandomTransactionNumber() {
-		Random random = new Random();
-		int transactionNumber = random.nextInt();
-		if (transactionNumber < 0) {
-			transactionNumber *= -1;
-		}
-		return String.valueOf(transactionNumber);
+	public static SessionIdleMonitor newSessionIdleMonitor() {
+		long idleMillis = TimeUnit.SECONDS
+				.toMillis(Integer.getInteger("atm.idleTimeoutSeconds", DEFAULT_IDLE_TIMEOUT_SECONDS));
+		return new SessionIdleMonitor(idleMillis, Math.min(idleMillis, IDLE_SWEEP_MILLIS));
 	}
 
 	/**
-	 * Formats and returns the current date in the specified String format.
+	 * Creates the empty account list to load the accounts into: an
+	 * OffHeapBankAccountList when the atm.offHeapAccounts system property is true,
+	 * or a BankAccountList otherwise.
 	 * 
-	 * @return the current date in String format.
+	 * @return the empty list.
 	 */
-	private String getFormattedDate() {
-		Date date = getCurrentDateAndTime();
-		SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
-		return dateFormat.format(date);
+	public static BankAccountList newBankAccountList() {
+		if (Boolean.getBoolean("atm.offHeapAccounts")) {
+			return new OffHeapBankAccountList();
+		}
+		return new BankAccountList();
 	}
 
 	/**
-	 * Formats and returns the current time in the specified String format.
+	 * Prints a message to the console reporting how many accounts were loaded and
+	 * how quickly the account data was read.
 	 * 
-	 * @return the current time in String format.
+	 * @param out: the stream the message is printed to.
+	 * @param accountDataStore: the store the accounts were loaded from.
+	 * @param bankAccounts: the accounts that were loaded.
 	 */
-	private String getFormattedTime() {
-		Date date = getCurrentDateAndTime();
-		SimpleDateFormat timeFormat = new SimpleDateFormat("hh:mma");
-		return timeFormat.format(date);
+	private static void printAccountsLoadedMsg(PrintStream out, AccountDataStore accountDataStore,
+			BankAccountList bankAccounts) {
+		out.printf("Loaded %d accounts from %s (%d bytes) in %d ms (%.1f MB/s).\n", bankAccounts.size(),
+				accountDataStore.getLoadedFileName(), accountDataStore.getBytesLoaded(),
+				accountDataStore.getLoadElapsedNanos() / 1_000_000, accountDataStore.getLoadMegabytesPerSecond());
 	}
 
 	/**
-	 * Creates and returns a Date object using the current date and time.
+	 * Prints a message to the console informing the user that the account data
+	 * could not be loaded.
 	 * 
-	 * @return a Date object.
+	 * @param out: the stream the message is printed to.
+	 * @param e: the cause of the failure, including the offending line number for
+	 *        malformed records.
 	 */
-	private Date getCurrentDateAndTime() {
-		Calendar c = Calendar.getInstance();
-		Date date = c.getTime();
-		return date;
+	private static void printAccountDataLoadFailedMsg(PrintStream out, IOException e) {
+		out.printf("* Error: Unable to load account data: %s\n", e.getMessage());
 	}
 
 	/**
-	 * Resets the transaction amount to its default value.
+	 * Prints a message to the console informing the user that an ATM routing to
+	 * partition nodes must be given a terminal ID of its own.
+	 * 
+	 * @param out: the stream the message is printed to.
 	 */
-	public void resetTransActionAmount() {
-		this.transactionAmount = resetNumber();
+	private static void printTerminalIdRequiredMsg(PrintStream out) {
+		out.printf("* Error: -Datm.terminalId must give this ATM a terminal ID from 0 to %d that no other ATM"
+				+ " routing to the partition nodes uses.\n", TransactionIdGenerator.MAX_TERMINAL_ID);
 	}
 
 	/**
-	 * Returns the default value of number related objects used for processing
-	 * transactions.
+	 * Prints a message to the console informing the user that the partition
+	 * nodes could not be reached or refused this ATM's terminal ID.
 	 * 
-	 * @return the default value of 0.
+	 * @param out: the stream the message is printed to.
+	 * @param e: the cause of the failure.
 	 */
-	private int resetNumber() {
-		return 0;
+	private static void printPartitionConnectFailedMsg(PrintStream out, IOException e) {
+		out.printf("* Error: Unable to connect to the partition nodes: %s\n", e.getMessage());
 	}
 
 	/**
-	 * Formats an argument String to U.S. currency format.
+	 * Sends receipts somewhere other than the screen, such as a receipt printer or
+	 * a file.
 	 * 
-	 * @param amount: the dollar amount to be formatted.
-	 * @return the dollar amount in U.S. currency format (e.g. $1,002,000.20).
+	 * @param receiptOutput: the stream receipts are written to.
 	 */
-	private String formatCurrency(double amount) {
-		NumberFormat currencyFormat = NumberFormat.getCurrencyInstance();
-		return currencyFormat.format(amount);
+	public void setReceiptOutput(OutputStream receiptOutput) {
+		this.receiptOutput = receiptOutput;
 	}
 
 	/**
-	 * Prints the login screen heading to the console.
+	 * Sets the cassettes withdrawals are dispensed from, such as one shared by
+	 * every session on the same machine. Each ATM has its own by default.
+	 * 
+	 * @param cashDispenser: the cassettes to dispense from.
 	 */
-	public void printLoginScreenHeading() {
-		printScreenHeading();
-		printLoginScreenSubHeading();
+	public void setCashDispenser(CashDispenser cashDispenser) {
+		this.cashDispenser = cashDispenser;
 	}
 
 	/**
-	 * Prints the heading containing the welcome message in between two separator
-	 * lines.
+	 * Resets the transaction amount to its default value.
 	 */
-	private void printScreenHeading() {
-		printSeparator('=');
-		printWelcomeMsg();
-		printSeparator('=');
+	public void resetTransActionAmount() {
+		this.transactionAmount = resetNumber();
 	}
 
 	/**
-	 * Prints the welcome message to the console.
+	 * Returns the default value of number related objects used for processing
+	 * transactions.
+	 * 
+	 * @return the default value of 0.
 	 */
-	private void printWelcomeMsg() {
-		printCenteredText(WELCOME_MSG);
+	private int resetNumber() {
+		return 0;
 	}
 
 	/**
-	 * Prints the login heading followed by a separator line to the console.
+	 * Formats an argument String to U.S. currency format.
+	 * 
+	 * @param amount: the amount in cents to be formatted.
+	 * @return the dollar amount in U.S. currency format (e.g. $1,002,000.20).
 	 */
-	private void printLoginScreenSubHeading() {
-		printCenteredText("Login to Continue - Type \"QUIT\" to Quit");
-		printSeparator('-');
+	private String formatCurrency(long amount) {
+		currencyBuffer.setLength(0);
+		return Money.appendCurrency(currencyBuffer, amount).toString();
 	}
 
 	/**
-	 * Prints the heading and command key to the console.
+	 * Prints the login screen heading to the console.
 	 */
-	public void printScreenHeadingAndCommandKey() {
-		printScreenHeading();
-		printCommandKey();
+	public void printLoginScreenHeading() {
+		printScreen(screens.getLoginScreenHeading());
 	}
 
 	/**
-	 * Prints the command key to the console.
+	 * Prints the heading and command key to the console.
 	 */
-	private void printCommandKey() {
-		printCenteredText("Available Commands List");
-		printSeparator('-');
-		printCommandsAndDescriptions();
-		printSeparator('=');
-		printCenteredText("Type any above command to continue");
-		printSeparator('=');
+	public void printScreenHeadingAndCommandKey() {
+		printScreen(screens.getScreenHeadingAndCommandKey());
 	}
 
 	/**
-	 * Prints a list of commands and their descriptions to the console.
+	 * Writes a pre-rendered screen to the console output buffer in one piece.
+	 * 
+	 * @param screen: the rendered screen.
 	 */
-	private void printCommandsAndDescriptions() {
-		String[] commands = new String[] { "DEPOSIT", "WITHDRAWAL", "BALANCE", "LOGOUT", "QUIT" };
-		String[] commandDescriptions = new String[] { "Deposit money into your account",
-				"Withdrawal money from your account", "View the current balance of your account",
-				"Logout of the current account", "Quit and exit the system" };
-		int i = 0;
-
-		while (i < commands.length) {
-			System.out.println(commands[i] + " - " + commandDescriptions[i]);
-			i++;
-		}
+	private void printScreen(byte[] screen) {
+		out.write(screen, 0, screen.length);
 	}
 
 	/**
-	 * Prints a separator line consisting of the argument character that is the
-	 * exact width of the GUI.
-	 * 
-	 * @param separatorChar: the character used to create the separator line.
+	 * Prints a separator line consisting of '=' characters that is the exact width
+	 * of the GUI.
 	 */
-	private void printSeparator(char separatorChar) {
-		for (int i = 0; i < GUI_WIDTH; i++) {
-			System.out.print(separatorChar);
-		}
-		System.out.println();
+	private void printSeparator() {
+		printScreen(screens.getSeparatorLine());
 	}
 
 	/**
@@ -230,112 +329,115 @@ public class Atm {
 	 * @param textToCenter: the text to be printed.
 	 */
 	private void printCenteredText(String textToCenter) {
-		int halfOfGui = GUI_WIDTH / 2;
-		int halfOfText = textToCenter.length() / 2;
-		int numSpacesNeededToCenter = halfOfGui - halfOfText;
-		char blankSpace = ' ';
-
-		for (int i = 0; i < numSpacesNeededToCenter; i++) {
-			System.out.print(blankSpace);
-		}
-		System.out.println(textToCenter);
+		lineBuffer.setLength(0);
+		out.append(screens.appendCenteredText(lineBuffer, textToCenter));
 	}
 
 	/**
-	 * Prints a symbolic gap representing the idea that the system has moved to a
-	 * new screen.
+	 * Writes everything printed so far to the console.
 	 */
-	public void printNewScreenGap() {
-		System.out.println("\n\n");
+	public void flushOutput() {
+		out.flush();
 	}
 
 	/**
-	 * Gets the user command entered by the end user.
-	 * 
-	 * @return the entered command in String format.
+	 * Prints a symbolic gap representing the idea that the system has moved to a
+	 * new screen.
 	 */
-	public String getUserCommand() {
-		String command = "";
-		boolean hasEnteredACommand = false;
-		while (!hasEnteredACommand) {
-			printEnterCommandMsg();
-			command = getUserInput();
-			hasEnteredACommand = !command.equals("");
-		}
-		return command.toLowerCase();
+	public void printNewScreenGap() {
+		out.println("\n\n");
 	}
 
 	/**
 	 * Prints a message to the console prompting the user to enter a command.
 	 */
-	private void printEnterCommandMsg() {
-		System.out.println("Please enter the command you wish to perform: ");
+	public void printEnterCommandMsg() {
+		out.println("Please enter the command you wish to perform: ");
 	}
 
 	/**
 	 * Prints a message to the console informing the user the command entered is
-	 * invalid.
+	 * invalid, and counts the invalid command.
 	 * 
 	 * @param command: the invalid command entered by the user.
 	 */
 	public void printInvalidCommandMsg(String command) {
-		System.out.println("* Error: " + command + " is not a valid command.");
+		engine.getMetrics().recordEvent(AtmMetrics.Event.INVALID_COMMAND);
+		out.println("* Error: " + command + " is not a valid command.");
 	}
 
 	/**
-	 * Reads in the next line of input from the console and returns it in String
-	 * format.
-	 * 
-	 * @return the input String.
+	 * Prints a message to the console prompting the user to enter their 7 digit
+	 * account number.
 	 */
-	private String getUserInput() {
-		String input = userInput.nextLine().trim();
-		exitSystemIfUserHasQuit(input);
-		return input;
+	public void printEnterAccountNumberMsg() {
+		out.println("Please enter your 7 digit account number (or \"CARD\" to use your card): ");
 	}
 
 	/**
-	 * Continuously prompts the user to enter their account number until a valid
-	 * account number is entered, printing an error message to the console if the
-	 * account number does not exist in the system.
+	 * Starts logging in with a card number instead of an account number when the
+	 * user enters "CARD" at the account number prompt.
+	 * 
+	 * @param input: the line entered at the account number prompt.
+	 * @return {true} if the user asked to log in by card; {false} otherwise.
 	 */
-	public void getAndValidateAccountNumber() {
-		boolean accountNumberIsValid = false;
+	public boolean startCardLoginIfRequested(String input) {
+		isLoggingInByCard = input.equalsIgnoreCase("card");
+		return isLoggingInByCard;
+	}
 
-		while (!accountNumberIsValid) {
-			printEnterAccountNumberMsg();
-			getAccountNumberInput();
-			accountNumberIsValid = accountNumber != 0;
-			if (accountNumberIsValid) {
-				currentAccount = bankAccounts.getAccount(accountNumber);
-				boolean accountDoesNotExist = currentAccount == null;
-				if (accountDoesNotExist) {
-					printAccountDoesNotExistMsg(accountNumber);
-					accountNumber = resetNumber();
-				}
-			}
-			accountNumberIsValid = accountNumber != 0;
+	/**
+	 * Parses and validates a user-entered account number, printing an error
+	 * message to the console if it is invalid or does not exist in the system.
+	 * 
+	 * @param input: the line entered at the account number prompt.
+	 * @return {true} if an existing account number was entered; {false} otherwise.
+	 */
+	public boolean acceptAccountNumber(String input) {
+		try {
+			accountNumber = Integer.parseInt(input);
+		} catch (NumberFormatException e) {
+			printInvalidAccountNumberMsg();
+			return false;
+		}
+		if (!engine.accountExists(accountNumber)) {
+			printAccountDoesNotExistMsg(accountNumber);
+			accountNumber = resetNumber();
+			return false;
 		}
+		pinAttempts = 0;
+		return true;
 	}
 
 	/**
-	 * Prints a message to the console prompting the user to enter their 7 digit
-	 * account number.
+	 * Prints a message to the console prompting the user to enter their card
+	 * number.
 	 */
-	private void printEnterAccountNumberMsg() {
-		System.out.println("Please enter your 7 digit account number: ");
+	public void printEnterCardNumberMsg() {
+		out.println("Please enter your card number: ");
 	}
 
 	/**
-	 * Gets and parses the user-entered account number printing an error message to
-	 * the console when a NumberFormatException is thrown.
+	 * Parses and validates a user-entered card number, printing an error message
+	 * to the console if it is invalid or does not match any card within the
+	 * system.
+	 * 
+	 * @param input: the line entered at the card number prompt.
+	 * @return {true} if an existing card number was entered; {false} otherwise.
 	 */
-	private void getAccountNumberInput() {
+	public boolean acceptCardNumber(String input) {
 		try {
-			accountNumber = Integer.parseInt(getUserInput());
+			cardNumber = Integer.parseInt(input);
 		} catch (NumberFormatException e) {
-			printInvalidAccountNumberMsg();
+			out.println("* Error: You have entered an invalid card number.");
+			return false;
+		}
+		if (!engine.cardExists(cardNumber)) {
+			out.printf("* Error: Card # %s does not exist in our system.\n", cardNumber);
+			return false;
 		}
+		pinAttempts = 0;
+		return true;
 	}
 
 	/**
@@ -343,7 +445,7 @@ public class Atm {
 	 * invalid account number.
 	 */
 	private void printInvalidAccountNumberMsg() {
-		System.out.println("* Error: You have entered an invalid account number.");
+		out.println("* Error: You have entered an invalid account number.");
 	}
 
 	/**
@@ -353,53 +455,51 @@ public class Atm {
 	 * @param accountNumber: the nonexistent account number entered by the user.
 	 */
 	private void printAccountDoesNotExistMsg(int accountNumber) {
-		System.out.printf("* Error: Account # %s does not exist in our system.\n", accountNumber);
-	}
-
-	/**
-	 * Gets and validates an user-entered pin number.  
-	 */
-	public void getAndValidatePinNumber() {
-		boolean pinIsValid = false;
-		int invalid = 0;
-		int loginAttempts = 0;
-		while (!pinIsValid) {
-			if (++loginAttempts == 4) {
-				printTooManyAttemptsMsg();
-				logoutOfCurrentAccount();
-				break;
-			}
-			printEnterPinNumberMsg();
-			getPinNumberInput();
-			pinIsValid = pinNumber != invalid;
-			if (pinIsValid) {
-				if (!isCorrectPinNumber()) {
-					pinIsValid = false;
-					printPinDoesNotMatchMsg();
-				}
-			}
-		}
+		out.printf("* Error: Account # %s does not exist in our system.\n", accountNumber);
 	}
 
 	/**
 	 * Prints a message to the console prompting the user to enter their 4 digit pin
 	 * number.
 	 */
-	private void printEnterPinNumberMsg() {
-		System.out.println("Please enter your 4 digit pin number: ");
+	public void printEnterPinNumberMsg() {
+		out.println("Please enter your 4 digit pin number: ");
 	}
 
 	/**
-	 * Gets a pin number entered by the user. An error message is printed to the
-	 * console if a NumberFormatException is thrown while attempting to parse the
-	 * input String to an int.
+	 * Parses a user-entered pin number and logs in if it matches the account's pin
+	 * number, printing an error message to the console otherwise. After too many
+	 * failed attempts the login is abandoned.
+	 * 
+	 * @param input: the line entered at the pin number prompt.
+	 * @return {true} if the user is now logged in; {false} otherwise.
 	 */
-	private void getPinNumberInput() {
+	public boolean acceptPinNumber(String input) {
+		pinAttempts++;
 		try {
-			pinNumber = Integer.parseInt(getUserInput());
+			pinNumber = Integer.parseInt(input);
+			if (isCorrectPinNumber()) {
+				return true;
+			}
+			printPinDoesNotMatchMsg();
 		} catch (NumberFormatException e) {
 			printInvalidPinNumberMsg();
 		}
+		if (!hasPinAttemptsLeft()) {
+			printTooManyAttemptsMsg();
+			logoutOfCurrentAccount();
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the user may try entering the pin number again.
+	 * 
+	 * @return {true} if fewer than the allowed number of attempts have failed;
+	 *         {false} otherwise.
+	 */
+	public boolean hasPinAttemptsLeft() {
+		return pinAttempts < MAX_PIN_ATTEMPTS;
 	}
 
 	/**
@@ -407,17 +507,20 @@ public class Atm {
 	 * entered is invalid.
 	 */
 	private void printInvalidPinNumberMsg() {
-		System.out.println("* Error: You have entered an invalid pin number.");
+		out.println("* Error: You have entered an invalid pin number.");
 	}
 
 	/**
-	 * Checks that the entered pin number matches the pin number of the account that
-	 * the user is attempting to log in to.
+	 * Logs in to the account the user is attempting to log in to, provided the
+	 * entered pin number matches its pin number.
 	 * 
 	 * @return {true} if the pin numbers are indeed matching; {false} otherwise.
 	 */
 	private boolean isCorrectPinNumber() {
-		return pinNumber == currentAccount.getPinNumber();
+		if (isLoggingInByCard) {
+			return engine.loginWithCard(session, cardNumber, pinNumber).isApproved();
+		}
+		return engine.login(session, accountNumber, pinNumber).isApproved();
 	}
 
 	/**
@@ -426,7 +529,7 @@ public class Atm {
 	 * to.
 	 */
 	private void printPinDoesNotMatchMsg() {
-		System.out.println("* Error: The pin number entered does not match our records.");
+		out.println("* Error: The pin number entered does not match our records.");
 	}
 
 	/**
@@ -434,7 +537,7 @@ public class Atm {
 	 * the max amount of failed login attempts allowed.
 	 */
 	private void printTooManyAttemptsMsg() {
-		System.out.println("* Error: Too many failed login attemps. Goodbye.");
+		out.println("* Error: Too many failed login attemps. Goodbye.");
 		printNewScreenGap();
 	}
 
@@ -443,9 +546,9 @@ public class Atm {
 	 * into the system.
 	 */
 	public void printNowLoggedInMsg() {
-		printSeparator('=');
-		printCenteredText("You are now logged in as " + currentAccount.getOwnersName());
-		printSeparator('=');
+		printSeparator();
+		printCenteredText("You are now logged in as " + session.getCurrentAccount().getOwnersName());
+		printSeparator();
 	}
 
 	/**
@@ -454,19 +557,24 @@ public class Atm {
 	 * @return {true} if an account is been logged into; {false} otherwise.
 	 */
 	public boolean isLoggedIn() {
-		return currentAccount != null && pinNumber == currentAccount.getPinNumber();
+		return session.isLoggedIn();
 	}
 
 	/**
 	 * Exits the system after updating all account data in the system (printing the output file) and printing a thank you message when
-	 * the "QUIT" command is entered by the user.
+	 * the "QUIT" command is entered by the user. A session sharing its ledger with
+	 * other sessions is ended instead, leaving the system running.
 	 * 
-	 * @param command
+	 * @param command: the line entered by the user.
 	 */
-	private void exitSystemIfUserHasQuit(String command) {
+	public void exitSystemIfUserHasQuit(String command) {
 		if (command.equalsIgnoreCase("quit")) {
 			printThankYouMsg();
+			if (!exitsSystemOnQuit) {
+				throw new SessionEndedException();
+			}
 			printUpdatedInfoToBankAccountDataFile();
+			flushOutput();
 			System.exit(-1);
 		}
 	}
@@ -475,26 +583,32 @@ public class Atm {
 	 * Prints the current account's available and actual balances to the console.
 	 */
 	public void printAccountBalance() {
-		System.out.printf("Available balance: %41s\n" + "Total balance: %45s\n",
-				String.format("%s", formatCurrency(currentAccount.getAvailableBalance())),
-				String.format("%s", formatCurrency(currentAccount.getActualBalance())));
+		TransactionResult balance = engine.balance(session);
+		if (!balance.isApproved()) {
+			printAccountUnavailableMsg();
+			return;
+		}
+		out.printf("Available balance: %41s\n" + "Total balance: %45s\n",
+				String.format("%s", formatCurrency(balance.getAvailableBalance())),
+				String.format("%s", formatCurrency(balance.getActualBalance())));
 	}
 
 	/**
-	 * Gets and validates an user-entered transaction amount. If transaction amount
-	 * is found to be invalid the transaction is not processed and a error message
-	 * is printed to the console.
+	 * Prints a mini-statement of the most recent transactions on the current
+	 * account, newest first.
 	 */
-	public void getAndValidateTransactionAmount() {
-		while (!isValidTransactionAmount()) {
-			printEnterTransactionAmountMsg();
-			try {
-				transactionAmount = Integer.parseInt(getUserInput());
-				rejectTransactionIfAmountIsInvalid();
-			} catch (IllegalArgumentException e) {
-				transactionAmount = resetNumber();
-				printInvalidTransactionAmountMsg();
-			}
+	public void printMiniStatement() {
+		List<HistoryEntry> entries = engine.miniStatement(session, MINI_STATEMENT_LENGTH);
+		if (entries.isEmpty()) {
+			out.println("There are no transactions on this account.");
+			return;
+		}
+		out.printf("%-20s %-12s %14s %14s\n", "Date", "Type", "Amount", "Balance");
+		for (HistoryEntry entry : entries) {
+			String date = STATEMENT_DATE_FORMAT
+					.format(Instant.ofEpochMilli(entry.getTimestampMillis()).atZone(ZoneId.systemDefault()));
+			out.printf("%-20s %-12s %14s ", date, entry.getTransactionTypeName(), formatCurrency(entry.getAmount()));
+			out.printf("%14s\n", formatCurrency(entry.getActualBalance()));
 		}
 	}
 
@@ -502,8 +616,28 @@ public class Atm {
 	 * Prints a message to the console prompting the user to enter a transaction
 	 * amount.
 	 */
-	private void printEnterTransactionAmountMsg() {
-		System.out.println("Please enter the transaction amount (e.g. \"25\"): ");
+	public void printEnterTransactionAmountMsg() {
+		out.println("Please enter the transaction amount (e.g. \"25\"): ");
+	}
+
+	/**
+	 * Parses and validates a user-entered transaction amount. If the transaction
+	 * amount is found to be invalid the transaction is not processed and a error
+	 * message is printed to the console.
+	 * 
+	 * @param input: the line entered at the transaction amount prompt.
+	 * @return {true} if the transaction amount is valid; {false} otherwise.
+	 */
+	public boolean acceptTransactionAmount(String input) {
+		try {
+			transactionAmount = Money.fromDollars(Integer.parseInt(input));
+			rejectTransactionIfAmountIsInvalid();
+			return true;
+		} catch (IllegalArgumentException e) {
+			transactionAmount = resetNumber();
+			printInvalidTransactionAmountMsg();
+			return false;
+		}
 	}
 
 	/**
@@ -541,18 +675,43 @@ public class Atm {
 	 * transaction amount is not valid.
 	 */
 	private void printInvalidTransactionAmountMsg() {
-		System.out.println("* Error: The transaction amount entered is not valid.");
+		out.println("* Error: The transaction amount entered is not valid.");
+	}
+
+	/**
+	 * Takes a new ID from the shared transaction ID generator for the transaction
+	 * about to be made, keeping it for the transaction's receipt.
+	 * 
+	 * @return the transaction ID.
+	 */
+	private long nextTransactionId() {
+		lastTransactionId = TransactionIdGenerator.getShared().nextId();
+		return lastTransactionId;
 	}
 
 	/**
 	 * Makes a deposit into the currently logged in account increasing its balance
 	 * by the transaction amount.
+	 * 
+	 * @return {true} if the deposit was made; {false} otherwise.
 	 */
-	public void depositTransactionAmountIntoAccount() {
-		String transactionType = "Deposit";
-		double newBalance = currentAccount.getActualBalance() + transactionAmount;
-		currentAccount.setAccountBalance(newBalance);
-		setTransactionType(transactionType);
+	public boolean depositTransactionAmountIntoAccount() {
+		TransactionResult deposit = null;
+		try {
+			deposit = engine.deposit(session, transactionAmount, nextTransactionId());
+		} catch (IOException e) {
+			endOnSaveFailure(e);
+		}
+		if (deposit != null && deposit.getStatus() == TransactionStatus.TRANSACTION_ID_CONFLICT) {
+			printTransactionNotProcessedMsg();
+			return false;
+		}
+		if (deposit == null || !deposit.isApproved()) {
+			printAccountUnavailableMsg();
+			return false;
+		}
+		lastTransaction = deposit;
+		return true;
 	}
 
 	/**
@@ -563,36 +722,104 @@ public class Atm {
 	 *         otherwise.
 	 */
 	public boolean withdrawalTransactionAmountFromAccount() {
-		String transactionType = "Withdrawal";
-		if (isNotEnoughFunds()) {
-			printNotEnoughFundsMsg();
+		int[] notes = cashDispenser.reserve(transactionAmount);
+		if (notes == null) {
+			printCannotDispenseAmountMsg();
 			return false;
-		} else {
-			double newBalance = currentAccount.getActualBalance() - transactionAmount;
-			currentAccount.setAccountBalance(newBalance);
-			setTransactionType(transactionType);
-			return true;
 		}
+		TransactionResult withdrawal = null;
+		try {
+			withdrawal = engine.withdraw(session, transactionAmount, nextTransactionId());
+		} catch (IOException e) {
+			cashDispenser.release(notes);
+			endOnSaveFailure(e);
+		}
+		if (withdrawal == null || !withdrawal.isApproved()) {
+			cashDispenser.release(notes);
+			printWithdrawalRefusedMsg(withdrawal);
+			return false;
+		}
+		lastTransaction = withdrawal;
+		printDispensedNotesMsg(notes);
+		return true;
+	}
+
+	/**
+	 * Prints a message to the console prompting the user to enter the account
+	 * number of the account to transfer to.
+	 */
+	public void printEnterTransferAccountNumberMsg() {
+		out.println("Please enter the 7 digit account number to transfer to: ");
 	}
 
 	/**
-	 * Set the transaction type.
+	 * Parses and validates the account number of the account to transfer to,
+	 * printing an error message to the console if it is invalid, does not exist
+	 * in the system or is the account logged in to.
 	 * 
-	 * @param transactionType: Either {"Withdrawal"} or {"Deposit"}.
+	 * @param input: the line entered at the transfer account number prompt.
+	 * @return {true} if another existing account number was entered; {false}
+	 *         otherwise.
 	 */
-	private void setTransactionType(String transactionType) {
-		this.transactionType = transactionType;
+	public boolean acceptTransferAccountNumber(String input) {
+		try {
+			transferAccountNumber = Integer.parseInt(input);
+		} catch (NumberFormatException e) {
+			printInvalidAccountNumberMsg();
+			return false;
+		}
+		if (!engine.accountExists(transferAccountNumber)) {
+			printAccountDoesNotExistMsg(transferAccountNumber);
+			return false;
+		}
+		if (transferAccountNumber == session.getCurrentAccount().getAccountNumber()) {
+			out.println("* Error: You cannot transfer money to the account you are logged in to.");
+			return false;
+		}
+		return true;
 	}
 
 	/**
-	 * Checks if the current account has enough funds to process the current
-	 * transaction.
+	 * Transfers the transaction amount from the currently logged in account to
+	 * the account entered, decreasing its balance by the transaction amount.
 	 * 
-	 * @return: {true} if enough funds exist; {false} otherwise.
+	 * @return {true} if enough funds exist to process the transfer; {false}
+	 *         otherwise.
 	 */
-	private boolean isNotEnoughFunds() {
-		boolean notEnoughFunds = currentAccount.getAvailableBalance() - transactionAmount < 0;
-		return notEnoughFunds;
+	public boolean transferTransactionAmountToAccount() {
+		TransactionResult transfer = null;
+		try {
+			transfer = engine.transfer(session, transferAccountNumber, transactionAmount, nextTransactionId());
+		} catch (IOException e) {
+			endOnSaveFailure(e);
+		}
+		if (transfer == null || !transfer.isApproved()) {
+			printTransferRefusedMsg(transfer);
+			return false;
+		}
+		lastTransaction = transfer;
+		out.printf("Transferred %s to account # %s.\n", formatCurrency(transactionAmount), transferAccountNumber);
+		return true;
+	}
+
+	/**
+	 * Prints a message to the console saying the amount entered cannot be made up
+	 * from the notes left in the machine.
+	 */
+	private void printCannotDispenseAmountMsg() {
+		engine.getMetrics().recordEvent(AtmMetrics.Event.UNDISPENSABLE_AMOUNT);
+		out.println("* Error: This machine cannot dispense that amount in notes.");
+	}
+
+	/**
+	 * Prints a message to the console listing the notes dispensed.
+	 * 
+	 * @param notes: the number of notes dispensed from each cassette.
+	 */
+	private void printDispensedNotesMsg(int[] notes) {
+		lineBuffer.setLength(0);
+		lineBuffer.append("Please take your cash: ");
+		out.println(cashDispenser.appendNotes(lineBuffer, notes));
 	}
 
 	/**
@@ -600,140 +827,175 @@ public class Atm {
 	 * enough funds to process the current transaction.
 	 */
 	private void printNotEnoughFundsMsg() {
-		System.out.println("* Error: Not have enough funds to perform this trasaction.");
+		out.println("* Error: Not have enough funds to perform this trasaction.");
 	}
 
 	/**
-	 * Prints a message to the console informing the user that their transaction
-	 * receipt is being printed.
-	 */
-	public void printProcessingReceiptMsg() {
-		printSeparator('=');
-		printCenteredText("Processing Transaction and Printing Receipt");
-		printSeparator('=');
+	 * Prints a message to the console explaining why a withdrawal was refused.
+	 * 
+	 * @param withdrawal: the refused withdrawal, or null if it could not be made.
+	 */
+	private void printWithdrawalRefusedMsg(TransactionResult withdrawal) {
+		TransactionStatus status = withdrawal == null ? null : withdrawal.getStatus();
+		if (status == TransactionStatus.DAILY_LIMIT_EXCEEDED) {
+			out.println("* Error: This withdrawal would exceed your daily withdrawal limit.");
+		} else if (status == TransactionStatus.WITHDRAWAL_RATE_EXCEEDED) {
+			out.println("* Error: Too many withdrawals have been made recently. Please try again later.");
+		} else if (status == TransactionStatus.PARTITION_UNAVAILABLE) {
+			printAccountUnavailableMsg();
+		} else if (status == TransactionStatus.TRANSACTION_ID_CONFLICT) {
+			printTransactionNotProcessedMsg();
+		} else {
+			printNotEnoughFundsMsg();
+		}
 	}
 
 	/**
-	 * Prints a transaction receipt to the console.
-	 */
-	public void printReceipt() {
-		printNewScreenGap();
-		printReceiptHeading();
-		printReceiptBody();
-		printReceiptFooter();
-		printNewScreenGap();
+	 * Prints a message to the console giving the reason a transfer was refused.
+	 * 
+	 * @param transfer: the refused transfer.
+	 */
+	private void printTransferRefusedMsg(TransactionResult transfer) {
+		TransactionStatus status = transfer == null ? null : transfer.getStatus();
+		if (status == TransactionStatus.CROSS_PARTITION_TRANSFER) {
+			out.println("* Error: Transfers to that account cannot be made from this ATM.");
+		} else if (status == TransactionStatus.PARTITION_UNAVAILABLE) {
+			printAccountUnavailableMsg();
+		} else if (status == TransactionStatus.TRANSACTION_ID_CONFLICT) {
+			printTransactionNotProcessedMsg();
+		} else {
+			printNotEnoughFundsMsg();
+		}
 	}
 
 	/**
-	 * Prints the receipt heading to the console consisting of the title and two
-	 * separator lines.
+	 * Prints a message to the console informing the user that their account could
+	 * not be reached, such as when the partition node holding it is down.
 	 */
-	private void printReceiptHeading() {
-		printReceiptSeparator('*');
-		printReceiptCenteredText("ATM TRANSACTION RECEIPT");
-		printReceiptSeparator('*');
+	private void printAccountUnavailableMsg() {
+		out.println("* Error: Your account cannot be reached right now. Please try again later.");
 	}
 
 	/**
-	 * Prints the receipt body to the console consisting of all the details of the
-	 * current transaction.
+	 * Prints a message to the console informing the user that their transaction
+	 * was refused because its transaction ID had already been used.
 	 */
-	private void printReceiptBody() {
-		String date = String.format("Date: %34s", getFormattedDate());
-		String time = String.format("Time: %34s", getFormattedTime());
-		String location = String.format("Location: %30s", "12 Mid Rivers Dr");
-		String atm = String.format("ATM: %35s", "4512");
-		String cardNumber = String.format("Customer Card: %25s", currentAccount.getCardNumber());
-		String transactionNum = String.format("Transaction #: %25.2s", generateRandomTransactionNumber());
-		String typeOfTransaction = String.format("Transaction: %27s", "Checking " + transactionType);
-		String amountOfTransaction = String.format("Amount: %32s", formatCurrency(transactionAmount));
-		String accountNum = String.format("From Account #: %24s", currentAccount.getAccountNumber());
-		String currentAvailableBalance = String.format("Available Balance: %21s",
-				formatCurrency(currentAccount.getAvailableBalance()));
-		String currentTotalBalance = String.format("Total Balance: %25s",
-				formatCurrency(currentAccount.getActualBalance()));
-		String thankYouMsg = "Thank you for using our ATM.\nFor questions, call 1-800-869-3557\nBusiness customers call 1-800-255-5935\n";
-		System.out.printf("\n%s\n%s\n%s\n%s\n\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n\n%s\n", date, time, location, atm,
-				cardNumber, transactionNum, typeOfTransaction, amountOfTransaction, accountNum, currentAvailableBalance,
-				currentTotalBalance, thankYouMsg);
+	private void printTransactionNotProcessedMsg() {
+		out.println("* Error: This transaction could not be processed. Please try again.");
 	}
 
 	/**
-	 * Prints the receipt footer to the console which consists of a separator line
-	 * followed by the banks name and FDIC information.
+	 * Prints a message to the console informing the user that their transaction
+	 * receipt is being printed.
 	 */
-	private void printReceiptFooter() {
-		printReceiptSeparator('*');
-		System.out.println();
-		printReceiptCenteredText("Saint Charles Community Bank");
-		printReceiptCenteredText("N.A. Member FDIC");
+	public void printProcessingReceiptMsg() {
+		printScreen(screens.getProcessingReceiptMsg());
 	}
 
 	/**
-	 * Prints a separating line consisting of an argument character to the width of
-	 * the receipt.
-	 * 
-	 * @param separatorChar: the character printed repeatedly to create the
-	 *        separator.
+	 * Prints a transaction receipt to the receipt output, which is the console
+	 * unless another output has been set.
 	 */
-	private void printReceiptSeparator(char separatorChar) {
-		for (int i = 0; i < RECEIPT_WIDTH; i++) {
-			System.out.print(separatorChar);
+	public void printReceipt() {
+		long startTime = System.nanoTime();
+		try {
+			receiptRenderer.writeReceipt(receiptOutput, session.getCurrentAccount().getCardNumber(),
+					lastTransactionId, lastTransaction);
+			if (receiptOutput != out) {
+				receiptOutput.flush();
+			}
+		} catch (IOException e) {
+			printReceiptFailedMsg(e);
 		}
-		System.out.println();
+		engine.getMetrics().recordSince(AtmMetrics.Operation.RECEIPT, startTime);
 	}
 
 	/**
-	 * Prints an argument String to the console centered to the width of the
-	 * receipt.
+	 * Prints a message to the console informing the user that their receipt could
+	 * not be printed.
 	 * 
-	 * @param textToCenter: the text to print.
+	 * @param e: the cause of the failure.
 	 */
-	private void printReceiptCenteredText(String textToCenter) {
-		int halfOfReceipt = (RECEIPT_WIDTH) / 2;
-		int halfOfText = textToCenter.length() / 2;
-		int numSpacesNeededToCenter = halfOfReceipt - halfOfText;
-		char blankSpace = ' ';
-		for (int i = 0; i < numSpacesNeededToCenter; i++) {
-			System.out.print(blankSpace);
-		}
-		System.out.println(textToCenter);
+	private void printReceiptFailedMsg(IOException e) {
+		out.printf("* Error: Unable to print your receipt: %s\n", e.getMessage());
 	}
 
 	/**
 	 * Logs out the currently logged in bank account.
 	 */
 	public void logoutOfCurrentAccount() {
-		currentAccount = null;
+		engine.logout(session);
+		lastTransaction = null;
 		accountNumber = resetNumber();
+		cardNumber = resetNumber();
+		transferAccountNumber = resetNumber();
+		isLoggingInByCard = false;
 		pinNumber = resetNumber();
 	}
 
+	/**
+	 * Prints a message to the console informing the user that they have been
+	 * logged out after leaving the ATM idle, and counts the timeout.
+	 */
+	public void printIdleTimeoutMsg() {
+		engine.getMetrics().recordEvent(AtmMetrics.Event.IDLE_TIMEOUT);
+		out.println("* Your session has timed out due to inactivity.");
+		printNewScreenGap();
+	}
+
 	/**
 	 * Prints a thank you message to the console in between to separator lines.
 	 */
 	public void printThankYouMsg() {
-		printSeparator('=');
-		printCenteredText("Thank you for choosing Saint Charles Community Bank ATM");
-		printSeparator('=');
+		printScreen(screens.getThankYouMsg());
 	}
 
 	/**
-	 * Prints the data of all BankAccounts contained in the BankAccountsList to a
-	 * output file.
+	 * Compacts the data of all BankAccounts contained in the BankAccountsList into
+	 * a new account data snapshot and clears the transaction journal.
 	 */
 	private void printUpdatedInfoToBankAccountDataFile() {
-		FileOutputStream accountsFileStream = null;
 		try {
-			accountsFileStream = new FileOutputStream("accounts.txt");
-			PrintWriter fileWriter = new PrintWriter(accountsFileStream);
-			fileWriter.write(bankAccounts.toString());
-			fileWriter.close();
-			accountsFileStream.close();
-
+			engine.saveAndClose();
 		} catch (IOException e) {
-			e.printStackTrace();
+			printAccountDataSaveFailedMsg(e);
 		}
 	}
 
+	/**
+	 * Stops taking transactions when one could not be journaled, since later ones
+	 * could otherwise be silently lost too. An ATM that owns its ledger exits the
+	 * system. A session sharing its ledger with other sessions is ended instead,
+	 * leaving the system and the other sessions running.
+	 * 
+	 * @param e: the cause of the failure.
+	 */
+	private void endOnSaveFailure(IOException e) {
+		printAccountDataSaveFailedMsg(e);
+		if (!exitsSystemOnQuit) {
+			printSessionEndedMsg();
+			throw new SessionEndedException();
+		}
+		flushOutput();
+		System.exit(1);
+	}
+
+	/**
+	 * Prints a message to the console informing the user that their session has
+	 * been ended because of an error.
+	 */
+	private void printSessionEndedMsg() {
+		out.println("* Error: This session has been ended. Please try again later.");
+	}
+
+	/**
+	 * Prints a message to the console informing the user that the account data
+	 * could not be saved.
+	 * 
+	 * @param e: the cause of the failure.
+	 */
+	private void printAccountDataSaveFailedMsg(IOException e) {
+		out.printf("* Error: Unable to save account data: %s\n", e.getMessage());
+	}
+
 }
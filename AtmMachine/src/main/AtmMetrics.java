@@ -0,0 +1,134 @@
+package main;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and latency histograms for the ATM's operations, shared by every
+ * session in the process. Recording never allocates, so it can sit on every
+ * transaction's path.
+ *
+ * Snapshots are exported as plain text, one metric per line, for example:
+ *
+ * <pre>
+ * atm_operation_count{operation="deposit"} 1042
+ * atm_operation_latency_nanos{operation="deposit",quantile="0.99"} 245759
+ * atm_event_count{event="insufficient_funds"} 17
+ * </pre>
+ */
+public class AtmMetrics {
+	/**
+	 * The operations whose latencies are recorded.
+	 */
+	public enum Operation {
+		LOGIN, DEPOSIT, WITHDRAWAL, TRANSFER, BALANCE, RECEIPT, LOAD, SAVE
+	}
+
+	/**
+	 * The events that are counted.
+	 */
+	public enum Event {
+		FAILED_PIN_ATTEMPT, TOO_MANY_PIN_ATTEMPTS, INSUFFICIENT_FUNDS, DAILY_LIMIT_EXCEEDED, WITHDRAWAL_RATE_EXCEEDED,
+		UNDISPENSABLE_AMOUNT, INVALID_COMMAND, IDLE_TIMEOUT, DUPLICATE_TRANSACTION, TRANSACTION_ID_CONFLICT,
+		HISTORY_WRITE_FAILED, COMPACTION_FAILED
+	}
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final LatencyHistogram[] latencies;
+	private final LongAdder[] eventCounts;
+
+	public AtmMetrics() {
+		this.latencies = new LatencyHistogram[Operation.values().length];
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new LatencyHistogram();
+		}
+		this.eventCounts = new LongAdder[Event.values().length];
+		for (int i = 0; i < eventCounts.length; i++) {
+			eventCounts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records how long an operation took.
+	 *
+	 * @param operation: the operation.
+	 * @param startNanos: the System.nanoTime() at which the operation started.
+	 */
+	public void recordSince(Operation operation, long startNanos) {
+		latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records how long an operation took.
+	 *
+	 * @param operation: the operation.
+	 * @param nanos: the time it took in nanoseconds.
+	 */
+	public void recordLatency(Operation operation, long nanos) {
+		latencies[operation.ordinal()].record(nanos);
+	}
+
+	public void recordEvent(Event event) {
+		eventCounts[event.ordinal()].increment();
+	}
+
+	public LatencyHistogram getLatency(Operation operation) {
+		return latencies[operation.ordinal()];
+	}
+
+	public long getEventCount(Event event) {
+		return eventCounts[event.ordinal()].sum();
+	}
+
+	/**
+	 * Appends a snapshot of every metric as text.
+	 *
+	 * @param out: where the snapshot is appended.
+	 */
+	public void writeText(Appendable out) throws IOException {
+		out.append("# ATM metrics at ").append(Instant.now().toString()).append('\n');
+		for (Operation operation : Operation.values()) {
+			LatencyHistogram latency = getLatency(operation);
+			String name = operation.name().toLowerCase(Locale.ROOT);
+			appendMetric(out, "atm_operation_count{operation=\"", name, "\"}", latency.getCount());
+			for (double quantile : QUANTILES) {
+				appendMetric(out, "atm_operation_latency_nanos{operation=\"", name,
+						"\",quantile=\"" + quantile + "\"}", latency.getValueAtPercentile(quantile * 100));
+			}
+			appendMetric(out, "atm_operation_latency_nanos_mean{operation=\"", name, "\"}",
+					latency.getMeanNanos());
+			appendMetric(out, "atm_operation_latency_nanos_max{operation=\"", name, "\"}", latency.getMaxNanos());
+		}
+		for (Event event : Event.values()) {
+			appendMetric(out, "atm_event_count{event=\"", event.name().toLowerCase(Locale.ROOT), "\"}",
+					getEventCount(event));
+		}
+	}
+
+	/**
+	 * Writes a snapshot of every metric to a file, replacing the last snapshot
+	 * atomically so a reader never sees a partly written one.
+	 *
+	 * @param file: the file to write.
+	 */
+	public void writeToFile(Path file) throws IOException {
+		Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+			writeText(writer);
+		}
+		Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void appendMetric(Appendable out, String prefix, String name, String suffix, long value)
+			throws IOException {
+		out.append(prefix).append(name).append(suffix).append(' ').append(Long.toString(value)).append('\n');
+	}
+}
@@ -0,0 +1,145 @@
+package main;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The static screens of the ATM, rendered once for a given GUI width and kept
+ * as byte arrays so that drawing one is a single write to the output. Every ATM
+ * session with the same width and welcome message shares the same screens.
+ */
+public class AtmScreens {
+	private static volatile AtmScreens lastCreated;
+
+	private final int width;
+	private final String welcomeMsg;
+	private final byte[] loginScreenHeading;
+	private final byte[] screenHeadingAndCommandKey;
+	private final byte[] processingReceiptMsg;
+	private final byte[] thankYouMsg;
+	private final byte[] separatorLine;
+
+	private AtmScreens(int width, String welcomeMsg) {
+		this.width = width;
+		this.welcomeMsg = welcomeMsg;
+		this.loginScreenHeading = renderLoginScreenHeading();
+		this.screenHeadingAndCommandKey = renderScreenHeadingAndCommandKey();
+		this.processingReceiptMsg = renderBanner("Processing Transaction and Printing Receipt");
+		this.thankYouMsg = renderBanner("Thank you for choosing Saint Charles Community Bank ATM");
+		this.separatorLine = toBytes(appendSeparator(new StringBuilder(), '='));
+	}
+
+	/**
+	 * Gets the screens for a GUI width and welcome message, rendering them only if
+	 * they have not been rendered already.
+	 *
+	 * @param width: the width of the GUI in characters.
+	 * @param welcomeMsg: the message shown in every screen heading.
+	 * @return the rendered screens.
+	 */
+	public static AtmScreens forWidth(int width, String welcomeMsg) {
+		AtmScreens screens = lastCreated;
+		if (screens == null || screens.width != width || !screens.welcomeMsg.equals(welcomeMsg)) {
+			screens = new AtmScreens(width, welcomeMsg);
+			lastCreated = screens;
+		}
+		return screens;
+	}
+
+	public byte[] getLoginScreenHeading() {
+		return loginScreenHeading;
+	}
+
+	public byte[] getScreenHeadingAndCommandKey() {
+		return screenHeadingAndCommandKey;
+	}
+
+	public byte[] getProcessingReceiptMsg() {
+		return processingReceiptMsg;
+	}
+
+	public byte[] getThankYouMsg() {
+		return thankYouMsg;
+	}
+
+	/**
+	 * Gets a line of '=' characters the width of the GUI.
+	 *
+	 * @return the separator line, including its line terminator.
+	 */
+	public byte[] getSeparatorLine() {
+		return separatorLine;
+	}
+
+	/**
+	 * Appends a separator line consisting of the argument character that is the
+	 * exact width of the GUI.
+	 *
+	 * @param sb: the builder to append to.
+	 * @param separatorChar: the character used to create the separator line.
+	 * @return the builder.
+	 */
+	public StringBuilder appendSeparator(StringBuilder sb, char separatorChar) {
+		for (int i = 0; i < width; i++) {
+			sb.append(separatorChar);
+		}
+		return sb.append('\n');
+	}
+
+	/**
+	 * Appends a line of text exactly centered to the middle of the GUI.
+	 *
+	 * @param sb: the builder to append to.
+	 * @param textToCenter: the text to be centered.
+	 * @return the builder.
+	 */
+	public StringBuilder appendCenteredText(StringBuilder sb, String textToCenter) {
+		int numSpacesNeededToCenter = width / 2 - textToCenter.length() / 2;
+		for (int i = 0; i < numSpacesNeededToCenter; i++) {
+			sb.append(' ');
+		}
+		return sb.append(textToCenter).append('\n');
+	}
+
+	private byte[] renderLoginScreenHeading() {
+		StringBuilder sb = appendScreenHeading(new StringBuilder());
+		appendCenteredText(sb, "Login to Continue - Type \"QUIT\" to Quit");
+		appendSeparator(sb, '-');
+		return toBytes(sb);
+	}
+
+	private byte[] renderScreenHeadingAndCommandKey() {
+		StringBuilder sb = appendScreenHeading(new StringBuilder());
+		appendCenteredText(sb, "Available Commands List");
+		appendSeparator(sb, '-');
+		String[] commands = new String[] { "DEPOSIT", "WITHDRAWAL", "TRANSFER", "BALANCE", "STATEMENT",
+				"LOGOUT", "QUIT" };
+		String[] commandDescriptions = new String[] { "Deposit money into your account",
+				"Withdrawal money from your account", "Transfer money to another account",
+				"View the current balance of your account",
+				"View the last transactions on your account",
+				"Logout of the current account", "Quit and exit the system" };
+		for (int i = 0; i < commands.length; i++) {
+			sb.append(commands[i]).append(" - ").append(commandDescriptions[i]).append('\n');
+		}
+		appendSeparator(sb, '=');
+		appendCenteredText(sb, "Type any above command to continue");
+		appendSeparator(sb, '=');
+		return toBytes(sb);
+	}
+
+	private StringBuilder appendScreenHeading(StringBuilder sb) {
+		appendSeparator(sb, '=');
+		appendCenteredText(sb, welcomeMsg);
+		return appendSeparator(sb, '=');
+	}
+
+	private byte[] renderBanner(String text) {
+		StringBuilder sb = appendSeparator(new StringBuilder(), '=');
+		appendCenteredText(sb, text);
+		return toBytes(appendSeparator(sb, '='));
+	}
+
+	private static byte[] toBytes(StringBuilder sb) {
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
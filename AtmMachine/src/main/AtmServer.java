@@ -0,0 +1,244 @@
+package main;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves many ATM terminals from one process. Each terminal connects over a
+ * local TCP socket and gets its own Atm session, with its own login and command
+ * state. Every session shares one TransactionEngine and the AccountLedger
+ * behind it, and every withdrawal is dispensed from one shared set of note
+ * cassettes.
+ *
+ * A single selector thread reads and writes every terminal's socket without
+ * blocking. Each line a terminal sends is handled by its session on a virtual
+ * thread when the JVM supports them, or on a cached pool of platform threads
+ * otherwise, so an idle terminal holds no thread. Sessions left idle are
+ * logged out by one SessionIdleMonitor thread after the number of seconds in
+ * the atm.idleTimeoutSeconds system property.
+ *
+ * When the atm.partitionNodes system property is set, the accounts are held
+ * by separate PartitionNode processes instead and each request is routed to
+ * the node that owns its account.
+ *
+ * Metrics for every session are written to atm-metrics.txt every few seconds
+ * and served as text from http://127.0.0.1:[metrics port]/metrics.
+ *
+ * <pre>
+ * java main.AtmServer [port] [metrics port]
+ * </pre>
+ */
+public class AtmServer {
+	private static final int DEFAULT_PORT = 4512;
+	private static final int DEFAULT_METRICS_PORT = 4513;
+	private static final Path METRICS_FILE = Paths.get("atm-metrics.txt");
+	private static final long METRICS_EXPORT_PERIOD_SECONDS = 10;
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+	private final TransactionEngine engine;
+	private final ExecutorService sessionExecutor;
+	private final MetricsExporter metricsExporter;
+	private final CashDispenser cashDispenser;
+	private final SessionIdleMonitor idleMonitor;
+	private final Queue<TerminalConnection> writeRequests;
+	private final CountDownLatch selectorStopped;
+	private volatile Selector selector;
+	private volatile ServerSocketChannel serverChannel;
+
+	public AtmServer(TransactionEngine engine) {
+		this.engine = engine;
+		this.cashDispenser = CashDispenser.withStandardCassettes();
+		this.sessionExecutor = newSessionExecutor();
+		this.metricsExporter = new MetricsExporter(engine.getMetrics());
+		this.idleMonitor = Atm.newSessionIdleMonitor();
+		this.writeRequests = new ConcurrentLinkedQueue<>();
+		this.selectorStopped = new CountDownLatch(1);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int metricsPort = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_METRICS_PORT;
+		TransactionEngine engine = Atm.newTransactionEngine(System.out);
+		AtmServer server = new AtmServer(engine);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
+		server.exportMetrics(metricsPort);
+		server.serve(port);
+	}
+
+	/**
+	 * Accepts terminal connections on the loopback interface and serves them until
+	 * the process is stopped or the server is shut down.
+	 * 
+	 * @param port: the port to listen on.
+	 */
+	public void serve(int port) throws IOException {
+		try (Selector selector = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			this.serverChannel = serverChannel;
+			this.selector = selector;
+			serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+			idleMonitor.start();
+			InetSocketAddress address = (InetSocketAddress) serverChannel.getLocalAddress();
+			System.out.printf("ATM server listening on %s:%d\n", address.getAddress().getHostAddress(),
+					address.getPort());
+			while (serverChannel.isOpen()) {
+				selector.select();
+				enableRequestedWrites();
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				while (selectedKeys.hasNext()) {
+					SelectionKey key = selectedKeys.next();
+					selectedKeys.remove();
+					handleReadyKey(key);
+				}
+			}
+		} finally {
+			selectorStopped.countDown();
+		}
+	}
+
+	/**
+	 * Starts writing the metrics to a file and serving them over HTTP.
+	 *
+	 * @param metricsPort: the port the metrics endpoint listens on.
+	 */
+	public void exportMetrics(int metricsPort) throws IOException {
+		metricsExporter.exportToFile(METRICS_FILE, METRICS_EXPORT_PERIOD_SECONDS);
+		metricsExporter.serveHttp(metricsPort);
+	}
+
+	private void handleReadyKey(SelectionKey key) throws IOException {
+		if (!key.isValid()) {
+			return;
+		}
+		if (key.isAcceptable()) {
+			acceptTerminal((ServerSocketChannel) key.channel());
+			return;
+		}
+		TerminalConnection connection = (TerminalConnection) key.attachment();
+		try {
+			if (key.isReadable()) {
+				connection.onReadable();
+			}
+			if (key.isValid() && key.isWritable()) {
+				connection.onWritable();
+			}
+		} catch (IOException e) {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Accepts a terminal connection and starts an ATM session over it.
+	 * 
+	 * @param serverChannel: the channel with a connection waiting.
+	 */
+	private void acceptTerminal(ServerSocketChannel serverChannel) throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		TerminalConnection connection = new TerminalConnection(channel, sessionExecutor, this::requestWrite);
+		Atm atm = new Atm(engine, connection.getOutput(), false);
+		atm.setCashDispenser(cashDispenser);
+		AtmSession session = new AtmSession(atm);
+		connection.open(session, channel.register(selector, SelectionKey.OP_READ, connection));
+		idleMonitor.register(session);
+		session.start();
+	}
+
+	/**
+	 * Asks the selector thread to write a connection's queued output, or to read
+	 * its input again.
+	 * 
+	 * @param connection: the connection with output waiting.
+	 */
+	private void requestWrite(TerminalConnection connection) {
+		writeRequests.add(connection);
+		selector.wakeup();
+	}
+
+	private void enableRequestedWrites() {
+		TerminalConnection connection;
+		while ((connection = writeRequests.poll()) != null) {
+			connection.updateInterestOps();
+		}
+	}
+
+	/**
+	 * Stops accepting new sessions and input, waits for the lines already being
+	 * handled to finish, then compacts the accounts into a new snapshot and
+	 * writes a last metrics snapshot. Handlers are never interrupted, since an
+	 * interrupt in the middle of a journal write closes the journal for every
+	 * session. If they have not finished in time the accounts are left to be
+	 * recovered from the journal on the next start instead of being compacted
+	 * underneath them.
+	 */
+	public void shutdown() {
+		idleMonitor.close();
+		stopSelector();
+		sessionExecutor.shutdown();
+		try {
+			if (!sessionExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				System.out.println("* Error: Sessions are still running; account data is left in the journal.");
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			engine.saveAndClose();
+		} catch (IOException e) {
+			System.out.printf("* Error: Unable to save account data: %s\n", e.getMessage());
+		}
+		metricsExporter.close(METRICS_FILE);
+	}
+
+	/**
+	 * Closes the listening socket and waits for the selector thread to leave its
+	 * loop and close the selector, so that no new line is handed to a session
+	 * afterwards.
+	 */
+	private void stopSelector() {
+		if (selector == null) {
+			return;
+		}
+		try {
+			serverChannel.close();
+			selector.wakeup();
+			selectorStopped.await(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (IOException e) {
+			System.out.printf("* Error: Unable to stop accepting terminals: %s\n", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Creates an executor that starts a virtual thread per line of input when the
+	 * running JVM provides them, falling back to a cached platform thread pool.
+	 */
+	private static ExecutorService newSessionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
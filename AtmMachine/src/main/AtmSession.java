@@ -0,0 +1,262 @@
+package main;
+
+/**
+ * The login and command flow of one ATM terminal, driven a line of input at a
+ * time. Each line moves the session from the state it is waiting in to the
+ * next one and prints the prompt for it, so the session never blocks waiting
+ * for input and needs no thread of its own between lines.
+ *
+ * A session left waiting for input for longer than the idle timeout while
+ * logged in, or part way through logging in, is logged out and sent back to
+ * the login screen by a SessionIdleMonitor.
+ */
+public class AtmSession {
+	private enum State {
+		ACCOUNT_NUMBER, CARD_NUMBER, PIN_NUMBER, COMMAND, DEPOSIT_AMOUNT, WITHDRAWAL_AMOUNT, TRANSFER_ACCOUNT,
+		TRANSFER_AMOUNT, ENDED
+	}
+
+	private final Atm atm;
+	private volatile State state;
+	private volatile long lastInputMillis;
+
+	public AtmSession(Atm atm) {
+		this.atm = atm;
+		this.state = State.ACCOUNT_NUMBER;
+		this.lastInputMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Prints the login screen and waits for the first line of input.
+	 */
+	public synchronized void start() {
+		lastInputMillis = System.currentTimeMillis();
+		state = showLoginScreen();
+		atm.flushOutput();
+	}
+
+	/**
+	 * Handles a line entered by the user and prompts for the next one.
+	 *
+	 * @param line: the line entered.
+	 * @return {true} if the session is waiting for more input; {false} if it has
+	 *         ended.
+	 * @throws RuntimeException if handling the line failed, which ends the
+	 *         session.
+	 */
+	public synchronized boolean handleInput(String line) {
+		if (state == State.ENDED) {
+			return false;
+		}
+		lastInputMillis = System.currentTimeMillis();
+		String input = line.trim();
+		try {
+			atm.exitSystemIfUserHasQuit(input);
+			state = nextState(input);
+		} catch (SessionEndedException e) {
+			end();
+		} catch (RuntimeException e) {
+			state = State.ENDED;
+			throw e;
+		}
+		atm.flushOutput();
+		return state != State.ENDED;
+	}
+
+	/**
+	 * Logs out and returns to the login screen if the session has been waiting
+	 * for input for longer than the idle timeout. A session waiting at the login
+	 * screen has nothing to time out.
+	 *
+	 * @param nowMillis: the current time.
+	 * @param idleMillis: the idle timeout.
+	 * @return {true} if the session was timed out; {false} otherwise.
+	 */
+	public boolean logOutIfIdle(long nowMillis, long idleMillis) {
+		if (nowMillis - lastInputMillis < idleMillis) {
+			return false;
+		}
+		synchronized (this) {
+			if (nowMillis - lastInputMillis < idleMillis || state == State.ACCOUNT_NUMBER
+					|| state == State.ENDED) {
+				return false;
+			}
+			atm.logoutOfCurrentAccount();
+			atm.resetTransActionAmount();
+			atm.printIdleTimeoutMsg();
+			state = showLoginScreen();
+			atm.flushOutput();
+			return true;
+		}
+	}
+
+	/**
+	 * Ends the session, such as when its terminal disconnects, logging out of the
+	 * current account.
+	 */
+	public synchronized void end() {
+		atm.logoutOfCurrentAccount();
+		state = State.ENDED;
+		atm.flushOutput();
+	}
+
+	/**
+	 * Checks if the session has ended.
+	 *
+	 * @return {true} if the user has quit or the session was ended; {false}
+	 *         otherwise.
+	 */
+	public boolean isEnded() {
+		return state == State.ENDED;
+	}
+
+	private State nextState(String input) {
+		switch (state) {
+		case ACCOUNT_NUMBER:
+			return handleAccountNumber(input);
+		case CARD_NUMBER:
+			return handleCardNumber(input);
+		case PIN_NUMBER:
+			return handlePinNumber(input);
+		case COMMAND:
+			return handleCommand(input);
+		case DEPOSIT_AMOUNT:
+			return handleDepositAmount(input);
+		case WITHDRAWAL_AMOUNT:
+			return handleWithdrawalAmount(input);
+		case TRANSFER_ACCOUNT:
+			return handleTransferAccount(input);
+		case TRANSFER_AMOUNT:
+			return handleTransferAmount(input);
+		default:
+			return state;
+		}
+	}
+
+	private State handleAccountNumber(String input) {
+		if (atm.startCardLoginIfRequested(input)) {
+			atm.printEnterCardNumberMsg();
+			return State.CARD_NUMBER;
+		}
+		if (atm.acceptAccountNumber(input)) {
+			atm.printEnterPinNumberMsg();
+			return State.PIN_NUMBER;
+		}
+		atm.printEnterAccountNumberMsg();
+		return State.ACCOUNT_NUMBER;
+	}
+
+	private State handleCardNumber(String input) {
+		if (atm.acceptCardNumber(input)) {
+			atm.printEnterPinNumberMsg();
+			return State.PIN_NUMBER;
+		}
+		atm.printEnterAccountNumberMsg();
+		return State.ACCOUNT_NUMBER;
+	}
+
+	private State handlePinNumber(String input) {
+		if (atm.acceptPinNumber(input)) {
+			atm.printNowLoggedInMsg();
+			atm.printNewScreenGap();
+			atm.printScreenHeadingAndCommandKey();
+			return promptForCommand();
+		}
+		if (atm.hasPinAttemptsLeft()) {
+			atm.printEnterPinNumberMsg();
+			return State.PIN_NUMBER;
+		}
+		return showLoginScreen();
+	}
+
+	private State handleCommand(String input) {
+		if (input.isEmpty()) {
+			return promptForCommand();
+		}
+		String commandEntered = input.toLowerCase();
+		switch (commandEntered) {
+		case "deposit":
+			atm.printEnterTransactionAmountMsg();
+			return State.DEPOSIT_AMOUNT;
+		case "withdrawal":
+			atm.printEnterTransactionAmountMsg();
+			return State.WITHDRAWAL_AMOUNT;
+		case "transfer":
+			atm.printEnterTransferAccountNumberMsg();
+			return State.TRANSFER_ACCOUNT;
+		case "balance":
+			atm.printAccountBalance();
+			break;
+		case "statement":
+			atm.printMiniStatement();
+			break;
+		case "logout":
+			atm.printThankYouMsg();
+			atm.logoutOfCurrentAccount();
+			atm.printNewScreenGap();
+			return showLoginScreen();
+		default:
+			atm.printInvalidCommandMsg(commandEntered);
+		}
+		return promptForCommand();
+	}
+
+	private State handleDepositAmount(String input) {
+		if (!atm.acceptTransactionAmount(input)) {
+			atm.printEnterTransactionAmountMsg();
+			return State.DEPOSIT_AMOUNT;
+		}
+		if (atm.depositTransactionAmountIntoAccount()) {
+			atm.printProcessingReceiptMsg();
+			atm.printReceipt();
+			atm.printScreenHeadingAndCommandKey();
+		}
+		return promptForCommand();
+	}
+
+	private State handleWithdrawalAmount(String input) {
+		if (!atm.acceptTransactionAmount(input)) {
+			atm.printEnterTransactionAmountMsg();
+			return State.WITHDRAWAL_AMOUNT;
+		}
+		if (atm.withdrawalTransactionAmountFromAccount()) {
+			atm.printProcessingReceiptMsg();
+			atm.printReceipt();
+			atm.printScreenHeadingAndCommandKey();
+		}
+		return promptForCommand();
+	}
+
+	private State handleTransferAccount(String input) {
+		if (!atm.acceptTransferAccountNumber(input)) {
+			return promptForCommand();
+		}
+		atm.printEnterTransactionAmountMsg();
+		return State.TRANSFER_AMOUNT;
+	}
+
+	private State handleTransferAmount(String input) {
+		if (!atm.acceptTransactionAmount(input)) {
+			atm.printEnterTransactionAmountMsg();
+			return State.TRANSFER_AMOUNT;
+		}
+		if (atm.transferTransactionAmountToAccount()) {
+			atm.printProcessingReceiptMsg();
+			atm.printReceipt();
+			atm.printScreenHeadingAndCommandKey();
+		}
+		return promptForCommand();
+	}
+
+	private State promptForCommand() {
+		atm.resetTransActionAmount();
+		atm.printEnterCommandMsg();
+		return State.COMMAND;
+	}
+
+	private State showLoginScreen() {
+		atm.printLoginScreenHeading();
+		atm.printEnterAccountNumberMsg();
+		return State.ACCOUNT_NUMBER;
+	}
+}
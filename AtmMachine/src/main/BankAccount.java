@@ -1,35 +1,58 @@
 /* Created by Adam Jost on 08/07/2021 */
 package main;
 
-import java.util.Random;
-
 public class BankAccount {
 
 	private int number;
-	private int pinNumber;
+	private PinHash pinHash;
 	private int cardNumber;
-	private double actualBalance;
-	private double availableBalance;
+	private long actualBalance;
+	private long availableBalance;
 	private String ownersFullName;
 
-	public BankAccount(int accountNumber, int pinNumber, double balance, String ownersName) {
+	/**
+	 * Creates an account whose full balance is available, hashing its PIN.
+	 * 
+	 * @param balance: the balance in cents.
+	 */
+	public BankAccount(int accountNumber, int pinNumber, long balance, String ownersName) {
+		this(accountNumber, PinHash.create(pinNumber), balance, balance, ownersName);
+	}
+
+	/**
+	 * Creates an account whose full balance is available.
+	 * 
+	 * @param pinHash: the hash of the account's PIN.
+	 * @param balance: the balance in cents.
+	 */
+	public BankAccount(int accountNumber, PinHash pinHash, long balance, String ownersName) {
+		this(accountNumber, pinHash, balance, balance, ownersName);
+	}
+
+	/**
+	 * Creates an account with part of its balance not yet available.
+	 * 
+	 * @param pinHash: the hash of the account's PIN.
+	 * @param actualBalance: the actual balance in cents.
+	 * @param availableBalance: the available balance in cents.
+	 */
+	public BankAccount(int accountNumber, PinHash pinHash, long actualBalance, long availableBalance,
+			String ownersName) {
 		this.number = accountNumber;
-		this.pinNumber = pinNumber;
-		this.actualBalance = balance;
-		this.availableBalance = balance;
+		this.pinHash = pinHash;
+		this.actualBalance = actualBalance;
+		this.availableBalance = availableBalance;
 		this.ownersFullName = ownersName;
-		this.cardNumber = generateRandomCardNumber();
-	}
-	
-	public int generateRandomCardNumber() {
-		Random random = new Random();
-		int cardNumber = random.nextInt();
-		if (cardNumber < 0) {
-			cardNumber *= -1;
-		}
-		return cardNumber;
+		this.cardNumber = CardNumberGenerator.getShared().cardNumberFor(accountNumber);
 	}
 
+	/**
+	 * Creates an account for a subclass that keeps the account's data somewhere
+	 * other than these fields, overriding every getter and the balance hooks.
+	 */
+	protected BankAccount() {
+	}
+	
 	public int getAccountNumber() {
 		return this.number;
 	}
@@ -38,40 +61,170 @@ public class BankAccount {
 		return this.cardNumber;
 	}
 
-	public int getPinNumber() {
-		return this.pinNumber;
+	public PinHash getPinHash() {
+		return this.pinHash;
 	}
 
-	public double getActualBalance() {
-		return this.actualBalance;
+	/**
+	 * Checks an entered PIN against the account's PIN hash.
+	 * 
+	 * @param pinNumber: the PIN entered.
+	 * @return {true} if the PIN is correct; {false} otherwise.
+	 */
+	public boolean isCorrectPin(int pinNumber) {
+		return getPinHash().matches(pinNumber);
+	}
+
+	/**
+	 * Gets the object whose monitor guards the account's balances. Callers that
+	 * need several balance operations to happen atomically synchronize on it.
+	 * 
+	 * @return the account itself.
+	 */
+	public Object getLock() {
+		return this;
+	}
+
+	/**
+	 * Gets the rank of the account's lock in the order locks are taken when the
+	 * locks of several accounts are held at once, such as for a transfer. Taking
+	 * locks in rank order means two threads can never each hold a lock the other
+	 * is waiting for. Accounts sharing a lock share a rank.
+	 * 
+	 * @return the account number.
+	 */
+	public long getLockRank() {
+		return getAccountNumber();
+	}
+
+	public long getActualBalance() {
+		synchronized (getLock()) {
+			return readActualBalance();
+		}
 	}
 	
-	public double getAvailableBalance() {
-		return this.availableBalance;
+	public long getAvailableBalance() {
+		synchronized (getLock()) {
+			return readAvailableBalance();
+		}
 	}
 
 	public String getOwnersName() {
 		return this.ownersFullName;
 	}
 
-	public void setAccountBalance(double newBalance) {
-		setAvailableBalance(newBalance);
-		this.actualBalance = newBalance;
+	public void setAccountBalance(long newBalance) {
+		synchronized (getLock()) {
+			setAvailableBalance(newBalance);
+			writeBalances(newBalance, readAvailableBalance());
+		}
 	}
 	
-	public void setAvailableBalance(double newBalance) {
-		boolean isDepositTransaction = actualBalance < newBalance;
-		if (isDepositTransaction) {
-			double tenPercentOfDepositedFunds = (newBalance - actualBalance) / 10;
-			availableBalance = actualBalance + tenPercentOfDepositedFunds;
-		} else {
-			double amountDecreased = actualBalance - newBalance;
-			availableBalance = availableBalance - (amountDecreased);
+	/**
+	 * Updates the available balance for a change to the actual balance. Only ten
+	 * percent of a deposit becomes available straight away; the rest is held until
+	 * it is released with releaseHeldFunds.
+	 * 
+	 * @param newBalance: the actual balance after the change, in cents.
+	 */
+	public void setAvailableBalance(long newBalance) {
+		synchronized (getLock()) {
+			long actualBalance = readActualBalance();
+			boolean isDepositTransaction = actualBalance < newBalance;
+			if (isDepositTransaction) {
+				long depositedFunds = newBalance - actualBalance;
+				long tenPercentOfDepositedFunds = depositedFunds - getHeldPortionOfDeposit(depositedFunds);
+				writeBalances(actualBalance, readAvailableBalance() + tenPercentOfDepositedFunds);
+			} else {
+				long amountDecreased = actualBalance - newBalance;
+				writeBalances(actualBalance, readAvailableBalance() - amountDecreased);
+			}
 		}
 	}
 	
+	/**
+	 * Makes held funds available, never making the available balance exceed the
+	 * actual balance.
+	 * 
+	 * @param amount: the amount held in cents.
+	 * @return the amount made available in cents.
+	 */
+	public long releaseHeldFunds(long amount) {
+		synchronized (getLock()) {
+			long availableBalance = readAvailableBalance();
+			long releasedFunds = Math.min(amount, readActualBalance() - availableBalance);
+			if (releasedFunds <= 0) {
+				return 0;
+			}
+			writeBalances(readActualBalance(), availableBalance + releasedFunds);
+			return releasedFunds;
+		}
+	}
+
+	/**
+	 * Adds funds that are available straight away, such as funds transferred from
+	 * another account.
+	 * 
+	 * @param amount: the amount in cents.
+	 */
+	public void addClearedFunds(long amount) {
+		synchronized (getLock()) {
+			writeBalances(readActualBalance() + amount, readAvailableBalance() + amount);
+		}
+	}
+
+	/**
+	 * Gets the part of a deposit that is held rather than made available straight
+	 * away.
+	 * 
+	 * @param amount: the amount deposited in cents.
+	 * @return the amount held in cents.
+	 */
+	public static long getHeldPortionOfDeposit(long amount) {
+		return amount - amount / 10;
+	}
+
+	/**
+	 * Restores both balances to values recorded earlier, such as when replaying the
+	 * transaction journal.
+	 * 
+	 * @param actualBalance: the recorded actual balance in cents.
+	 * @param availableBalance: the recorded available balance in cents.
+	 */
+	public void restoreBalances(long actualBalance, long availableBalance) {
+		synchronized (getLock()) {
+			writeBalances(actualBalance, availableBalance);
+		}
+	}
+
+	/**
+	 * Reads the actual balance. Called with the account's lock held.
+	 */
+	protected long readActualBalance() {
+		return this.actualBalance;
+	}
+
+	/**
+	 * Reads the available balance. Called with the account's lock held.
+	 */
+	protected long readAvailableBalance() {
+		return this.availableBalance;
+	}
+
+	/**
+	 * Stores both balances. Called with the account's lock held.
+	 */
+	protected void writeBalances(long actualBalance, long availableBalance) {
+		this.actualBalance = actualBalance;
+		this.availableBalance = availableBalance;
+	}
+
 	@Override
 	public String toString() {
-		return String.format("%s %s %.2f %s", getAccountNumber(), getPinNumber(), getActualBalance(), getOwnersName());
+		StringBuilder sb = new StringBuilder(160);
+		sb.append(getAccountNumber()).append(' ');
+		getPinHash().appendTo(sb).append(' ');
+		Money.appendDecimal(sb, getActualBalance());
+		return sb.append(' ').append(getOwnersName()).toString();
 	}
 }
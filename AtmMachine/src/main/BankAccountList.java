@@ -2,41 +2,154 @@
 package main;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 
-public class BankAccountList {
+public class BankAccountList implements Iterable<BankAccount> {
 	private ArrayList<BankAccount> bankAccounts;
+	private IntIndexMap accountNumberIndex;
+	private IntIndexMap cardNumberIndex;
 	
 	public BankAccountList() {
 		bankAccounts = new ArrayList<>();
+		accountNumberIndex = new IntIndexMap();
+		cardNumberIndex = new IntIndexMap();
 	}
 	
 	/**
 	 * Adds a new BankAccount to the list.
 	 * @param newAccount: the BankAccount to be added. 
+	 * @throws IllegalArgumentException if an account with the same account number
+	 *         or card number is already in the list.
 	 */
 	public void addAccount(BankAccount newAccount) {
-		bankAccounts.add(newAccount);
+		if (accountNumberIndex.get(newAccount.getAccountNumber()) >= 0) {
+			throw new IllegalArgumentException("Duplicate account number " + newAccount.getAccountNumber());
+		}
+		if (cardNumberIndex.get(newAccount.getCardNumber()) >= 0) {
+			throw new IllegalArgumentException("Duplicate card number for account " + newAccount.getAccountNumber());
+		}
+		int position = storeAccount(newAccount);
+		accountNumberIndex.put(newAccount.getAccountNumber(), position);
+		cardNumberIndex.put(newAccount.getCardNumber(), position);
 	}
 	
+	/**
+	 * Removes the BankAccount with the matching account number, moving the last
+	 * account in the list into its position. BankAccounts looked up before the
+	 * removal must not be used after it, and no other thread may use the list
+	 * while it runs.
+	 * @param accountNumber: the account number of the account to be removed.
+	 * @return: {true} if the account was found and removed; {false} otherwise.
+	 */
+	public boolean removeAccount(int accountNumber) {
+		int position = accountNumberIndex.get(accountNumber);
+		if (position < 0) {
+			return false;
+		}
+		accountNumberIndex.remove(accountNumber);
+		cardNumberIndex.remove(accountAt(position).getCardNumber());
+		int lastPosition = size() - 1;
+		if (position != lastPosition) {
+			BankAccount lastAccount = accountAt(lastPosition);
+			accountNumberIndex.put(lastAccount.getAccountNumber(), position);
+			cardNumberIndex.put(lastAccount.getCardNumber(), position);
+		}
+		removeLastAccountInto(position);
+		return true;
+	}
+
+	/**
+	 * Grows the list and its indexes ahead of a bulk load.
+	 * @param expectedSize: the total number of accounts the list is expected to hold.
+	 */
+	public void ensureCapacity(int expectedSize) {
+		ensureStorageCapacity(expectedSize);
+		accountNumberIndex.ensureCapacity(expectedSize);
+		cardNumberIndex.ensureCapacity(expectedSize);
+	}
+
 	/**
 	 * Gets a BankAccount with the matching account number from the BankAccount list. 
 	 * @param accountNumber: the account number of the account to be retrieved.
 	 * @return: the BankAccount with the matching account number if found; null otherwise. 
 	 */
 	public BankAccount getAccount(int accountNumber) {
-		for (BankAccount currentAccount : bankAccounts) {
-			if (currentAccount.getAccountNumber() == accountNumber) {
-				return currentAccount;
-			}
+		return getAccountAt(accountNumberIndex.get(accountNumber));
+	}
+
+	/**
+	 * Gets a BankAccount with the matching card number from the BankAccount list.
+	 * @param cardNumber: the card number of the account to be retrieved.
+	 * @return: the BankAccount with the matching card number if found; null otherwise.
+	 */
+	public BankAccount getAccountByCardNumber(int cardNumber) {
+		return getAccountAt(cardNumberIndex.get(cardNumber));
+	}
+
+	/**
+	 * Gets the BankAccount stored at a position found in one of the indexes.
+	 * @param position: the position of the account in the list, or -1 if it was not found.
+	 * @return: the BankAccount at the position if found; null otherwise.
+	 */
+	private BankAccount getAccountAt(int position) {
+		boolean isNonExistent = position < 0;
+		if (isNonExistent) {
+			return null;
 		}
-		BankAccount isNonExistent = null;
-		return isNonExistent;
+		return accountAt(position);
+	}
+
+	/**
+	 * Stores a new BankAccount after the last one. Subclasses that keep accounts
+	 * somewhere other than an ArrayList override this along with
+	 * removeLastAccountInto, ensureStorageCapacity, accountAt, size and iterator.
+	 * @param newAccount: the BankAccount to be stored.
+	 * @return: the position the account was stored at.
+	 */
+	protected int storeAccount(BankAccount newAccount) {
+		int position = bankAccounts.size();
+		bankAccounts.add(newAccount);
+		return position;
+	}
+
+	/**
+	 * Moves the last BankAccount into a position, overwriting the account there,
+	 * and shrinks the list by one.
+	 * @param position: the position to overwrite, which may be the last one.
+	 */
+	protected void removeLastAccountInto(int position) {
+		BankAccount lastAccount = bankAccounts.remove(bankAccounts.size() - 1);
+		if (position < bankAccounts.size()) {
+			bankAccounts.set(position, lastAccount);
+		}
+	}
+
+	protected void ensureStorageCapacity(int expectedSize) {
+		bankAccounts.ensureCapacity(expectedSize);
+	}
+
+	/**
+	 * Gets the BankAccount stored at a position.
+	 * @param position: a position returned by storeAccount.
+	 * @return: the BankAccount at the position.
+	 */
+	protected BankAccount accountAt(int position) {
+		return bankAccounts.get(position);
+	}
+
+	public int size() {
+		return bankAccounts.size();
+	}
+
+	@Override
+	public Iterator<BankAccount> iterator() {
+		return bankAccounts.iterator();
 	}
 	
     @Override 
     public String toString() {
     	StringBuilder sb = new StringBuilder();
-    	for (BankAccount currentAccount : bankAccounts) {
+    	for (BankAccount currentAccount : this) {
     		sb.append(currentAccount.toString()).append("\n");
     	}
     	return sb.toString();
@@ -0,0 +1,186 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Applies a file of deposits and withdrawals, such as a branch's end-of-day
+ * file, in a single pass. Records are read into batches and each batch is
+ * applied to the ledger in file order with one journal commit, after which a
+ * result line for every record is written to the results file.
+ *
+ * Each line of the transactions file holds an account number, DEPOSIT or
+ * WITHDRAWAL, and an amount in dollars, separated by blanks:
+ *
+ * <pre>
+ * 1000001 DEPOSIT 250.00
+ * 1000002 WITHDRAWAL 40
+ * </pre>
+ *
+ * Each line of the results file holds the record's line number, the record and
+ * its outcome, or only the line number and INVALID_RECORD if it could not be
+ * read:
+ *
+ * <pre>
+ * 1 1000001 DEPOSIT 250.00 APPROVED
+ * 2 1000002 WITHDRAWAL 40.00 INSUFFICIENT_FUNDS
+ * </pre>
+ *
+ * <pre>
+ * java main.BatchTransactionProcessor transactions-file results-file [batch size]
+ * </pre>
+ */
+public class BatchTransactionProcessor {
+	private static final int DEFAULT_BATCH_SIZE = 4096;
+	private static final String DEPOSIT = "DEPOSIT";
+	private static final String WITHDRAWAL = "WITHDRAWAL";
+
+	private final AccountLedger ledger;
+	private final TransactionBatch batch;
+	private final StringBuilder resultLine;
+	private long recordsProcessed;
+	private long recordsApproved;
+
+	public BatchTransactionProcessor(AccountLedger ledger, int batchSize) {
+		this.ledger = ledger;
+		this.batch = new TransactionBatch(batchSize);
+		this.resultLine = new StringBuilder(64);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: java main.BatchTransactionProcessor transactions-file results-file [batch size]");
+			System.exit(2);
+		}
+		int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_SIZE;
+		AccountLedger ledger = Atm.getBankAccountDataFromFile(System.out);
+		BatchTransactionProcessor processor = new BatchTransactionProcessor(ledger, batchSize);
+		long startTime = System.nanoTime();
+		processor.process(Paths.get(args[0]), Paths.get(args[1]));
+		long elapsedNanos = System.nanoTime() - startTime;
+		ledger.compact();
+		ledger.close();
+		System.out.printf("Processed %d transactions (%d approved, %d rejected) in %d ms.\n",
+				processor.getRecordsProcessed(), processor.getRecordsApproved(),
+				processor.getRecordsProcessed() - processor.getRecordsApproved(), elapsedNanos / 1_000_000);
+	}
+
+	/**
+	 * Applies every record of a transactions file and writes their results.
+	 *
+	 * @param transactionsFile: the file of records to apply.
+	 * @param resultsFile: the file the results are written to.
+	 */
+	public void process(Path transactionsFile, Path resultsFile) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(transactionsFile, StandardCharsets.UTF_8);
+				BufferedWriter writer = Files.newBufferedWriter(resultsFile, StandardCharsets.UTF_8)) {
+			int lineNumber = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isBlank()) {
+					continue;
+				}
+				addRecord(line, lineNumber);
+				if (batch.isFull()) {
+					applyAndWriteBatch(writer);
+				}
+			}
+			applyAndWriteBatch(writer);
+		}
+	}
+
+	public long getRecordsProcessed() {
+		return recordsProcessed;
+	}
+
+	public long getRecordsApproved() {
+		return recordsApproved;
+	}
+
+	/**
+	 * Reads the fields of a record into the batch, adding it as an invalid record
+	 * if any field cannot be read.
+	 */
+	private void addRecord(String line, int lineNumber) {
+		int accountStart = skipBlanks(line, 0);
+		int accountEnd = skipField(line, accountStart);
+		int typeStart = skipBlanks(line, accountEnd);
+		int typeEnd = skipField(line, typeStart);
+		int amountStart = skipBlanks(line, typeEnd);
+		int amountEnd = skipField(line, amountStart);
+		byte transactionType = parseTransactionType(line, typeStart, typeEnd);
+		if (transactionType == 0 || skipBlanks(line, amountEnd) != line.length()) {
+			batch.addInvalid(lineNumber);
+			return;
+		}
+		try {
+			int accountNumber = Integer.parseInt(line, accountStart, accountEnd, 10);
+			long amount = Money.parseDollars(line, amountStart, amountEnd);
+			batch.add(lineNumber, accountNumber, transactionType, amount);
+		} catch (NumberFormatException e) {
+			batch.addInvalid(lineNumber);
+		}
+	}
+
+	private void applyAndWriteBatch(BufferedWriter writer) throws IOException {
+		recordsApproved += ledger.applyBatch(batch);
+		recordsProcessed += batch.size();
+		for (int i = 0; i < batch.size(); i++) {
+			writeResult(writer, i);
+		}
+		batch.clear();
+	}
+
+	private void writeResult(BufferedWriter writer, int index) throws IOException {
+		resultLine.setLength(0);
+		resultLine.append(batch.getLineNumber(index)).append(' ');
+		TransactionStatus status = batch.getStatus(index);
+		if (status != TransactionStatus.INVALID_RECORD) {
+			resultLine.append(batch.getAccountNumber(index)).append(' ');
+			resultLine.append(batch.getTransactionType(index) == TransactionJournal.DEPOSIT ? DEPOSIT : WITHDRAWAL);
+			resultLine.append(' ');
+			Money.appendDecimal(resultLine, batch.getAmount(index)).append(' ');
+		}
+		resultLine.append(status.name()).append('\n');
+		writer.append(resultLine);
+	}
+
+	/**
+	 * @return TransactionJournal.DEPOSIT or TransactionJournal.WITHDRAWAL, or 0 if
+	 *         the field is neither.
+	 */
+	private static byte parseTransactionType(String line, int start, int end) {
+		int length = end - start;
+		if (length == DEPOSIT.length() && line.regionMatches(true, start, DEPOSIT, 0, length)) {
+			return TransactionJournal.DEPOSIT;
+		}
+		if (length == WITHDRAWAL.length() && line.regionMatches(true, start, WITHDRAWAL, 0, length)) {
+			return TransactionJournal.WITHDRAWAL;
+		}
+		return 0;
+	}
+
+	private static int skipBlanks(String line, int position) {
+		while (position < line.length() && isBlank(line.charAt(position))) {
+			position++;
+		}
+		return position;
+	}
+
+	private static int skipField(String line, int position) {
+		while (position < line.length() && !isBlank(line.charAt(position))) {
+			position++;
+		}
+		return position;
+	}
+
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t';
+	}
+}
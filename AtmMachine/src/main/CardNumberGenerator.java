@@ -0,0 +1,107 @@
+package main;
+
+/**
+ * Derives each account's card number from its account number by a keyed
+ * permutation of the non-negative ints. Every step of the permutation can be
+ * undone, so two different account numbers can never get the same card number,
+ * and the same seed always gives an account the same card number, even after
+ * the accounts are reloaded. Deriving a card number takes a few multiplications
+ * and shares no state, so one generator serves every thread.
+ *
+ * The shared generator is seeded from the atm.cardNumberSeed system property.
+ * Anyone who knows the seed can work out card numbers from account numbers, so
+ * each deployment should set its own.
+ */
+public final class CardNumberGenerator {
+	private static final long DEFAULT_SEED = 0x5eed_ca2d_2021L;
+	private static final long MASK = 0x7fffffffL;
+	private static final long FIRST_MULTIPLIER = 0x2545f491L;
+	private static final long SECOND_MULTIPLIER = 0x9e3779b1L;
+	private static final long THIRD_MULTIPLIER = 0x6c8e9cf5L;
+	private static final long FIRST_INVERSE = inverseOf(FIRST_MULTIPLIER);
+	private static final long SECOND_INVERSE = inverseOf(SECOND_MULTIPLIER);
+	private static final long THIRD_INVERSE = inverseOf(THIRD_MULTIPLIER);
+	private static final CardNumberGenerator SHARED = new CardNumberGenerator(
+			Long.getLong("atm.cardNumberSeed", DEFAULT_SEED));
+
+	private final long firstKey;
+	private final long secondKey;
+
+	/**
+	 * @param seed: the key of the permutation.
+	 */
+	public CardNumberGenerator(long seed) {
+		long mixed = mix(seed);
+		this.firstKey = mixed & MASK;
+		this.secondKey = (mixed >>> 32) & MASK;
+	}
+
+	/**
+	 * Gets the generator every account uses.
+	 *
+	 * @return the shared generator.
+	 */
+	public static CardNumberGenerator getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Gets the card number for an account.
+	 *
+	 * @param accountNumber: the account number, which must not be negative.
+	 * @return the card number, which is never negative.
+	 */
+	public int cardNumberFor(int accountNumber) {
+		long x = (accountNumber ^ firstKey) & MASK;
+		x = (x * FIRST_MULTIPLIER) & MASK;
+		x ^= x >>> 15;
+		x = (x + secondKey) & MASK;
+		x = (x * SECOND_MULTIPLIER) & MASK;
+		x ^= x >>> 13;
+		x = (x * THIRD_MULTIPLIER) & MASK;
+		x ^= x >>> 16;
+		return (int) x;
+	}
+
+	/**
+	 * Gets the account number a card number was derived from by undoing each step
+	 * of cardNumberFor in reverse order, so the account a card belongs to can be
+	 * found without looking the card up.
+	 *
+	 * @param cardNumber: the card number, which must not be negative.
+	 * @return the account number whose card number it would be, whether or not
+	 *         that account exists.
+	 */
+	public int accountNumberFor(int cardNumber) {
+		long x = cardNumber & MASK;
+		x ^= x >>> 16;
+		x = (x * THIRD_INVERSE) & MASK;
+		x ^= (x >>> 13) ^ (x >>> 26);
+		x = (x * SECOND_INVERSE) & MASK;
+		x = (x - secondKey) & MASK;
+		x ^= (x >>> 15) ^ (x >>> 30);
+		x = (x * FIRST_INVERSE) & MASK;
+		return (int) ((x ^ firstKey) & MASK);
+	}
+
+	/**
+	 * Finds the multiplicative inverse of an odd number modulo 2^31 by Newton's
+	 * iteration, each round of which doubles the number of correct low bits.
+	 */
+	private static long inverseOf(long multiplier) {
+		long inverse = multiplier;
+		for (int i = 0; i < 5; i++) {
+			inverse *= 2 - multiplier * inverse;
+		}
+		return inverse & MASK;
+	}
+
+	/**
+	 * The SplitMix64 finalizer, used to turn the seed into the two keys.
+	 */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+}
@@ -0,0 +1,248 @@
+package main;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The note cassettes of one machine. A withdrawal reserves the fewest notes
+ * that make up its amount from what the cassettes hold, and gives them back if
+ * the withdrawal is then refused, so sessions sharing the machine can never be
+ * promised the same notes.
+ *
+ * Which notes to hand out is worked out by dynamic programming over every
+ * amount up to the most the machine will dispense at once, giving a table from
+ * which any amount's notes are read off in a few steps. A single withdrawal
+ * never needs more than MAX_NOTES of any one note, so the table only depends on
+ * each cassette's count up to that cap. Well-stocked cassettes therefore keep
+ * the same table from one withdrawal to the next, and the last few tables are
+ * cached by their capped counts.
+ */
+public class CashDispenser {
+	public static final int MAX_NOTES = 40;
+
+	private static final int CACHED_TABLES = 16;
+	private static final int COUNT_BITS = 6;
+	private static final int MAX_DENOMINATIONS = Long.SIZE / COUNT_BITS;
+
+	private final long[] denominations;
+	private final int[] noteCounts;
+	private final long unit;
+	private final int maxUnits;
+	private final Map<Long, DispenseTable> tables;
+
+	/**
+	 * @param denominations: the value of the notes in each cassette in cents.
+	 * @param noteCounts: the number of notes loaded in each cassette.
+	 */
+	public CashDispenser(long[] denominations, int[] noteCounts) {
+		if (denominations.length != noteCounts.length || denominations.length > MAX_DENOMINATIONS) {
+			throw new IllegalArgumentException("Expected one note count for each of up to " + MAX_DENOMINATIONS
+					+ " denominations");
+		}
+		long unit = 0;
+		for (long denomination : denominations) {
+			unit = greatestCommonDivisor(unit, denomination);
+		}
+		this.denominations = denominations.clone();
+		this.noteCounts = noteCounts.clone();
+		this.unit = unit;
+		this.maxUnits = (int) (Arrays.stream(denominations).max().getAsLong() * MAX_NOTES / unit);
+		this.tables = new LinkedHashMap<Long, DispenseTable>(CACHED_TABLES, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, DispenseTable> eldest) {
+				return size() > CACHED_TABLES;
+			}
+		};
+	}
+
+	/**
+	 * Creates a dispenser loaded with 100, 50, 20, 10 and 5 dollar notes.
+	 *
+	 * @return the dispenser.
+	 */
+	public static CashDispenser withStandardCassettes() {
+		long[] denominations = { Money.fromDollars(100), Money.fromDollars(50), Money.fromDollars(20),
+				Money.fromDollars(10), Money.fromDollars(5) };
+		return new CashDispenser(denominations, new int[] { 200, 200, 500, 500, 500 });
+	}
+
+	/**
+	 * Takes the fewest notes that make up an amount out of the cassettes.
+	 *
+	 * @param amount: the amount in cents.
+	 * @return the number of notes taken from each cassette, or null if the amount
+	 *         cannot be made up from the notes left.
+	 */
+	public synchronized int[] reserve(long amount) {
+		int[] notes = findNotes(amount);
+		if (notes != null) {
+			for (int i = 0; i < notes.length; i++) {
+				noteCounts[i] -= notes[i];
+			}
+		}
+		return notes;
+	}
+
+	/**
+	 * Puts notes taken by reserve back into the cassettes, such as when the
+	 * withdrawal they were reserved for is refused.
+	 *
+	 * @param notes: the notes returned by reserve.
+	 */
+	public synchronized void release(int[] notes) {
+		for (int i = 0; i < notes.length; i++) {
+			noteCounts[i] += notes[i];
+		}
+	}
+
+	/**
+	 * Works out the fewest notes that make up an amount without taking them.
+	 *
+	 * @param amount: the amount in cents.
+	 * @return the number of notes needed from each cassette, or null if the amount
+	 *         cannot be made up from the notes left.
+	 */
+	public synchronized int[] findNotes(long amount) {
+		if (amount <= 0 || amount % unit != 0 || amount / unit > maxUnits) {
+			return null;
+		}
+		return tableForCurrentCounts().notesFor((int) (amount / unit));
+	}
+
+	/**
+	 * Loads more notes into a cassette.
+	 *
+	 * @param cassette: the cassette's position, matching the denominations.
+	 * @param count: the number of notes added.
+	 */
+	public synchronized void addNotes(int cassette, int count) {
+		noteCounts[cassette] += count;
+	}
+
+	public synchronized int[] getNoteCounts() {
+		return noteCounts.clone();
+	}
+
+	public long[] getDenominations() {
+		return denominations.clone();
+	}
+
+	/**
+	 * Appends notes as a list such as "2 x $20.00, 1 x $5.00".
+	 *
+	 * @param sb: the builder to append to.
+	 * @param notes: the number of notes of each denomination.
+	 * @return the builder.
+	 */
+	public StringBuilder appendNotes(StringBuilder sb, int[] notes) {
+		boolean isFirst = true;
+		for (int i = 0; i < notes.length; i++) {
+			if (notes[i] == 0) {
+				continue;
+			}
+			if (!isFirst) {
+				sb.append(", ");
+			}
+			sb.append(notes[i]).append(" x ");
+			Money.appendCurrency(sb, denominations[i]);
+			isFirst = false;
+		}
+		return sb;
+	}
+
+	private DispenseTable tableForCurrentCounts() {
+		long key = 0;
+		int[] cappedCounts = new int[noteCounts.length];
+		for (int i = 0; i < noteCounts.length; i++) {
+			cappedCounts[i] = Math.min(noteCounts[i], MAX_NOTES);
+			key = key << COUNT_BITS | cappedCounts[i];
+		}
+		DispenseTable table = tables.get(key);
+		if (table == null) {
+			table = new DispenseTable(denominationsInUnits(), cappedCounts, maxUnits);
+			tables.put(key, table);
+		}
+		return table;
+	}
+
+	private int[] denominationsInUnits() {
+		int[] units = new int[denominations.length];
+		for (int i = 0; i < denominations.length; i++) {
+			units[i] = (int) (denominations[i] / unit);
+		}
+		return units;
+	}
+
+	private static long greatestCommonDivisor(long a, long b) {
+		while (b != 0) {
+			long remainder = a % b;
+			a = b;
+			b = remainder;
+		}
+		return a;
+	}
+
+	/**
+	 * The fewest notes for every amount up to a maximum, given how many notes of
+	 * each denomination may be used. Row i of the table holds, for every amount,
+	 * how many notes of denomination i the best way of making that amount from
+	 * the first i + 1 denominations uses.
+	 */
+	static final class DispenseTable {
+		private static final int IMPOSSIBLE = Integer.MAX_VALUE;
+
+		private final int[] denominations;
+		private final byte[][] notesUsed;
+		private final int[] fewestNotes;
+
+		DispenseTable(int[] denominations, int[] noteCounts, int maxUnits) {
+			this.denominations = denominations;
+			this.notesUsed = new byte[denominations.length][maxUnits + 1];
+			int[] previous = new int[maxUnits + 1];
+			int[] current = new int[maxUnits + 1];
+			Arrays.fill(previous, IMPOSSIBLE);
+			previous[0] = 0;
+			for (int i = 0; i < denominations.length; i++) {
+				int denomination = denominations[i];
+				for (int amount = 0; amount <= maxUnits; amount++) {
+					int best = IMPOSSIBLE;
+					int bestCount = 0;
+					int maxCount = Math.min(noteCounts[i], amount / denomination);
+					for (int count = 0; count <= maxCount; count++) {
+						int rest = previous[amount - count * denomination];
+						if (rest != IMPOSSIBLE && rest + count < best) {
+							best = rest + count;
+							bestCount = count;
+						}
+					}
+					current[amount] = best;
+					notesUsed[i][amount] = (byte) bestCount;
+				}
+				int[] swap = previous;
+				previous = current;
+				current = swap;
+			}
+			this.fewestNotes = previous;
+		}
+
+		/**
+		 * @param amount: the amount in units of the smallest denomination's divisor.
+		 * @return the notes of each denomination, or null if the amount cannot be
+		 *         made up within MAX_NOTES notes.
+		 */
+		int[] notesFor(int amount) {
+			if (fewestNotes[amount] > MAX_NOTES) {
+				return null;
+			}
+			int[] notes = new int[denominations.length];
+			for (int i = denominations.length - 1; i >= 0; i--) {
+				notes[i] = notesUsed[i][amount];
+				amount -= notes[i] * denominations[i];
+			}
+			return notes;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Assigns each account number to one of a set of partition nodes by consistent
+ * hashing. Every node is placed on a ring of ints at a number of points hashed
+ * from its address, and an account belongs to the node at the first point at
+ * or after the account number's hash. Adding a node only moves the accounts
+ * whose hashes fall just before its new points, about a share of the accounts
+ * in proportion to one node, and every one of them moves to the new node.
+ *
+ * A ring is immutable and is built the same way from the same addresses in any
+ * process, so the router and every node agree on who owns each account.
+ */
+public final class ConsistentHashRing {
+	private static final int POINTS_PER_NODE = 128;
+
+	private final List<String> nodes;
+	private final int[] points;
+	private final String[] pointOwners;
+
+	/**
+	 * @param nodes: the host:port address of every node.
+	 * @throws IllegalArgumentException if there are no nodes or one is repeated.
+	 */
+	public ConsistentHashRing(List<String> nodes) {
+		if (nodes.isEmpty()) {
+			throw new IllegalArgumentException("A ring needs at least one node");
+		}
+		List<String> sortedNodes = new ArrayList<>(nodes);
+		Collections.sort(sortedNodes);
+		for (int i = 1; i < sortedNodes.size(); i++) {
+			if (sortedNodes.get(i).equals(sortedNodes.get(i - 1))) {
+				throw new IllegalArgumentException("Duplicate node " + sortedNodes.get(i));
+			}
+		}
+		this.nodes = Collections.unmodifiableList(sortedNodes);
+		long[] placedPoints = new long[sortedNodes.size() * POINTS_PER_NODE];
+		for (int node = 0; node < sortedNodes.size(); node++) {
+			for (int i = 0; i < POINTS_PER_NODE; i++) {
+				long point = hashOfPoint(sortedNodes.get(node), i);
+				placedPoints[node * POINTS_PER_NODE + i] = (point << 32) | node;
+			}
+		}
+		Arrays.sort(placedPoints);
+		this.points = new int[placedPoints.length];
+		this.pointOwners = new String[placedPoints.length];
+		for (int i = 0; i < placedPoints.length; i++) {
+			points[i] = (int) (placedPoints[i] >> 32);
+			pointOwners[i] = sortedNodes.get((int) placedPoints[i]);
+		}
+	}
+
+	/**
+	 * Builds a ring from a comma separated list of node addresses.
+	 *
+	 * @param nodeList: the addresses, such as {"127.0.0.1:4601,127.0.0.1:4602"}.
+	 * @return the ring.
+	 */
+	public static ConsistentHashRing parse(String nodeList) {
+		List<String> nodes = new ArrayList<>();
+		for (String node : nodeList.split(",")) {
+			if (!node.trim().isEmpty()) {
+				nodes.add(node.trim());
+			}
+		}
+		return new ConsistentHashRing(nodes);
+	}
+
+	/**
+	 * Builds a ring with one more node.
+	 *
+	 * @param node: the address of the node to add.
+	 * @return the new ring.
+	 */
+	public ConsistentHashRing withNode(String node) {
+		List<String> newNodes = new ArrayList<>(nodes);
+		newNodes.add(node);
+		return new ConsistentHashRing(newNodes);
+	}
+
+	/**
+	 * Builds a ring with one node fewer.
+	 *
+	 * @param node: the address of the node to leave out.
+	 * @return the new ring.
+	 */
+	public ConsistentHashRing withoutNode(String node) {
+		List<String> newNodes = new ArrayList<>(nodes);
+		newNodes.remove(node);
+		return new ConsistentHashRing(newNodes);
+	}
+
+	/**
+	 * Gets the node an account belongs to.
+	 *
+	 * @param accountNumber: the account number.
+	 * @return the address of the owning node.
+	 */
+	public String ownerOf(int accountNumber) {
+		int hash = (int) mix(accountNumber);
+		int index = Arrays.binarySearch(points, hash);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return pointOwners[index == points.length ? 0 : index];
+	}
+
+	/**
+	 * Gets every node on the ring.
+	 *
+	 * @return the node addresses in sorted order.
+	 */
+	public List<String> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return the node addresses separated by commas, as parse reads them.
+	 */
+	@Override
+	public String toString() {
+		return String.join(",", nodes);
+	}
+
+	private static long hashOfPoint(String node, int pointIndex) {
+		long hash = 0;
+		for (int i = 0; i < node.length(); i++) {
+			hash = mix(hash ^ node.charAt(i));
+		}
+		return (int) mix(hash ^ ((long) pointIndex << 32));
+	}
+
+	/**
+	 * The SplitMix64 finalizer, which spreads close inputs across the whole ring.
+	 */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+}
@@ -0,0 +1,84 @@
+package main;
+
+/**
+ * One deposit or withdrawal read back from the TransactionHistory.
+ */
+public class HistoryEntry {
+	private final int entryId;
+	private final long timestampMillis;
+	private final int accountNumber;
+	private final byte transactionType;
+	private final long amount;
+	private final long actualBalance;
+	private final long availableBalance;
+
+	public HistoryEntry(int entryId, long timestampMillis, int accountNumber, byte transactionType, long amount,
+			long actualBalance, long availableBalance) {
+		this.entryId = entryId;
+		this.timestampMillis = timestampMillis;
+		this.accountNumber = accountNumber;
+		this.transactionType = transactionType;
+		this.amount = amount;
+		this.actualBalance = actualBalance;
+		this.availableBalance = availableBalance;
+	}
+
+	/**
+	 * Gets the position of the entry in the history, which can be passed back to
+	 * the history as a cursor to page through older entries.
+	 *
+	 * @return the entry id.
+	 */
+	public int getEntryId() {
+		return entryId;
+	}
+
+	public long getTimestampMillis() {
+		return timestampMillis;
+	}
+
+	public int getAccountNumber() {
+		return accountNumber;
+	}
+
+	/**
+	 * @return TransactionJournal.DEPOSIT, WITHDRAWAL, TRANSFER_OUT or TRANSFER_IN.
+	 */
+	public byte getTransactionType() {
+		return transactionType;
+	}
+
+	/**
+	 * @return {"Deposit"}, {"Withdrawal"}, {"Transfer Out"} or {"Transfer In"}.
+	 */
+	public String getTransactionTypeName() {
+		switch (transactionType) {
+		case TransactionJournal.DEPOSIT:
+			return TransactionEngine.DEPOSIT;
+		case TransactionJournal.TRANSFER_OUT:
+			return TransactionEngine.TRANSFER + " Out";
+		case TransactionJournal.TRANSFER_IN:
+			return TransactionEngine.TRANSFER + " In";
+		default:
+			return TransactionEngine.WITHDRAWAL;
+		}
+	}
+
+	public long getAmount() {
+		return amount;
+	}
+
+	public long getActualBalance() {
+		return actualBalance;
+	}
+
+	public long getAvailableBalance() {
+		return availableBalance;
+	}
+
+	@Override
+	public String toString() {
+		return entryId + " " + timestampMillis + " " + accountNumber + " " + getTransactionTypeName() + " "
+				+ Money.formatCurrency(amount) + " " + Money.formatCurrency(actualBalance);
+	}
+}
@@ -0,0 +1,146 @@
+package main;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes the held part of every deposit available once a hold period has
+ * passed. Each deposit adds a hold to a timing wheel, and a background thread
+ * drains the holds that have fallen due once a tick and releases them through
+ * the ledger in batches. Releasing takes each account's lock only as long as a
+ * single deposit does and commits the journal once per batch, so terminals keep
+ * transacting while a clearing run is in progress.
+ *
+ * Holds are only kept in memory. When the ledger is loaded, every account whose
+ * available balance is below its actual balance gets a hold for the difference
+ * due a full hold period later.
+ */
+public class HoldClearingScheduler implements AutoCloseable {
+	private static final int BATCH_SIZE = 4096;
+	private static final int MAX_BUCKETS = 1 << 20;
+
+	private final AccountLedger ledger;
+	private final long holdMillis;
+	private final long tickMillis;
+	private final HoldTimingWheel holds;
+	private final TransactionBatch batch;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * @param ledger: the ledger whose deposits are held.
+	 * @param holdMillis: how long the held part of a deposit is held for.
+	 * @param tickMillis: how often due holds are released.
+	 */
+	public HoldClearingScheduler(AccountLedger ledger, long holdMillis, long tickMillis) {
+		this.ledger = ledger;
+		this.holdMillis = holdMillis;
+		this.tickMillis = tickMillis;
+		long ticksPerHold = holdMillis / tickMillis + 1;
+		this.holds = new HoldTimingWheel(tickMillis, (int) Math.min(ticksPerHold, MAX_BUCKETS),
+				System.currentTimeMillis());
+		this.batch = new TransactionBatch(BATCH_SIZE);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "hold-clearing");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Holds the funds already unavailable on every account and starts releasing
+	 * holds as they fall due.
+	 */
+	public void start() {
+		holdOutstandingFunds();
+		scheduler.scheduleWithFixedDelay(this::clearDueHolds, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Holds part of a deposit until the hold period has passed.
+	 *
+	 * @param accountNumber: the account deposited into.
+	 * @param amount: the amount held in cents.
+	 */
+	public void addHold(int accountNumber, long amount) {
+		if (amount > 0) {
+			holds.add(accountNumber, amount, System.currentTimeMillis() + holdMillis);
+		}
+	}
+
+	/**
+	 * Releases every hold that has fallen due, a batch at a time. If a batch
+	 * fails, the holds in it that were not released go back on the wheel to be
+	 * tried again on the next tick, and the failure never escapes to stop the
+	 * scheduled runs.
+	 *
+	 * @return the number of holds released.
+	 */
+	public synchronized int clearDueHolds() {
+		int released = 0;
+		long now = System.currentTimeMillis();
+		try {
+			do {
+				batch.clear();
+				holds.drainDue(now, batch);
+				released += ledger.applyBatch(batch);
+			} while (batch.isFull());
+		} catch (IOException | RuntimeException e) {
+			requeueUnreleasedHolds(now);
+			System.out.printf("* Error: Unable to release held deposits: %s\n", e.getMessage());
+		}
+		return released;
+	}
+
+	/**
+	 * Puts the holds of the current batch that were not applied back on the
+	 * wheel, due straight away.
+	 */
+	private void requeueUnreleasedHolds(long now) {
+		for (int i = 0; i < batch.size(); i++) {
+			if (batch.getStatus(i) == null) {
+				holds.add(batch.getAccountNumber(i), batch.getAmount(i), now);
+			}
+		}
+	}
+
+	/**
+	 * Runs a task while no holds are being released, such as one that adds
+	 * accounts to the ledger or removes them.
+	 *
+	 * @param task: the task to run.
+	 */
+	public synchronized void runBetweenClearingRuns(Runnable task) {
+		task.run();
+	}
+
+	/**
+	 * Gets the number of holds not yet released.
+	 *
+	 * @return the hold count.
+	 */
+	public int getOutstandingHoldCount() {
+		return holds.size();
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void holdOutstandingFunds() {
+		for (BankAccount account : ledger.getBankAccounts()) {
+			long unavailable;
+			synchronized (account.getLock()) {
+				unavailable = account.getActualBalance() - account.getAvailableBalance();
+			}
+			addHold(account.getAccountNumber(), unavailable);
+		}
+	}
+}
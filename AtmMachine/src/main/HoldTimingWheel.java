@@ -0,0 +1,143 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A hashed timing wheel of pending deposit holds. Time is cut into ticks and
+ * every hold is linked into the bucket of the tick it falls due in, so adding
+ * a hold and draining the holds that are due both cost the same however many
+ * holds are outstanding. A hold due more than a full turn of the wheel away
+ * simply stays in its bucket until the turn it is due in.
+ *
+ * Holds are kept in parallel arrays linked by index rather than as objects, so
+ * millions of outstanding holds are a handful of arrays for the garbage
+ * collector. Freed entries are reused for later holds.
+ */
+public class HoldTimingWheel {
+	private static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final long tickMillis;
+	private final long startMillis;
+	private final int[] bucketHeads;
+	private final int bucketMask;
+	private long currentTick;
+	private int[] accountNumbers;
+	private long[] amounts;
+	private long[] dueTicks;
+	private int[] nextEntries;
+	private int firstFreeEntry;
+	private int usedEntries;
+	private int size;
+
+	/**
+	 * @param tickMillis: the length of a tick; holds fall due at the end of the
+	 *        tick they are due in.
+	 * @param bucketCount: the number of ticks in a turn of the wheel, rounded up to
+	 *        a power of two.
+	 * @param startMillis: the time the first tick starts at.
+	 */
+	public HoldTimingWheel(long tickMillis, int bucketCount, long startMillis) {
+		int buckets = Integer.highestOneBit(Math.max(bucketCount - 1, 1)) << 1;
+		this.tickMillis = tickMillis;
+		this.startMillis = startMillis;
+		this.bucketHeads = new int[buckets];
+		this.bucketMask = buckets - 1;
+		Arrays.fill(bucketHeads, NONE);
+		this.accountNumbers = new int[INITIAL_CAPACITY];
+		this.amounts = new long[INITIAL_CAPACITY];
+		this.dueTicks = new long[INITIAL_CAPACITY];
+		this.nextEntries = new int[INITIAL_CAPACITY];
+		this.firstFreeEntry = NONE;
+	}
+
+	/**
+	 * Adds a hold. A hold due in a tick that has already been drained is drained
+	 * with the current tick.
+	 *
+	 * @param accountNumber: the account the funds are held on.
+	 * @param amount: the amount held in cents.
+	 * @param dueMillis: the time the funds should become available.
+	 */
+	public synchronized void add(int accountNumber, long amount, long dueMillis) {
+		long dueTick = Math.max(Math.floorDiv(dueMillis - startMillis, tickMillis), currentTick);
+		int entry = allocateEntry();
+		int bucket = (int) (dueTick & bucketMask);
+		accountNumbers[entry] = accountNumber;
+		amounts[entry] = amount;
+		dueTicks[entry] = dueTick;
+		nextEntries[entry] = bucketHeads[bucket];
+		bucketHeads[bucket] = entry;
+		size++;
+	}
+
+	/**
+	 * Moves holds that are due into a batch as HOLD_RELEASE records, oldest tick
+	 * first, until the batch is full or no more holds are due. A drain that stops
+	 * because the batch is full carries on where it left off the next time.
+	 *
+	 * @param nowMillis: the current time.
+	 * @param batch: the batch to add the holds to.
+	 * @return the number of holds added to the batch.
+	 */
+	public synchronized int drainDue(long nowMillis, TransactionBatch batch) {
+		long lastDueTick = Math.floorDiv(nowMillis - startMillis, tickMillis) - 1;
+		int drained = 0;
+		while (currentTick <= lastDueTick && !batch.isFull()) {
+			int bucket = (int) (currentTick & bucketMask);
+			int previous = NONE;
+			int entry = bucketHeads[bucket];
+			while (entry != NONE && !batch.isFull()) {
+				int next = nextEntries[entry];
+				if (dueTicks[entry] <= currentTick) {
+					batch.add(0, accountNumbers[entry], TransactionJournal.HOLD_RELEASE, amounts[entry]);
+					unlink(bucket, previous, entry);
+					drained++;
+				} else {
+					previous = entry;
+				}
+				entry = next;
+			}
+			if (entry == NONE) {
+				currentTick++;
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 * Gets the number of holds not yet drained.
+	 *
+	 * @return the hold count.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private void unlink(int bucket, int previous, int entry) {
+		if (previous == NONE) {
+			bucketHeads[bucket] = nextEntries[entry];
+		} else {
+			nextEntries[previous] = nextEntries[entry];
+		}
+		nextEntries[entry] = firstFreeEntry;
+		firstFreeEntry = entry;
+		size--;
+	}
+
+	private int allocateEntry() {
+		if (firstFreeEntry != NONE) {
+			int entry = firstFreeEntry;
+			firstFreeEntry = nextEntries[entry];
+			return entry;
+		}
+		if (usedEntries == accountNumbers.length) {
+			int capacity = accountNumbers.length * 2;
+			accountNumbers = Arrays.copyOf(accountNumbers, capacity);
+			amounts = Arrays.copyOf(amounts, capacity);
+			dueTicks = Arrays.copyOf(dueTicks, capacity);
+			nextEntries = Arrays.copyOf(nextEntries, capacity);
+		}
+		return usedEntries++;
+	}
+}
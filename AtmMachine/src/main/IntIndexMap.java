@@ -0,0 +1,176 @@
+package main;
+
+/**
+ * An open-addressing hash table mapping primitive int keys to non-negative int
+ * values (typically positions within a list) without boxing either side.
+ */
+public class IntIndexMap {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final int MAX_TABLE_SIZE = 1 << 30;
+	private static final int MAX_SIZE = MAX_TABLE_SIZE / 2;
+	private static final int NOT_FOUND = -1;
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+	private int resizeThreshold;
+
+	public IntIndexMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IntIndexMap(int expectedSize) {
+		allocateTable(tableSizeFor(expectedSize));
+	}
+
+	/**
+	 * Associates a key with a value, replacing any value previously held for it.
+	 *
+	 * @param key:   the key to store.
+	 * @param value: the non-negative value to associate with the key.
+	 * @throws IllegalStateException if the key is new and the map already holds
+	 *         as many keys as it can.
+	 */
+	public void put(int key, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Value must not be negative: " + value);
+		}
+		int slot = findSlot(keys, values, key);
+		if (values[slot] == 0) {
+			if (size == MAX_SIZE) {
+				throw new IllegalStateException("An IntIndexMap cannot hold more than " + MAX_SIZE + " keys");
+			}
+			size++;
+		}
+		keys[slot] = key;
+		values[slot] = value + 1;
+		if (size > resizeThreshold) {
+			resize(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Gets the value associated with a key.
+	 *
+	 * @param key: the key to look up.
+	 * @return the associated value if present; -1 otherwise.
+	 */
+	public int get(int key) {
+		return values[findSlot(keys, values, key)] - 1;
+	}
+
+	/**
+	 * Checks if a value is associated with a key.
+	 *
+	 * @param key: the key to look up.
+	 * @return {true} if the key is present; {false} otherwise.
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != NOT_FOUND;
+	}
+
+	/**
+	 * Removes a key and its value. The keys after it in its probe run are shifted
+	 * back into the gap, so lookups never need to skip over removed slots.
+	 *
+	 * @param key: the key to remove.
+	 * @return the value that was associated with the key if present; -1
+	 *         otherwise.
+	 */
+	public int remove(int key) {
+		int mask = keys.length - 1;
+		int hole = findSlot(keys, values, key);
+		int removedValue = values[hole] - 1;
+		if (removedValue == NOT_FOUND) {
+			return NOT_FOUND;
+		}
+		values[hole] = 0;
+		size--;
+		for (int slot = (hole + 1) & mask; values[slot] != 0; slot = (slot + 1) & mask) {
+			int homeSlot = mix(keys[slot]) & mask;
+			boolean canFillHole = ((slot - homeSlot) & mask) >= ((slot - hole) & mask);
+			if (canFillHole) {
+				keys[hole] = keys[slot];
+				values[hole] = values[slot];
+				values[slot] = 0;
+				hole = slot;
+			}
+		}
+		return removedValue;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Grows the table ahead of a bulk insert so that it is not rehashed several
+	 * times along the way.
+	 *
+	 * @param expectedSize: the total number of keys the map is expected to hold.
+	 * @throws IllegalArgumentException if that is more keys than a map can hold.
+	 */
+	public void ensureCapacity(int expectedSize) {
+		int tableSize = tableSizeFor(expectedSize);
+		if (tableSize > keys.length) {
+			resize(tableSize);
+		}
+	}
+
+	/**
+	 * Finds the slot holding a key, or the empty slot where it would be inserted,
+	 * using linear probing. Empty slots are marked by a stored value of 0, which
+	 * is why values are kept offset by one.
+	 */
+	private static int findSlot(int[] keys, int[] values, int key) {
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		while (values[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Spreads the bits of sequential keys (such as account numbers) across the
+	 * table so that they do not cluster into long probe runs.
+	 */
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void resize(int newTableSize) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocateTable(newTableSize);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != 0) {
+				int slot = findSlot(keys, values, oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocateTable(int tableSize) {
+		keys = new int[tableSize];
+		values = new int[tableSize];
+		resizeThreshold = tableSize / 2;
+	}
+
+	/**
+	 * Returns the power of two table size that keeps the load factor at or below
+	 * one half for the expected number of keys.
+	 */
+	private static int tableSizeFor(int expectedSize) {
+		if (expectedSize > MAX_SIZE) {
+			throw new IllegalArgumentException("An IntIndexMap cannot hold " + expectedSize + " keys");
+		}
+		int tableSize = DEFAULT_CAPACITY;
+		while (tableSize / 2 < expectedSize) {
+			tableSize <<= 1;
+		}
+		return tableSize;
+	}
+}
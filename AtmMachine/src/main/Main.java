@@ -1,53 +1,25 @@
 /* Created by Adam Jost on 08/07/2021 */
 package main;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
 public class Main {
-	public static void main(String[] args) {
-		Atm atm = new Atm();
-		boolean running = true;
-		
-		while (running) {
-			atm.printLoginScreenHeading();
-			atm.getAndValidateAccountNumber();
-			atm.getAndValidatePinNumber();
-			if (atm.isLoggedIn()) {
-				atm.printNowLoggedInMsg();
-				atm.printNewScreenGap();
-				atm.printScreenHeadingAndCommandKey();
-			}
-			while (atm.isLoggedIn()) {
-				String commandEntered = atm.getUserCommand();
-				switch (commandEntered) {
-				case "deposit":
-					atm.getAndValidateTransactionAmount();
-					atm.depositTransactionAmountIntoAccount();
-					atm.printProcessingReceiptMsg();
-					atm.printReceipt();
-					atm.printScreenHeadingAndCommandKey();
-					break;
-				case "withdrawal":
-					atm.getAndValidateTransactionAmount();
-					if (atm.withdrawalTransactionAmountFromAccount()) {
-						atm.printProcessingReceiptMsg();
-						atm.printReceipt();
-						atm.printScreenHeadingAndCommandKey();
-					}
-					break;
-				case "balance":
-					atm.printAccountBalance();
-					break;
-				case "logout":
-					atm.printThankYouMsg();
-					atm.logoutOfCurrentAccount();
-					atm.printNewScreenGap();
-					break;
-				default:
-					atm.printInvalidCommandMsg(commandEntered);
-				}
-				atm.resetTransActionAmount();
+	public static void main(String[] args) throws IOException {
+		AtmSession session = new AtmSession(new Atm());
+		BufferedReader console = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		try (SessionIdleMonitor idleMonitor = Atm.newSessionIdleMonitor()) {
+			idleMonitor.register(session);
+			idleMonitor.start();
+			session.start();
+			String line = console.readLine();
+			while (line != null && session.handleInput(line)) {
+				line = console.readLine();
 			}
+		} finally {
+			session.end();
 		}
 	}
 }
-
-
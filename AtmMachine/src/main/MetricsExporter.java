@@ -0,0 +1,94 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exports snapshots of the ATM metrics, periodically to a local file and on
+ * request from a plain-text HTTP endpoint on the loopback interface.
+ */
+public class MetricsExporter implements AutoCloseable {
+	private final AtmMetrics metrics;
+	private final ScheduledExecutorService scheduler;
+	private HttpServer httpServer;
+
+	public MetricsExporter(AtmMetrics metrics) {
+		this.metrics = metrics;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-exporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Writes a snapshot to a file now and then again after every period.
+	 *
+	 * @param file: the file to write.
+	 * @param periodSeconds: the number of seconds between snapshots.
+	 */
+	public void exportToFile(Path file, long periodSeconds) {
+		scheduler.scheduleAtFixedRate(() -> writeSnapshot(file), 0, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Serves a snapshot to every request for /metrics.
+	 *
+	 * @param port: the port to listen on.
+	 */
+	public void serveHttp(int port) throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext("/metrics", this::sendSnapshot);
+		httpServer.setExecutor(scheduler);
+		httpServer.start();
+	}
+
+	/**
+	 * Writes one last snapshot to a file and stops exporting.
+	 *
+	 * @param file: the file to write, or null to skip the last snapshot.
+	 */
+	public void close(Path file) {
+		close();
+		if (file != null) {
+			writeSnapshot(file);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (httpServer != null) {
+			httpServer.stop(0);
+		}
+		scheduler.shutdownNow();
+	}
+
+	private void writeSnapshot(Path file) {
+		try {
+			metrics.writeToFile(file);
+		} catch (IOException e) {
+			System.out.printf("* Error: Unable to write metrics to %s: %s\n", file, e.getMessage());
+		}
+	}
+
+	private void sendSnapshot(HttpExchange exchange) throws IOException {
+		StringBuilder snapshot = new StringBuilder(4096);
+		metrics.writeText(snapshot);
+		byte[] body = snapshot.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(body);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package main;
+
+/**
+ * Helpers for amounts of money held as a whole number of cents in a long.
+ * Formatting appends to a caller-supplied StringBuilder so that a reused
+ * builder can format any number of amounts without creating new objects.
+ */
+public class Money {
+	private static final long CENTS_PER_DOLLAR = 100;
+
+	private Money() {
+	}
+
+	/**
+	 * Converts a whole dollar amount to cents.
+	 *
+	 * @param dollars: the amount in dollars.
+	 * @return the amount in cents.
+	 */
+	public static long fromDollars(long dollars) {
+		return Math.multiplyExact(dollars, CENTS_PER_DOLLAR);
+	}
+
+	/**
+	 * Parses a non-negative decimal dollar amount with at most two decimal places
+	 * (e.g. 25, 25.5 or 25.50) into cents.
+	 *
+	 * @param text:  the text holding the amount.
+	 * @param start: the index of the amount's first character.
+	 * @param end:   the index just past the amount's last character.
+	 * @return the amount in cents.
+	 * @throws NumberFormatException if the text is not such an amount.
+	 */
+	public static long parseDollars(CharSequence text, int start, int end) {
+		int position = start;
+		long cents = 0;
+		while (position < end && isDigit(text.charAt(position))) {
+			if (cents > Long.MAX_VALUE / 1000) {
+				throw new NumberFormatException("Amount out of range: " + text.subSequence(start, end));
+			}
+			cents = cents * 10 + (text.charAt(position++) - '0');
+		}
+		int dollarDigits = position - start;
+		cents *= CENTS_PER_DOLLAR;
+		if (position < end && text.charAt(position) == '.') {
+			position++;
+			long scale = CENTS_PER_DOLLAR / 10;
+			while (position < end && scale > 0 && isDigit(text.charAt(position))) {
+				cents += (text.charAt(position++) - '0') * scale;
+				scale /= 10;
+			}
+		}
+		if (dollarDigits == 0 || position != end) {
+			throw new NumberFormatException("Not a dollar amount: " + text.subSequence(start, end));
+		}
+		return cents;
+	}
+
+	/**
+	 * Appends an amount in U.S. currency format (e.g. $1,002,000.20).
+	 *
+	 * @param sb:    the builder to append to.
+	 * @param cents: the amount in cents.
+	 * @return the builder.
+	 */
+	public static StringBuilder appendCurrency(StringBuilder sb, long cents) {
+		if (cents < 0) {
+			sb.append('-');
+		}
+		sb.append('$');
+		long magnitude = Math.abs(cents);
+		appendGroupedDollars(sb, magnitude / CENTS_PER_DOLLAR);
+		return appendCentsPart(sb, magnitude);
+	}
+
+	/**
+	 * Appends an amount as a plain decimal number of dollars with two decimal
+	 * places (e.g. 1002000.20), as used in the account data file.
+	 *
+	 * @param sb:    the builder to append to.
+	 * @param cents: the amount in cents.
+	 * @return the builder.
+	 */
+	public static StringBuilder appendDecimal(StringBuilder sb, long cents) {
+		if (cents < 0) {
+			sb.append('-');
+		}
+		long magnitude = Math.abs(cents);
+		sb.append(magnitude / CENTS_PER_DOLLAR);
+		return appendCentsPart(sb, magnitude);
+	}
+
+	/**
+	 * Formats an amount in U.S. currency format (e.g. $1,002,000.20).
+	 *
+	 * @param cents: the amount in cents.
+	 * @return the formatted amount.
+	 */
+	public static String formatCurrency(long cents) {
+		return appendCurrency(new StringBuilder(16), cents).toString();
+	}
+
+	private static void appendGroupedDollars(StringBuilder sb, long dollars) {
+		if (dollars < 1000) {
+			sb.append(dollars);
+			return;
+		}
+		appendGroupedDollars(sb, dollars / 1000);
+		sb.append(',');
+		long group = dollars % 1000;
+		if (group < 100) {
+			sb.append('0');
+		}
+		if (group < 10) {
+			sb.append('0');
+		}
+		sb.append(group);
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static StringBuilder appendCentsPart(StringBuilder sb, long magnitude) {
+		long centsPart = magnitude % CENTS_PER_DOLLAR;
+		sb.append('.');
+		if (centsPart < 10) {
+			sb.append('0');
+		}
+		return sb.append(centsPart);
+	}
+}
@@ -0,0 +1,352 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A BankAccountList that keeps its accounts outside the Java heap, so that
+ * millions of accounts add almost nothing for the garbage collector to trace.
+ * Every account is a fixed-width slot in direct memory:
+ *
+ * <pre>
+ * int   account number
+ * int   card number
+ * int   PIN hash iterations
+ * int   id of the owner's name in the name table
+ * long  actual balance in cents
+ * long  available balance in cents
+ * 16    PIN hash salt
+ * 32    PIN hash
+ * </pre>
+ *
+ * Owners' names are interned in a name table, also in direct memory, so each
+ * distinct name is stored once however many accounts share it.
+ *
+ * Looking up an account returns a small BankAccount that reads and writes its
+ * slot, and a new one is made for every lookup. Each account's balances are
+ * guarded by one of a fixed set of lock objects shared between accounts rather
+ * than by the BankAccount itself, so every lookup of the same account hands out
+ * the same lock.
+ *
+ * Direct memory is limited to the maximum heap size unless
+ * -XX:MaxDirectMemorySize is given, so a large account set usually needs that
+ * option raised.
+ */
+public class OffHeapBankAccountList extends BankAccountList {
+	private static final int SLOT_SIZE = 80;
+	private static final int SLOTS_PER_CHUNK = 1 << 16;
+	private static final int LOCK_COUNT = 1 << 12;
+
+	private static final int ACCOUNT_NUMBER_OFFSET = 0;
+	private static final int CARD_NUMBER_OFFSET = 4;
+	private static final int ITERATIONS_OFFSET = 8;
+	private static final int NAME_ID_OFFSET = 12;
+	private static final int ACTUAL_BALANCE_OFFSET = 16;
+	private static final int AVAILABLE_BALANCE_OFFSET = 24;
+	private static final int SALT_OFFSET = 32;
+	private static final int HASH_OFFSET = SALT_OFFSET + PinHash.SALT_LENGTH;
+
+	private final List<ByteBuffer> chunks;
+	private final NameTable names;
+	private final Object[] locks;
+	private int size;
+
+	public OffHeapBankAccountList() {
+		this.chunks = new ArrayList<>();
+		this.names = new NameTable();
+		this.locks = new Object[LOCK_COUNT];
+		for (int i = 0; i < LOCK_COUNT; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	@Override
+	protected int storeAccount(BankAccount newAccount) {
+		int slot = size;
+		ensureStorageCapacity(slot + 1);
+		ByteBuffer chunk = chunkFor(slot);
+		int offset = offsetOf(slot);
+		PinHash pinHash = newAccount.getPinHash();
+		chunk.putInt(offset + ACCOUNT_NUMBER_OFFSET, newAccount.getAccountNumber());
+		chunk.putInt(offset + CARD_NUMBER_OFFSET, newAccount.getCardNumber());
+		chunk.putInt(offset + ITERATIONS_OFFSET, pinHash.getIterations());
+		chunk.putInt(offset + NAME_ID_OFFSET, names.intern(newAccount.getOwnersName()));
+		synchronized (newAccount.getLock()) {
+			chunk.putLong(offset + ACTUAL_BALANCE_OFFSET, newAccount.getActualBalance());
+			chunk.putLong(offset + AVAILABLE_BALANCE_OFFSET, newAccount.getAvailableBalance());
+		}
+		chunk.put(offset + SALT_OFFSET, pinHash.getSalt());
+		chunk.put(offset + HASH_OFFSET, pinHash.getHash());
+		size++;
+		return slot;
+	}
+
+	/**
+	 * Copies the last slot over a slot. The name of the account overwritten stays
+	 * in the name table.
+	 */
+	@Override
+	protected void removeLastAccountInto(int position) {
+		int lastSlot = size - 1;
+		if (position != lastSlot) {
+			ByteBuffer lastChunk = chunkFor(lastSlot);
+			int lastOffset = offsetOf(lastSlot);
+			chunkFor(position).put(offsetOf(position), lastChunk, lastOffset, SLOT_SIZE);
+		}
+		size--;
+	}
+
+	@Override
+	protected void ensureStorageCapacity(int expectedSize) {
+		while ((long) chunks.size() * SLOTS_PER_CHUNK < expectedSize) {
+			chunks.add(ByteBuffer.allocateDirect(SLOTS_PER_CHUNK * SLOT_SIZE));
+		}
+	}
+
+	@Override
+	protected BankAccount accountAt(int position) {
+		return new SlotAccount(position);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<BankAccount> iterator() {
+		return new Iterator<BankAccount>() {
+			private int nextSlot;
+
+			@Override
+			public boolean hasNext() {
+				return nextSlot < size;
+			}
+
+			@Override
+			public BankAccount next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return new SlotAccount(nextSlot++);
+			}
+		};
+	}
+
+	/**
+	 * Gets the number of bytes of direct memory holding the accounts and their
+	 * names.
+	 *
+	 * @return the bytes allocated.
+	 */
+	public long getOffHeapBytes() {
+		return (long) chunks.size() * SLOTS_PER_CHUNK * SLOT_SIZE + names.getOffHeapBytes();
+	}
+
+	private ByteBuffer chunkFor(int slot) {
+		return chunks.get(slot / SLOTS_PER_CHUNK);
+	}
+
+	private static int offsetOf(int slot) {
+		return (slot % SLOTS_PER_CHUNK) * SLOT_SIZE;
+	}
+
+	/**
+	 * A BankAccount backed by one slot. Its balance methods run under the slot's
+	 * shared lock, so two SlotAccounts for the same account cannot interleave.
+	 */
+	private final class SlotAccount extends BankAccount {
+		private final int slot;
+		private final ByteBuffer chunk;
+		private final int offset;
+
+		private SlotAccount(int slot) {
+			this.slot = slot;
+			this.chunk = chunkFor(slot);
+			this.offset = offsetOf(slot);
+		}
+
+		@Override
+		public int getAccountNumber() {
+			return chunk.getInt(offset + ACCOUNT_NUMBER_OFFSET);
+		}
+
+		@Override
+		public int getCardNumber() {
+			return chunk.getInt(offset + CARD_NUMBER_OFFSET);
+		}
+
+		@Override
+		public PinHash getPinHash() {
+			byte[] salt = new byte[PinHash.SALT_LENGTH];
+			byte[] hash = new byte[PinHash.HASH_LENGTH];
+			chunk.get(offset + SALT_OFFSET, salt);
+			chunk.get(offset + HASH_OFFSET, hash);
+			return new PinHash(chunk.getInt(offset + ITERATIONS_OFFSET), salt, hash);
+		}
+
+		@Override
+		public String getOwnersName() {
+			return names.get(chunk.getInt(offset + NAME_ID_OFFSET));
+		}
+
+		@Override
+		public Object getLock() {
+			return locks[slot & (LOCK_COUNT - 1)];
+		}
+
+		@Override
+		public long getLockRank() {
+			return slot & (LOCK_COUNT - 1);
+		}
+
+		@Override
+		protected long readActualBalance() {
+			return chunk.getLong(offset + ACTUAL_BALANCE_OFFSET);
+		}
+
+		@Override
+		protected long readAvailableBalance() {
+			return chunk.getLong(offset + AVAILABLE_BALANCE_OFFSET);
+		}
+
+		@Override
+		protected void writeBalances(long actualBalance, long availableBalance) {
+			chunk.putLong(offset + ACTUAL_BALANCE_OFFSET, actualBalance);
+			chunk.putLong(offset + AVAILABLE_BALANCE_OFFSET, availableBalance);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof SlotAccount && ((SlotAccount) other).slot == slot
+					&& ((SlotAccount) other).getList() == OffHeapBankAccountList.this;
+		}
+
+		@Override
+		public int hashCode() {
+			return slot;
+		}
+
+		private OffHeapBankAccountList getList() {
+			return OffHeapBankAccountList.this;
+		}
+	}
+
+	/**
+	 * Interns owners' names as UTF-8 in direct memory. A name's id is its
+	 * location: the chunk it is in and its offset within the chunk, where it is
+	 * stored as a two-byte length followed by its bytes. Names are found again by
+	 * an open-addressing table of ids keyed by the hash of their bytes.
+	 */
+	private static final class NameTable {
+		private static final int CHUNK_SIZE = 1 << 20;
+		private static final int OFFSET_BITS = 20;
+		private static final int MAX_NAME_LENGTH = Short.MAX_VALUE;
+
+		private final List<ByteBuffer> chunks;
+		private int nextOffset;
+		private int[] ids;
+		private int[] hashes;
+		private int count;
+
+		private NameTable() {
+			this.chunks = new ArrayList<>();
+			this.nextOffset = CHUNK_SIZE;
+			this.ids = new int[1024];
+			this.hashes = new int[1024];
+			Arrays.fill(ids, -1);
+		}
+
+		int intern(String name) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > MAX_NAME_LENGTH) {
+				throw new IllegalArgumentException("Owner's name is too long");
+			}
+			int hash = Arrays.hashCode(bytes);
+			int mask = ids.length - 1;
+			int index = mix(hash) & mask;
+			while (ids[index] != -1) {
+				if (hashes[index] == hash && hasBytes(ids[index], bytes)) {
+					return ids[index];
+				}
+				index = (index + 1) & mask;
+			}
+			int id = append(bytes);
+			ids[index] = id;
+			hashes[index] = hash;
+			if (++count > ids.length / 2) {
+				resize();
+			}
+			return id;
+		}
+
+		String get(int id) {
+			ByteBuffer chunk = chunks.get(id >>> OFFSET_BITS);
+			int offset = id & (CHUNK_SIZE - 1);
+			byte[] bytes = new byte[chunk.getShort(offset)];
+			chunk.get(offset + 2, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		long getOffHeapBytes() {
+			return (long) chunks.size() * CHUNK_SIZE;
+		}
+
+		private int append(byte[] bytes) {
+			if (nextOffset + 2 + bytes.length > CHUNK_SIZE) {
+				chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+				nextOffset = 0;
+			}
+			ByteBuffer chunk = chunks.get(chunks.size() - 1);
+			int offset = nextOffset;
+			chunk.putShort(offset, (short) bytes.length);
+			chunk.put(offset + 2, bytes);
+			nextOffset += 2 + bytes.length;
+			return (chunks.size() - 1) << OFFSET_BITS | offset;
+		}
+
+		private boolean hasBytes(int id, byte[] bytes) {
+			ByteBuffer chunk = chunks.get(id >>> OFFSET_BITS);
+			int offset = id & (CHUNK_SIZE - 1);
+			if (chunk.getShort(offset) != bytes.length) {
+				return false;
+			}
+			for (int i = 0; i < bytes.length; i++) {
+				if (chunk.get(offset + 2 + i) != bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void resize() {
+			int[] oldIds = ids;
+			int[] oldHashes = hashes;
+			ids = new int[oldIds.length * 2];
+			hashes = new int[oldIds.length * 2];
+			Arrays.fill(ids, -1);
+			int mask = ids.length - 1;
+			for (int i = 0; i < oldIds.length; i++) {
+				if (oldIds[i] == -1) {
+					continue;
+				}
+				int index = mix(oldHashes[i]) & mask;
+				while (ids[index] != -1) {
+					index = (index + 1) & mask;
+				}
+				ids[index] = oldIds[i];
+				hashes[index] = oldHashes[i];
+			}
+		}
+
+		private static int mix(int hash) {
+			hash *= 0x9e3779b9;
+			return hash ^ (hash >>> 16);
+		}
+	}
+}
@@ -0,0 +1,413 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts PartitionNode processes on loopback ports, each in a directory of its
+ * own, and hammers them with random logins, deposits, withdrawals and transfers
+ * from many threads through a PartitionedTransactionEngine. While the threads
+ * are running one more node is started and added, moving its share of the
+ * accounts over to it. Then checks that every account is held by exactly the
+ * node the ring assigns it to, that the new node took a share of the accounts,
+ * that no update was lost across the move, that a router still on the ring
+ * from before the move finds every account and catches up with the new ring,
+ * and that restarting every node from
+ * its saved account data gives the same accounts and balances. Before the
+ * threads start it also checks that a second ATM cannot register the terminal
+ * ID already in use, and that a transaction ID reused for a different deposit
+ * is refused while a true retry is applied once. Exits with status 1 if any
+ * check fails.
+ *
+ * <pre>
+ * java main.PartitionCheck [nodes] [accounts] [threads] [operations per thread]
+ * </pre>
+ */
+public class PartitionCheck {
+	private static final int PIN_NUMBER = 2468;
+	private static final int PIN_HASH_ITERATIONS = 1000;
+	private static final int FIRST_ACCOUNT_NUMBER = 3_000_000;
+	private static final long STARTING_BALANCE = Money.fromDollars(10_000);
+	private static final long NODE_START_TIMEOUT_SECONDS = 30;
+	private static final int TERMINAL_ID = 1;
+	private static final long RETRIED_DEPOSIT_AMOUNT = Money.fromDollars(1);
+	private static final String[] NODE_PROPERTIES = { "-Datm.holdMillis=200",
+			"-Datm.dailyWithdrawalLimit=1000000000", "-Datm.maxWithdrawals=100" };
+
+	public static void main(String[] args) throws Exception {
+		int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int operationsPerThread = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+
+		Path directory = Files.createTempDirectory("partition-check");
+		Path accountsFile = directory.resolve("accounts.txt");
+		writeAccounts(accountsFile, accountCount);
+		List<Integer> ports = new ArrayList<>();
+		List<String> addresses = new ArrayList<>();
+		for (int i = 0; i <= nodeCount; i++) {
+			ports.add(findFreePort());
+			addresses.add(InetAddress.getLoopbackAddress().getHostAddress() + ":" + ports.get(i));
+		}
+		ConsistentHashRing ring = new ConsistentHashRing(addresses.subList(0, nodeCount));
+		List<Process> processes = new ArrayList<>();
+		boolean passed;
+		try {
+			for (int i = 0; i < nodeCount; i++) {
+				processes.add(startNode(directory.resolve("node" + i), ports.get(i), accountsFile, ring));
+			}
+			PartitionRouter router = new PartitionRouter(ring, TERMINAL_ID);
+			router.connectToAllNodes();
+			PartitionedTransactionEngine engine = new PartitionedTransactionEngine(router);
+			passed = checkPlacement(router, accountCount, STARTING_BALANCE * accountCount);
+			passed &= checkTerminalIdInUse(ring);
+			passed &= checkTransactionIdReuse(router);
+			long startingTotal = STARTING_BALANCE * accountCount + RETRIED_DEPOSIT_AMOUNT;
+
+			List<Worker> workers = new ArrayList<>();
+			for (int i = 0; i < threadCount; i++) {
+				workers.add(new Worker(engine, accountCount, operationsPerThread, i));
+			}
+			long startTime = System.nanoTime();
+			for (Worker worker : workers) {
+				worker.start();
+			}
+			processes.add(startNode(directory.resolve("node" + nodeCount), ports.get(nodeCount), null, null));
+			int moved = router.addNode(addresses.get(nodeCount));
+			long deposited = 0;
+			long withdrawn = 0;
+			for (Worker worker : workers) {
+				worker.join();
+				if (worker.failure != null) {
+					System.out.printf("* Worker failed: %s\n", worker.failure);
+					passed = false;
+				}
+				deposited += worker.deposited;
+				withdrawn += worker.withdrawn;
+			}
+			long elapsedNanos = System.nanoTime() - startTime;
+			long expectedTotal = startingTotal + deposited - withdrawn;
+			System.out.printf("Moved %d of %d accounts to the new node while transacting\n", moved, accountCount);
+
+			passed &= checkNewNodeShare(router, addresses.get(nodeCount), moved, accountCount, nodeCount + 1);
+			passed &= checkPlacement(router, accountCount, expectedTotal);
+			passed &= checkStaleRouter(ring, router.getRing(), accountCount);
+			router.close();
+
+			for (Process process : processes) {
+				stopNode(process);
+			}
+			processes.clear();
+			for (int i = 0; i <= nodeCount; i++) {
+				processes.add(startNode(directory.resolve("node" + i), ports.get(i), null, null));
+			}
+			PartitionRouter restartedRouter = new PartitionRouter(router.getRing());
+			passed &= checkPlacement(restartedRouter, accountCount, expectedTotal);
+			restartedRouter.close();
+
+			long totalOperations = (long) threadCount * operationsPerThread;
+			System.out.printf("%d nodes, %d threads, %d operations on %d accounts in %d ms (%.0f ops/s): %s\n",
+					nodeCount + 1, threadCount, totalOperations, accountCount, elapsedNanos / 1_000_000,
+					totalOperations / (elapsedNanos / 1e9), passed ? "PASSED" : "FAILED");
+		} finally {
+			for (Process process : processes) {
+				process.destroyForcibly();
+			}
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static void writeAccounts(Path accountsFile, int accountCount) throws IOException {
+		PinHash pinHash = PinHash.create(PIN_NUMBER, PIN_HASH_ITERATIONS);
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < accountCount; i++) {
+			lines.add(new BankAccount(FIRST_ACCOUNT_NUMBER + i, pinHash, STARTING_BALANCE, "Partition Account " + i)
+					.toString());
+		}
+		Files.write(accountsFile, lines);
+	}
+
+	private static int findFreePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * Starts a node in its directory and waits until it is listening, echoing
+	 * its output.
+	 *
+	 * @param accountsFile: the full accounts file to take a share of, or null to
+	 *        start with the accounts already in the directory or none.
+	 * @param ring: the ring to take the share by, or null.
+	 */
+	private static Process startNode(Path directory, int port, Path accountsFile, ConsistentHashRing ring)
+			throws IOException, InterruptedException {
+		Files.createDirectories(directory);
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-cp");
+		command.add(absoluteClassPath());
+		for (String property : NODE_PROPERTIES) {
+			command.add(property);
+		}
+		command.add(PartitionNode.class.getName());
+		command.add(Integer.toString(port));
+		if (accountsFile != null) {
+			command.add(accountsFile.toString());
+			command.add(ring.toString());
+		}
+		Process process = new ProcessBuilder(command).directory(directory.toFile()).redirectErrorStream(true)
+				.start();
+		BufferedReader output = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		String line;
+		while ((line = output.readLine()) != null) {
+			System.out.printf("[node %d] %s\n", port, line);
+			if (line.contains("listening")) {
+				break;
+			}
+		}
+		if (line == null) {
+			throw new IOException("Node " + port + " exited with status " + process.waitFor());
+		}
+		Thread echo = new Thread(() -> echoOutput(port, output), "node-" + port + "-output");
+		echo.setDaemon(true);
+		echo.start();
+		return process;
+	}
+
+	/**
+	 * Gets this process's class path with every entry made absolute, since the
+	 * nodes run in directories of their own.
+	 */
+	private static String absoluteClassPath() {
+		List<String> entries = new ArrayList<>();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			entries.add(Paths.get(entry).toAbsolutePath().toString());
+		}
+		return String.join(File.pathSeparator, entries);
+	}
+
+	private static void echoOutput(int port, BufferedReader output) {
+		try {
+			String line;
+			while ((line = output.readLine()) != null) {
+				System.out.printf("[node %d] %s\n", port, line);
+			}
+		} catch (IOException e) {
+			System.out.printf("[node %d] output closed: %s\n", port, e.getMessage());
+		}
+	}
+
+	/**
+	 * Stops a node the way an operator would, letting it save its accounts.
+	 */
+	private static void stopNode(Process process) throws InterruptedException, IOException {
+		process.destroy();
+		if (!process.waitFor(NODE_START_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			throw new IOException("Node did not stop");
+		}
+	}
+
+	/**
+	 * Checks that the nodes together hold every account once, each on the node
+	 * the ring assigns it to, and that their balances add up to the total.
+	 */
+	private static boolean checkPlacement(PartitionRouter router, int accountCount, long expectedTotal)
+			throws IOException {
+		boolean passed = true;
+		long heldAccounts = 0;
+		long actualTotal = 0;
+		for (String node : router.getRing().getNodes()) {
+			String[] stats = router.requestNode(node, PartitionNode.STATS).split(" ");
+			heldAccounts += Long.parseLong(stats[1]);
+			actualTotal += Long.parseLong(stats[2]);
+		}
+		if (heldAccounts != accountCount) {
+			System.out.printf("* The nodes hold %d accounts instead of %d\n", heldAccounts, accountCount);
+			passed = false;
+		}
+		for (int i = 0; i < accountCount; i++) {
+			int accountNumber = FIRST_ACCOUNT_NUMBER + i;
+			String owner = router.getRing().ownerOf(accountNumber);
+			if (!router.requestNode(owner, PartitionNode.FIND + ' ' + accountNumber)
+					.startsWith(PartitionNode.FOUND)) {
+				System.out.printf("* Account %d is not on its owner %s\n", accountNumber, owner);
+				passed = false;
+			}
+		}
+		if (actualTotal != expectedTotal) {
+			System.out.printf("* Lost updates: total balance is %s but should be %s\n",
+					Money.formatCurrency(actualTotal), Money.formatCurrency(expectedTotal));
+			passed = false;
+		}
+		return passed;
+	}
+
+	/**
+	 * Checks that a router started on the ring from before the new node was added
+	 * is sent on to the owner of every account, and switches to the new ring.
+	 */
+	private static boolean checkStaleRouter(ConsistentHashRing oldRing, ConsistentHashRing newRing,
+			int accountCount) throws IOException {
+		boolean passed = true;
+		try (PartitionRouter staleRouter = new PartitionRouter(oldRing)) {
+			for (int i = 0; i < accountCount; i++) {
+				int accountNumber = FIRST_ACCOUNT_NUMBER + i;
+				String reply = staleRouter.request(accountNumber, PartitionNode.FIND + ' ' + accountNumber);
+				if (!reply.startsWith(PartitionNode.FOUND)) {
+					System.out.printf("* A router on the old ring got %s for account %d\n", reply, accountNumber);
+					passed = false;
+				}
+			}
+			if (!staleRouter.getRing().toString().equals(newRing.toString())) {
+				System.out.printf("* A router on the old ring is still on %s\n", staleRouter.getRing());
+				passed = false;
+			}
+		}
+		return passed;
+	}
+
+	/**
+	 * Checks that the nodes refuse a second ATM with the terminal ID already held
+	 * by the running router.
+	 */
+	private static boolean checkTerminalIdInUse(ConsistentHashRing ring) {
+		try (PartitionRouter secondRouter = new PartitionRouter(ring, TERMINAL_ID)) {
+			secondRouter.connectToAllNodes();
+			System.out.printf("* A second ATM was allowed terminal ID %d\n", TERMINAL_ID);
+			return false;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Checks that a deposit retried with its transaction ID is applied once, and
+	 * that the same ID sent with a different amount or type is refused.
+	 */
+	private static boolean checkTransactionIdReuse(PartitionRouter router) throws IOException {
+		int accountNumber = FIRST_ACCOUNT_NUMBER;
+		long transactionId = new TransactionIdGenerator(TERMINAL_ID).nextId();
+		String deposit = PartitionNode.DEPOSIT + ' ' + accountNumber + ' ' + RETRIED_DEPOSIT_AMOUNT + ' '
+				+ transactionId;
+		String first = router.request(accountNumber, deposit);
+		String retry = router.request(accountNumber, deposit);
+		String otherAmount = router.request(accountNumber, PartitionNode.DEPOSIT + ' ' + accountNumber + ' '
+				+ (RETRIED_DEPOSIT_AMOUNT * 2) + ' ' + transactionId);
+		String otherType = router.request(accountNumber, PartitionNode.WITHDRAW + ' ' + accountNumber + ' '
+				+ RETRIED_DEPOSIT_AMOUNT + ' ' + transactionId);
+		boolean passed = true;
+		if (!first.startsWith(TransactionStatus.APPROVED.name()) || !retry.equals(first)) {
+			System.out.printf("* Deposit replied %s, and its retry %s\n", first, retry);
+			passed = false;
+		}
+		String conflict = TransactionStatus.TRANSACTION_ID_CONFLICT.name();
+		if (!otherAmount.startsWith(conflict) || !otherType.startsWith(conflict)) {
+			System.out.printf("* Reused transaction ID replied %s for another amount and %s for a withdrawal\n",
+					otherAmount, otherType);
+			passed = false;
+		}
+		return passed;
+	}
+
+	/**
+	 * Checks that the new node holds the accounts moved to it, and that they are
+	 * within half again of an even share.
+	 */
+	private static boolean checkNewNodeShare(PartitionRouter router, String newNode, int moved, int accountCount,
+			int nodeCount) throws IOException {
+		long held = Long.parseLong(router.requestNode(newNode, PartitionNode.STATS).split(" ")[1]);
+		double evenShare = (double) accountCount / nodeCount;
+		if (held != moved || held < evenShare / 2 || held > evenShare * 1.5) {
+			System.out.printf("* The new node holds %d accounts after %d were moved, against an even share of %.0f\n",
+					held, moved, evenShare);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Logs in to random accounts, by account number or by card, and applies a
+	 * seeded random mix of deposits, withdrawals and transfers, keeping its own
+	 * total of what was deposited and withdrawn.
+	 */
+	private static class Worker extends Thread {
+		private final TransactionEngine engine;
+		private final int accountCount;
+		private final int operations;
+		private final SplittableRandom random;
+		private long deposited;
+		private long withdrawn;
+		private Exception failure;
+
+		Worker(TransactionEngine engine, int accountCount, int operations, long seed) {
+			this.engine = engine;
+			this.accountCount = accountCount;
+			this.operations = operations;
+			this.random = new SplittableRandom(seed);
+		}
+
+		@Override
+		public void run() {
+			try {
+				TransactionSession session = new TransactionSession();
+				for (int i = 0; i < operations; i++) {
+					int accountNumber = FIRST_ACCOUNT_NUMBER + random.nextInt(accountCount);
+					TransactionResult login = random.nextBoolean()
+							? engine.login(session, accountNumber, PIN_NUMBER)
+							: engine.loginWithCard(session,
+									CardNumberGenerator.getShared().cardNumberFor(accountNumber), PIN_NUMBER);
+					expectApproved(login);
+					long amount = Money.fromDollars(1 + random.nextInt(500));
+					int operation = random.nextInt(3);
+					if (operation == 0) {
+						expectApproved(engine.deposit(session, amount));
+						deposited += amount;
+					} else if (operation == 1) {
+						TransactionResult withdrawal = engine.withdraw(session, amount);
+						if (withdrawal.isApproved()) {
+							withdrawn += amount;
+						} else {
+							expectStatus(withdrawal, TransactionStatus.INSUFFICIENT_FUNDS);
+						}
+					} else {
+						int toAccountNumber = FIRST_ACCOUNT_NUMBER + random.nextInt(accountCount);
+						if (toAccountNumber != accountNumber) {
+							TransactionStatus status = engine.transfer(session, toAccountNumber, amount).getStatus();
+							if (status == TransactionStatus.PARTITION_UNAVAILABLE) {
+								throw new IllegalStateException("Transfer failed: " + status);
+							}
+						}
+					}
+					engine.logout(session);
+				}
+			} catch (IOException | RuntimeException e) {
+				failure = e;
+			}
+		}
+
+		private static void expectApproved(TransactionResult result) {
+			expectStatus(result, TransactionStatus.APPROVED);
+		}
+
+		private static void expectStatus(TransactionResult result, TransactionStatus status) {
+			if (result.getStatus() != status) {
+				throw new IllegalStateException("Unexpected result: " + result);
+			}
+		}
+	}
+}
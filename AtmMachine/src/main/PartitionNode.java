@@ -0,0 +1,602 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds one partition of the accounts in its own process, serving the
+ * requests a PartitionRouter sends for the accounts the ConsistentHashRing
+ * assigns to it. The node keeps its accounts in the account data files of the
+ * directory it is started in, loaded and journaled just as a single ATM's are,
+ * with its own hold clearing and withdrawal limits.
+ *
+ * Requests and replies are single lines of text over a loopback socket:
+ *
+ * <pre>
+ * FIND account                 FOUND available actual name, or NOT_FOUND
+ * VERIFY_PIN account pin       APPROVED, INCORRECT_PIN or ACCOUNT_NOT_FOUND
+ * DEPOSIT account amount id    status available actual
+ * WITHDRAW account amount id   status available actual
+ * TRANSFER from to amount id   status available actual
+ * BALANCE account              status available actual
+ * TERMINAL id instance         OK
+ * STATS                        OK accounts total
+ * REBALANCE node,node,...      OK accounts moved
+ * RING node,... [node,...]     OK
+ * IMPORT available record      no reply
+ * IMPORTED                     OK accounts imported
+ * </pre>
+ *
+ * Amounts and balances are in cents, and a request that fails gets ERROR and a
+ * message. A request for an account the node does not hold, where its ring
+ * puts the account on another node, gets WRONG_OWNER and that ring, so the
+ * router can follow the account to its owner and catch up with a ring that
+ * has grown since it started. A deposit, withdrawal or transfer sent again with the same
+ * transaction ID, such as a router's retry, gets the first one's reply instead
+ * of being applied twice, and one whose ID was already used for a different
+ * account, type or amount gets TRANSACTION_ID_CONFLICT.
+ *
+ * Each router registers its terminal ID on every connection it opens with
+ * TERMINAL id instance, which replies OK, or ERROR while another running ATM
+ * holds the same terminal ID, so two ATMs cannot issue the same transaction
+ * IDs to one node.
+ *
+ * When told to rebalance onto a new ring, the node sends every account it no
+ * longer owns to its new owner as IMPORT lines followed by IMPORTED, and only
+ * once the new owner has saved them does it remove them, save its own accounts
+ * and switch to the new ring. Transactions wait while a rebalance or import is
+ * in progress. RING sets the node's ring without moving any accounts. A node
+ * joining the ring is given the ring it is joining from as well, and sends
+ * requests for its accounts that have not arrived yet back to their old
+ * owners, until it is given the new ring alone once every node has moved its
+ * accounts. The node keeps its ring in partition.ring, so it survives a
+ * restart.
+ *
+ * On first start in an empty directory the node can take its share of a full
+ * accounts file by the ring it is given.
+ *
+ * <pre>
+ * java main.PartitionNode port [accounts file] [node,node,...]
+ * </pre>
+ */
+public class PartitionNode {
+	public static final String FIND = "FIND";
+	public static final String VERIFY_PIN = "VERIFY_PIN";
+	public static final String DEPOSIT = "DEPOSIT";
+	public static final String WITHDRAW = "WITHDRAW";
+	public static final String TRANSFER = "TRANSFER";
+	public static final String BALANCE = "BALANCE";
+	public static final String TERMINAL = "TERMINAL";
+	public static final String STATS = "STATS";
+	public static final String REBALANCE = "REBALANCE";
+	public static final String IMPORT = "IMPORT";
+	public static final String IMPORTED = "IMPORTED";
+	public static final String RING = "RING";
+	public static final String FOUND = "FOUND";
+	public static final String NOT_FOUND = "NOT_FOUND";
+	public static final String OK = "OK";
+	public static final String WRONG_OWNER = "WRONG_OWNER";
+	public static final String ERROR = "ERROR";
+
+	private static final Path SNAPSHOT_FILE = Paths.get("accounts.snapshot");
+	private static final Path TEXT_FILE = Paths.get("accounts.txt");
+	private static final Path RING_FILE = Paths.get("partition.ring");
+	private static final int PIN_CACHE_CAPACITY = 1 << 16;
+	private static final long PIN_CACHE_TIME_TO_LIVE_NANOS = TimeUnit.MINUTES.toNanos(5);
+	private static final int DEDUPLICATION_CAPACITY = 1 << 16;
+	private static final int NO_TERMINAL_ID = -1;
+
+	private final String address;
+	private final AccountLedger ledger;
+	private final PinVerificationCache pinVerificationCache;
+	private final TransactionDeduplicator deduplicator;
+	private final Map<Integer, TerminalClaim> terminalClaims;
+	private final ReadWriteLock rebalanceLock;
+	private final ExecutorService connectionExecutor;
+	private volatile ConsistentHashRing ring;
+	private volatile ConsistentHashRing joiningFromRing;
+
+	/**
+	 * @param address: the host:port address the node is known by on the ring.
+	 * @param ledger: the ledger holding the node's accounts.
+	 * @param ring: the ring the node is on, or null if it has not been told yet.
+	 * @param joiningFromRing: the ring the node is joining from, or null if it
+	 *        is not joining.
+	 */
+	public PartitionNode(String address, AccountLedger ledger, ConsistentHashRing ring,
+			ConsistentHashRing joiningFromRing) {
+		this.address = address;
+		this.ledger = ledger;
+		this.ring = ring;
+		this.joiningFromRing = joiningFromRing;
+		this.pinVerificationCache = new PinVerificationCache(PIN_CACHE_CAPACITY, PIN_CACHE_TIME_TO_LIVE_NANOS);
+		this.deduplicator = new TransactionDeduplicator(DEDUPLICATION_CAPACITY, ledger.getMetrics());
+		this.terminalClaims = new HashMap<>();
+		this.rebalanceLock = new ReentrantReadWriteLock();
+		this.connectionExecutor = Executors.newCachedThreadPool();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = Integer.parseInt(args[0]);
+		String address = InetAddress.getLoopbackAddress().getHostAddress() + ":" + port;
+		if (!Files.exists(SNAPSHOT_FILE) && !Files.exists(TEXT_FILE)) {
+			if (args.length > 2) {
+				ConsistentHashRing ring = ConsistentHashRing.parse(args[2]);
+				writeOwnedAccounts(Paths.get(args[1]), ring, address);
+				writeRing(ring, null);
+			} else {
+				Files.createFile(TEXT_FILE);
+			}
+		}
+		List<String> ringLines = Files.exists(RING_FILE) ? Files.readAllLines(RING_FILE, StandardCharsets.UTF_8)
+				: List.of();
+		ConsistentHashRing ring = ringLines.isEmpty() ? null : ConsistentHashRing.parse(ringLines.get(0));
+		ConsistentHashRing joiningFromRing = ringLines.size() < 2 ? null : ConsistentHashRing.parse(ringLines.get(1));
+		AccountLedger ledger = Atm.getBankAccountDataFromFile(System.out);
+		PartitionNode node = new PartitionNode(address, ledger, ring, joiningFromRing);
+		Runtime.getRuntime().addShutdownHook(new Thread(node::shutdown));
+		node.serve(port);
+	}
+
+	/**
+	 * Accepts router and node connections on the loopback interface and serves
+	 * them until the process is stopped.
+	 *
+	 * @param port: the port to listen on.
+	 */
+	public void serve(int port) throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			System.out.printf("Partition node %s listening with %d accounts\n", address,
+					ledger.getBankAccounts().size());
+			while (!serverSocket.isClosed()) {
+				Socket socket = serverSocket.accept();
+				connectionExecutor.execute(() -> serveConnection(socket));
+			}
+		}
+	}
+
+	/**
+	 * Stops serving and compacts the node's accounts into a new snapshot.
+	 */
+	public void shutdown() {
+		connectionExecutor.shutdownNow();
+		rebalanceLock.writeLock().lock();
+		try {
+			ledger.compact();
+			ledger.close();
+		} catch (IOException e) {
+			System.out.printf("* Error: Unable to save account data: %s\n", e.getMessage());
+		} finally {
+			rebalanceLock.writeLock().unlock();
+		}
+	}
+
+	private void serveConnection(Socket socket) {
+		try (Socket connection = socket;
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(
+						new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+			List<String> imports = new ArrayList<>();
+			int terminalId = NO_TERMINAL_ID;
+			try {
+				String request;
+				while ((request = in.readLine()) != null) {
+					if (request.startsWith(IMPORT + ' ')) {
+						imports.add(request);
+						continue;
+					}
+					String reply;
+					if (request.startsWith(TERMINAL + ' ')) {
+						String[] fields = request.split(" ");
+						releaseTerminal(terminalId);
+						terminalId = claimTerminal(Integer.parseInt(fields[1]), fields[2]);
+						reply = terminalId == NO_TERMINAL_ID ? ERROR + " Terminal ID " + fields[1]
+								+ " is in use by another ATM" : OK;
+					} else {
+						reply = request.equals(IMPORTED) ? importAccounts(imports) : handleRequest(request);
+					}
+					out.write(reply);
+					out.write('\n');
+					out.flush();
+				}
+			} finally {
+				releaseTerminal(terminalId);
+			}
+		} catch (IOException | RuntimeException e) {
+			System.out.printf("* Error: Connection to partition node failed: %s\n", e.getMessage());
+		}
+	}
+
+	/**
+	 * Claims a terminal ID for a connection, which succeeds unless another ATM's
+	 * connections hold it.
+	 *
+	 * @param terminalId: the terminal ID.
+	 * @param instanceId: identifies the ATM, the same on all its connections.
+	 * @return the terminal ID, or NO_TERMINAL_ID if another ATM holds it.
+	 */
+	private int claimTerminal(int terminalId, String instanceId) {
+		synchronized (terminalClaims) {
+			TerminalClaim claim = terminalClaims.computeIfAbsent(terminalId, id -> new TerminalClaim(instanceId));
+			if (!claim.instanceId.equals(instanceId)) {
+				return NO_TERMINAL_ID;
+			}
+			claim.connectionCount++;
+			return terminalId;
+		}
+	}
+
+	/**
+	 * Releases a connection's claim on a terminal ID, freeing the ID once none of
+	 * its ATM's connections remain.
+	 */
+	private void releaseTerminal(int terminalId) {
+		if (terminalId == NO_TERMINAL_ID) {
+			return;
+		}
+		synchronized (terminalClaims) {
+			TerminalClaim claim = terminalClaims.get(terminalId);
+			if (--claim.connectionCount == 0) {
+				terminalClaims.remove(terminalId);
+			}
+		}
+	}
+
+	/**
+	 * Handles a single request line.
+	 *
+	 * @param request: the request.
+	 * @return the reply line.
+	 */
+	public String handleRequest(String request) {
+		String[] fields = request.split(" ");
+		try {
+			if (fields[0].equals(REBALANCE)) {
+				return rebalance(ConsistentHashRing.parse(fields[1]));
+			}
+			if (fields[0].equals(RING)) {
+				return setRing(ConsistentHashRing.parse(fields[1]),
+						fields.length > 2 ? ConsistentHashRing.parse(fields[2]) : null);
+			}
+			rebalanceLock.readLock().lock();
+			try {
+				return handleTransaction(fields);
+			} finally {
+				rebalanceLock.readLock().unlock();
+			}
+		} catch (IOException | RuntimeException e) {
+			return ERROR + ' ' + e.getMessage();
+		}
+	}
+
+	private String handleTransaction(String[] fields) throws IOException {
+		switch (fields[0]) {
+		case STATS:
+			return stats();
+		case FIND:
+			return find(Integer.parseInt(fields[1]));
+		case VERIFY_PIN:
+			return verifyPin(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+		case BALANCE:
+			return balance(Integer.parseInt(fields[1]));
+		case DEPOSIT:
+		case WITHDRAW:
+			return changeBalance(fields[0], Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+					Long.parseLong(fields[3]));
+		case TRANSFER:
+			return transfer(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Long.parseLong(fields[3]),
+					Long.parseLong(fields[4]));
+		default:
+			throw new IllegalArgumentException("Unknown request " + fields[0]);
+		}
+	}
+
+	private String find(int accountNumber) {
+		BankAccount account = ledger.getAccount(accountNumber);
+		if (account == null) {
+			return replyForMissing(accountNumber, NOT_FOUND);
+		}
+		synchronized (account.getLock()) {
+			return FOUND + ' ' + account.getAvailableBalance() + ' ' + account.getActualBalance() + ' '
+					+ account.getOwnersName();
+		}
+	}
+
+	private String verifyPin(int accountNumber, int pinNumber) {
+		BankAccount account = ledger.getAccount(accountNumber);
+		if (account == null) {
+			return replyForMissing(accountNumber, TransactionStatus.ACCOUNT_NOT_FOUND.name());
+		}
+		if (!pinVerificationCache.verify(account, pinNumber)) {
+			return TransactionStatus.INCORRECT_PIN.name();
+		}
+		return TransactionStatus.APPROVED.name();
+	}
+
+	private String balance(int accountNumber) {
+		BankAccount account = ledger.getAccount(accountNumber);
+		if (account == null) {
+			return replyForMissing(accountNumber, notFoundReply());
+		}
+		synchronized (account.getLock()) {
+			return replyOf(TransactionResult.forAccount(TransactionStatus.APPROVED, TransactionEngine.BALANCE,
+					account, 0));
+		}
+	}
+
+	private String changeBalance(String request, int accountNumber, long amount, long transactionId)
+			throws IOException {
+		BankAccount account = ledger.getAccount(accountNumber);
+		if (account == null) {
+			return replyForMissing(accountNumber, notFoundReply());
+		}
+		if (amount <= 0) {
+			return TransactionStatus.INVALID_AMOUNT.name() + " 0 0";
+		}
+		String fingerprint = accountNumber + " " + amount;
+		if (request.equals(DEPOSIT)) {
+			return replyOf(deduplicator.applyOnce(transactionId, TransactionEngine.DEPOSIT, fingerprint,
+					() -> ledger.deposit(account, amount)));
+		}
+		return replyOf(deduplicator.applyOnce(transactionId, TransactionEngine.WITHDRAWAL, fingerprint,
+				() -> ledger.withdraw(account, amount)));
+	}
+
+	private String transfer(int fromAccountNumber, int toAccountNumber, long amount, long transactionId)
+			throws IOException {
+		BankAccount fromAccount = ledger.getAccount(fromAccountNumber);
+		BankAccount toAccount = ledger.getAccount(toAccountNumber);
+		if (fromAccount == null) {
+			return replyForMissing(fromAccountNumber, notFoundReply());
+		}
+		if (toAccount == null) {
+			if (replyForMissing(toAccountNumber, null) != null) {
+				return replyOf(TransactionResult.forAccount(TransactionStatus.CROSS_PARTITION_TRANSFER,
+						TransactionEngine.TRANSFER, fromAccount, amount));
+			}
+			return notFoundReply();
+		}
+		if (fromAccountNumber == toAccountNumber) {
+			return TransactionStatus.SAME_ACCOUNT.name() + " 0 0";
+		}
+		if (amount <= 0) {
+			return TransactionStatus.INVALID_AMOUNT.name() + " 0 0";
+		}
+		return replyOf(deduplicator.applyOnce(transactionId, TransactionEngine.TRANSFER,
+				fromAccountNumber + " " + toAccountNumber + " " + amount,
+				() -> ledger.transfer(fromAccount, toAccount, amount)));
+	}
+
+	/**
+	 * Gets the reply to a request for an account the node does not hold. If the
+	 * ring puts the account on another node the reply is WRONG_OWNER with the
+	 * ring. A joining node whose account has not arrived yet replies the same
+	 * with the ring it is joining from, sending the request back to the account's
+	 * old owner.
+	 *
+	 * @param accountNumber: the account requested.
+	 * @param notFoundReply: the reply if the account belongs here but does not
+	 *        exist.
+	 * @return the reply.
+	 */
+	private String replyForMissing(int accountNumber, String notFoundReply) {
+		ConsistentHashRing currentRing = ring;
+		if (currentRing == null) {
+			return notFoundReply;
+		}
+		if (!currentRing.ownerOf(accountNumber).equals(address)) {
+			return WRONG_OWNER + ' ' + currentRing;
+		}
+		ConsistentHashRing previousRing = joiningFromRing;
+		if (previousRing != null && !previousRing.ownerOf(accountNumber).equals(address)) {
+			return WRONG_OWNER + ' ' + previousRing;
+		}
+		return notFoundReply;
+	}
+
+	private String stats() {
+		long total = 0;
+		for (BankAccount account : ledger.getBankAccounts()) {
+			total += account.getActualBalance();
+		}
+		return OK + ' ' + ledger.getBankAccounts().size() + ' ' + total;
+	}
+
+	/**
+	 * Moves every account the new ring assigns to another node over to it, then
+	 * removes the moved accounts and saves the accounts kept.
+	 *
+	 * @param ring: the ring after the change.
+	 * @return the reply, with the number of accounts moved.
+	 */
+	private String rebalance(ConsistentHashRing ring) throws IOException {
+		rebalanceLock.writeLock().lock();
+		try {
+			Map<String, List<String>> importsByOwner = new LinkedHashMap<>();
+			List<Integer> movedAccountNumbers = new ArrayList<>();
+			for (BankAccount account : ledger.getBankAccounts()) {
+				String owner = ring.ownerOf(account.getAccountNumber());
+				if (!owner.equals(address)) {
+					importsByOwner.computeIfAbsent(owner, node -> new ArrayList<>()).add(importLineOf(account));
+					movedAccountNumbers.add(account.getAccountNumber());
+				}
+			}
+			for (Map.Entry<String, List<String>> imports : importsByOwner.entrySet()) {
+				sendImports(imports.getKey(), imports.getValue());
+			}
+			for (int accountNumber : movedAccountNumbers) {
+				ledger.removeAccount(accountNumber);
+			}
+			if (!movedAccountNumbers.isEmpty()) {
+				ledger.compact();
+			}
+			writeRing(ring, null);
+			this.ring = ring;
+			this.joiningFromRing = null;
+			System.out.printf("Moved %d accounts to %s\n", movedAccountNumbers.size(), importsByOwner.keySet());
+			return OK + ' ' + movedAccountNumbers.size();
+		} finally {
+			rebalanceLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Switches to a new ring without moving any accounts.
+	 *
+	 * @param newRing: the ring the node is on from now on.
+	 * @param newJoiningFromRing: the ring the node is joining from, or null once
+	 *        every account it owns has arrived.
+	 * @return OK.
+	 */
+	private String setRing(ConsistentHashRing newRing, ConsistentHashRing newJoiningFromRing) throws IOException {
+		rebalanceLock.writeLock().lock();
+		try {
+			writeRing(newRing, newJoiningFromRing);
+			ring = newRing;
+			joiningFromRing = newJoiningFromRing;
+			return OK;
+		} finally {
+			rebalanceLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Saves the node's ring, and the ring it is joining from if any, so that a
+	 * restarted node routes just as it did before it stopped.
+	 */
+	private static void writeRing(ConsistentHashRing ring, ConsistentHashRing joiningFromRing) throws IOException {
+		List<String> lines = new ArrayList<>();
+		lines.add(ring.toString());
+		if (joiningFromRing != null) {
+			lines.add(joiningFromRing.toString());
+		}
+		Path temporaryFile = RING_FILE.resolveSibling(RING_FILE.getFileName() + ".tmp");
+		Files.write(temporaryFile, lines, StandardCharsets.UTF_8);
+		Files.move(temporaryFile, RING_FILE, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static String importLineOf(BankAccount account) {
+		synchronized (account.getLock()) {
+			return IMPORT + ' ' + account.getAvailableBalance() + ' ' + account;
+		}
+	}
+
+	/**
+	 * Sends accounts to the node that now owns them and waits until it has saved
+	 * them.
+	 */
+	private static void sendImports(String node, List<String> imports) throws IOException {
+		try (PartitionRouter.NodeConnection connection = PartitionRouter.NodeConnection.open(node)) {
+			for (String line : imports) {
+				connection.write(line);
+			}
+			String reply = connection.request(IMPORTED);
+			if (!reply.equals(OK + ' ' + imports.size())) {
+				throw new IOException("Node " + node + " did not import the accounts: " + reply);
+			}
+		}
+	}
+
+	/**
+	 * Adds the accounts sent by another node and saves them. An account already
+	 * here, sent again because an earlier rebalance failed before its sender
+	 * removed it, is replaced by the sender's copy.
+	 *
+	 * @param imports: the IMPORT lines received.
+	 * @return the reply, with the number of accounts imported.
+	 */
+	private String importAccounts(List<String> imports) {
+		rebalanceLock.writeLock().lock();
+		try {
+			for (String line : imports) {
+				BankAccount account = parseImport(line);
+				ledger.removeAccount(account.getAccountNumber());
+				ledger.addAccount(account);
+			}
+			ledger.compact();
+			System.out.printf("Imported %d accounts\n", imports.size());
+			return OK + ' ' + imports.size();
+		} catch (IOException | RuntimeException e) {
+			return ERROR + ' ' + e.getMessage();
+		} finally {
+			imports.clear();
+			rebalanceLock.writeLock().unlock();
+		}
+	}
+
+	private static BankAccount parseImport(String line) throws AccountDataFormatException {
+		int availableStart = IMPORT.length() + 1;
+		int recordStart = line.indexOf(' ', availableStart) + 1;
+		long availableBalance = Long.parseLong(line.substring(availableStart, recordStart - 1));
+		byte[] record = line.substring(recordStart).getBytes(StandardCharsets.UTF_8);
+		List<BankAccount> accounts = new AccountRecordParser(ByteBuffer.wrap(record), 0, record.length).parseAll();
+		BankAccount account = accounts.get(0);
+		account.restoreBalances(account.getActualBalance(), availableBalance);
+		return account;
+	}
+
+	private static String replyOf(TransactionResult result) {
+		return result.getStatus().name() + ' ' + result.getAvailableBalance() + ' ' + result.getActualBalance();
+	}
+
+	private static String notFoundReply() {
+		return TransactionStatus.ACCOUNT_NOT_FOUND.name() + " 0 0";
+	}
+
+	/**
+	 * Writes the records of a full accounts file that the ring assigns to this
+	 * node into the text file the node loads from.
+	 */
+	private static void writeOwnedAccounts(Path accountsFile, ConsistentHashRing ring, String address)
+			throws IOException {
+		List<String> ownedLines = new ArrayList<>();
+		for (String line : Files.readAllLines(accountsFile, StandardCharsets.UTF_8)) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty()) {
+				continue;
+			}
+			int end = trimmed.indexOf(' ');
+			int accountNumber = Integer.parseInt(end < 0 ? trimmed : trimmed.substring(0, end));
+			if (ring.ownerOf(accountNumber).equals(address)) {
+				ownedLines.add(line);
+			}
+		}
+		Files.write(TEXT_FILE, ownedLines, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The ATM holding a terminal ID, and how many of its connections are open.
+	 */
+	private static final class TerminalClaim {
+		private final String instanceId;
+		private int connectionCount;
+
+		private TerminalClaim(String instanceId) {
+			this.instanceId = instanceId;
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sends each account's requests to the PartitionNode that owns it by the
+ * current ConsistentHashRing. Connections to each node are kept open and
+ * reused, one per request in flight, so many sessions can reach the same node
+ * at once without connecting for every request.
+ *
+ * A router that issues transactions registers the terminal ID of its ATM on
+ * every connection it opens, and a node refuses the connection while another
+ * ATM holds that terminal ID, so the transaction IDs the node sees from
+ * different ATMs can never collide.
+ *
+ * A node asked for an account it does not hold replies WRONG_OWNER with the
+ * ring it is on, and the router sends the request on to the owner by that ring,
+ * switching to it if it has more nodes than the router's own. Rings only ever
+ * grow, so the ring with more nodes is the newer one, and a router started
+ * before a node was added catches up on its first request for a moved
+ * account.
+ *
+ * Adding a node first tells the new node the ring it is joining from, then
+ * tells every existing node to move the accounts the new ring assigns to it,
+ * and finally gives every node the new ring alone. Each step can be repeated
+ * safely, so adding a node that failed part way is finished by adding it again
+ * with the same ring. Throughout, and after a failure, every account can still
+ * be reached: a node that has moved its accounts points routers at the new
+ * node, and the new node points them back at the old owners of accounts that
+ * have not arrived yet.
+ *
+ * A node can also be added from the command line while no ATM is routing to
+ * the nodes:
+ *
+ * <pre>
+ * java main.PartitionRouter new-node node,node,...
+ * </pre>
+ */
+public class PartitionRouter implements AutoCloseable {
+	private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+	private static final int READ_TIMEOUT_MILLIS = 30_000;
+	private static final int NO_TERMINAL_ID = -1;
+	private static final int MAX_REDIRECTS = 3;
+
+	private final int terminalId;
+	private final String instanceId;
+	private final ReadWriteLock ringLock;
+	private final ConcurrentHashMap<String, Queue<NodeConnection>> idleConnections;
+	private volatile ConsistentHashRing ring;
+
+	/**
+	 * Creates a router that only administers the nodes, such as to add a node,
+	 * and issues no transactions.
+	 *
+	 * @param ring: the ring the running nodes are on.
+	 */
+	public PartitionRouter(ConsistentHashRing ring) {
+		this(ring, NO_TERMINAL_ID);
+	}
+
+	/**
+	 * @param ring: the ring the running nodes are on.
+	 * @param terminalId: the terminal ID in the transaction IDs this router's ATM
+	 *        issues, which no other ATM routing to the nodes may share.
+	 */
+	public PartitionRouter(ConsistentHashRing ring, int terminalId) {
+		this.ring = ring;
+		this.terminalId = terminalId;
+		this.instanceId = UUID.randomUUID().toString();
+		this.ringLock = new ReentrantReadWriteLock();
+		this.idleConnections = new ConcurrentHashMap<>();
+	}
+
+	public static void main(String[] args) throws IOException {
+		try (PartitionRouter router = new PartitionRouter(ConsistentHashRing.parse(args[1]))) {
+			int moved = router.addNode(args[0]);
+			System.out.printf("Moved %d accounts to %s. The nodes are now %s\n", moved, args[0], router.getRing());
+		}
+	}
+
+	/**
+	 * Sends a request to the node that owns an account.
+	 *
+	 * @param accountNumber: the account the request is for.
+	 * @param request:       the request line.
+	 * @return the node's reply line.
+	 * @throws IOException if the node cannot be reached or replies with an error.
+	 */
+	public String request(int accountNumber, String request) throws IOException {
+		ringLock.readLock().lock();
+		try {
+			String node = ring.ownerOf(accountNumber);
+			for (int redirects = 0;; redirects++) {
+				String reply = requestNode(node, request);
+				if (!reply.startsWith(PartitionNode.WRONG_OWNER + ' ')) {
+					return reply;
+				}
+				if (redirects == MAX_REDIRECTS) {
+					throw new IOException("Account " + accountNumber + " could not be found on any node");
+				}
+				ConsistentHashRing nodeRing = ConsistentHashRing
+						.parse(reply.substring(PartitionNode.WRONG_OWNER.length() + 1));
+				switchToRingIfNewer(nodeRing);
+				node = nodeRing.ownerOf(accountNumber);
+			}
+		} finally {
+			ringLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Switches to a ring a node replied with if it has more nodes than the
+	 * router's ring.
+	 */
+	private synchronized void switchToRingIfNewer(ConsistentHashRing nodeRing) {
+		if (nodeRing.getNodes().size() > ring.getNodes().size()) {
+			ring = nodeRing;
+		}
+	}
+
+	/**
+	 * Checks if two accounts are owned by the same node.
+	 *
+	 * @return {true} if they are; {false} otherwise.
+	 */
+	public boolean isSameOwner(int firstAccountNumber, int secondAccountNumber) {
+		ConsistentHashRing currentRing = ring;
+		return currentRing.ownerOf(firstAccountNumber).equals(currentRing.ownerOf(secondAccountNumber));
+	}
+
+	/**
+	 * Sends a request to a particular node.
+	 *
+	 * @param node:    the node's address.
+	 * @param request: the request line.
+	 * @return the node's reply line.
+	 * @throws IOException if the node cannot be reached or replies with an error.
+	 */
+	public String requestNode(String node, String request) throws IOException {
+		Queue<NodeConnection> connections = idleConnections.computeIfAbsent(node,
+				address -> new ConcurrentLinkedQueue<>());
+		NodeConnection connection = connections.poll();
+		if (connection == null) {
+			connection = openRegistered(node);
+		}
+		String reply;
+		try {
+			reply = connection.request(request);
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+		connections.add(connection);
+		if (reply.startsWith(PartitionNode.ERROR)) {
+			throw new IOException("Node " + node + " refused " + request.split(" ")[0] + ": " + reply);
+		}
+		return reply;
+	}
+
+	/**
+	 * Connects to every node, registering the terminal ID with each, so that an
+	 * ATM whose terminal ID is already in use fails at once rather than on its
+	 * first transaction.
+	 *
+	 * @throws IOException if a node cannot be reached or refuses the terminal ID.
+	 */
+	public void connectToAllNodes() throws IOException {
+		for (String node : ring.getNodes()) {
+			NodeConnection connection = openRegistered(node);
+			idleConnections.computeIfAbsent(node, address -> new ConcurrentLinkedQueue<>()).add(connection);
+		}
+	}
+
+	/**
+	 * Adds a node, moving the accounts it now owns to it from the existing nodes.
+	 * The new node must already be running. If adding the node fails part way,
+	 * adding the same node again finishes the move, even if the router has since
+	 * switched to the new ring.
+	 *
+	 * @param node: the new node's address.
+	 * @return the number of accounts moved.
+	 */
+	public int addNode(String node) throws IOException {
+		ringLock.writeLock().lock();
+		try {
+			ConsistentHashRing oldRing = ring.getNodes().contains(node) ? ring.withoutNode(node) : ring;
+			ConsistentHashRing newRing = oldRing.withNode(node);
+			try {
+				requestNode(node, PartitionNode.RING + ' ' + newRing + ' ' + oldRing);
+				int moved = 0;
+				for (String existingNode : oldRing.getNodes()) {
+					String reply = requestNode(existingNode, PartitionNode.REBALANCE + ' ' + newRing);
+					moved += Integer.parseInt(reply.substring(PartitionNode.OK.length() + 1));
+				}
+				for (String ringNode : newRing.getNodes()) {
+					requestNode(ringNode, PartitionNode.RING + ' ' + newRing);
+				}
+				ring = newRing;
+				return moved;
+			} catch (IOException e) {
+				throw new IOException("Adding node " + node + " stopped part way; add it again to finish: "
+						+ e.getMessage(), e);
+			}
+		} finally {
+			ringLock.writeLock().unlock();
+		}
+	}
+
+	public ConsistentHashRing getRing() {
+		return ring;
+	}
+
+	/**
+	 * Opens a connection to a node and registers this router's terminal ID on it,
+	 * if it has one.
+	 */
+	private NodeConnection openRegistered(String node) throws IOException {
+		NodeConnection connection = NodeConnection.open(node);
+		if (terminalId == NO_TERMINAL_ID) {
+			return connection;
+		}
+		try {
+			String reply = connection.request(PartitionNode.TERMINAL + ' ' + terminalId + ' ' + instanceId);
+			if (!reply.equals(PartitionNode.OK)) {
+				throw new IOException("Node " + node + " refused terminal ID " + terminalId + ": " + reply);
+			}
+			return connection;
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes every idle connection.
+	 */
+	@Override
+	public void close() {
+		for (Queue<NodeConnection> connections : idleConnections.values()) {
+			NodeConnection connection;
+			while ((connection = connections.poll()) != null) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * A connection to one node, used by one request at a time.
+	 */
+	public static final class NodeConnection implements Closeable {
+		private final Socket socket;
+		private final BufferedReader in;
+		private final Writer out;
+
+		private NodeConnection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Connects to a node.
+		 *
+		 * @param node: the node's host:port address.
+		 * @return the connection.
+		 */
+		public static NodeConnection open(String node) throws IOException {
+			int portStart = node.lastIndexOf(':');
+			Socket socket = new Socket();
+			try {
+				socket.connect(new InetSocketAddress(node.substring(0, portStart),
+						Integer.parseInt(node.substring(portStart + 1))), CONNECT_TIMEOUT_MILLIS);
+				socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+				socket.setTcpNoDelay(true);
+				return new NodeConnection(socket);
+			} catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Sends a line that gets no reply. It is sent along with the next request.
+		 *
+		 * @param line: the line to send.
+		 */
+		public void write(String line) throws IOException {
+			out.write(line);
+			out.write('\n');
+		}
+
+		/**
+		 * Sends a request and waits for the reply.
+		 *
+		 * @param request: the request line.
+		 * @return the reply line.
+		 */
+		public String request(String request) throws IOException {
+			write(request);
+			out.flush();
+			String reply = in.readLine();
+			if (reply == null) {
+				throw new IOException("Connection closed by node");
+			}
+			return reply;
+		}
+
+		@Override
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				System.out.printf("* Error: Unable to close node connection: %s\n", e.getMessage());
+			}
+		}
+	}
+}
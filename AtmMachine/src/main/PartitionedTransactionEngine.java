@@ -0,0 +1,161 @@
+package main;
+
+import java.io.IOException;
+
+/**
+ * A TransactionEngine whose accounts are held by PartitionNode processes
+ * rather than in this process. Sessions log in, deposit, withdraw and check
+ * balances exactly as they do against a local ledger, while every lookup, PIN
+ * check and balance change is sent by a PartitionRouter to the node that owns
+ * the account and applied there. PIN attempt counting and metrics stay with the
+ * sessions in this process.
+ *
+ * The account a session is logged in to is a copy of the node's account
+ * holding the balances from the last reply. A card number is turned back into
+ * its account number by the shared CardNumberGenerator, so a card login asks
+ * only the node that owns the account.
+ *
+ * A request whose node cannot be reached is sent once more on a new
+ * connection, and fails with PARTITION_UNAVAILABLE if that fails too. Balance
+ * changes carry their transaction ID to the node, which applies a retried one
+ * only once even if the first attempt reached it and only the reply was lost,
+ * and refuses with TRANSACTION_ID_CONFLICT an ID it has seen for a different
+ * transaction, leaving the session's balances untouched.
+ * Transfers are only made between accounts on the same node, and statements
+ * are not available since each node keeps the history of its own accounts.
+ */
+public class PartitionedTransactionEngine extends TransactionEngine {
+	private static final int MAX_REQUEST_ATTEMPTS = 2;
+
+	private final PartitionRouter router;
+
+	/**
+	 * @param router: the router to the nodes holding the accounts.
+	 */
+	public PartitionedTransactionEngine(PartitionRouter router) {
+		super(null, new AtmMetrics());
+		this.router = router;
+	}
+
+	@Override
+	protected BankAccount findAccount(int accountNumber) {
+		String[] reply;
+		try {
+			reply = router.request(accountNumber, PartitionNode.FIND + ' ' + accountNumber).split(" ", 4);
+		} catch (IOException e) {
+			printNodeUnavailableMsg(e);
+			return null;
+		}
+		if (!reply[0].equals(PartitionNode.FOUND)) {
+			return null;
+		}
+		return new BankAccount(accountNumber, null, Long.parseLong(reply[2]), Long.parseLong(reply[1]),
+				reply[3]);
+	}
+
+	@Override
+	protected BankAccount findAccountByCardNumber(int cardNumber) {
+		return findAccount(CardNumberGenerator.getShared().accountNumberFor(cardNumber));
+	}
+
+	@Override
+	protected boolean verifyPin(BankAccount account, int pinNumber) {
+		int accountNumber = account.getAccountNumber();
+		try {
+			String reply = router.request(accountNumber,
+					PartitionNode.VERIFY_PIN + ' ' + accountNumber + ' ' + pinNumber);
+			return reply.equals(TransactionStatus.APPROVED.name());
+		} catch (IOException e) {
+			printNodeUnavailableMsg(e);
+			return false;
+		}
+	}
+
+	@Override
+	protected TransactionResult applyDeposit(BankAccount account, long amount, long transactionId) {
+		return requestBalanceChange(account,
+				PartitionNode.DEPOSIT + ' ' + account.getAccountNumber() + ' ' + amount + ' ' + transactionId,
+				DEPOSIT, amount);
+	}
+
+	@Override
+	protected TransactionResult applyWithdrawal(BankAccount account, long amount, long transactionId) {
+		return requestBalanceChange(account,
+				PartitionNode.WITHDRAW + ' ' + account.getAccountNumber() + ' ' + amount + ' ' + transactionId,
+				WITHDRAWAL, amount);
+	}
+
+	@Override
+	protected TransactionResult applyTransfer(BankAccount fromAccount, BankAccount toAccount, long amount,
+			long transactionId) {
+		if (!router.isSameOwner(fromAccount.getAccountNumber(), toAccount.getAccountNumber())) {
+			return TransactionResult.withoutAccount(TransactionStatus.CROSS_PARTITION_TRANSFER, TRANSFER);
+		}
+		return requestBalanceChange(fromAccount, PartitionNode.TRANSFER + ' ' + fromAccount.getAccountNumber() + ' '
+				+ toAccount.getAccountNumber() + ' ' + amount + ' ' + transactionId, TRANSFER, amount);
+	}
+
+	/**
+	 * Reads the balances from the account's node, except when logging in, where
+	 * the balances found a moment earlier are used.
+	 */
+	@Override
+	protected TransactionResult readBalances(BankAccount account, String transactionType) {
+		if (transactionType.equals(LOGIN)) {
+			return super.readBalances(account, transactionType);
+		}
+		return requestBalanceChange(account, PartitionNode.BALANCE + ' ' + account.getAccountNumber(),
+				transactionType, 0);
+	}
+
+	@Override
+	protected TransactionHistory getHistory() {
+		return null;
+	}
+
+	/**
+	 * Closes the connections to the nodes, which save their own accounts.
+	 */
+	@Override
+	public void saveAndClose() {
+		router.close();
+	}
+
+	public PartitionRouter getRouter() {
+		return router;
+	}
+
+	/**
+	 * Sends a request that replies with a status and the account's balances, and
+	 * keeps the balances on the session's copy of the account. The request is
+	 * sent again if the first attempt fails, which the node only applies once.
+	 */
+	private TransactionResult requestBalanceChange(BankAccount account, String request, String transactionType,
+			long amount) {
+		int accountNumber = account.getAccountNumber();
+		String[] reply = null;
+		for (int attempt = 1; reply == null; attempt++) {
+			try {
+				reply = router.request(accountNumber, request).split(" ");
+			} catch (IOException e) {
+				if (attempt == MAX_REQUEST_ATTEMPTS) {
+					printNodeUnavailableMsg(e);
+					return TransactionResult.withoutAccount(TransactionStatus.PARTITION_UNAVAILABLE,
+							transactionType);
+				}
+			}
+		}
+		TransactionStatus status = TransactionStatus.valueOf(reply[0]);
+		long availableBalance = Long.parseLong(reply[1]);
+		long actualBalance = Long.parseLong(reply[2]);
+		if (status != TransactionStatus.ACCOUNT_NOT_FOUND && status != TransactionStatus.TRANSACTION_ID_CONFLICT) {
+			account.restoreBalances(actualBalance, availableBalance);
+		}
+		return TransactionResult.forBalances(status, transactionType, accountNumber, amount, availableBalance,
+				actualBalance);
+	}
+
+	private static void printNodeUnavailableMsg(IOException e) {
+		System.out.printf("* Error: Unable to reach partition node: %s\n", e.getMessage());
+	}
+}
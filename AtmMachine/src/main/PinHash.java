@@ -0,0 +1,144 @@
+package main;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * A salted, iterated PBKDF2-HMAC-SHA256 hash of a PIN. Only the hash is kept
+ * with an account; the PIN itself is never stored. The iteration count is kept
+ * with each hash so it can be raised for new hashes without invalidating old
+ * ones.
+ *
+ * In the account data text file a hash is written as a single token:
+ *
+ * <pre>
+ * $pbkdf2-sha256$[iterations]$[base64 salt]$[base64 hash]
+ * </pre>
+ */
+public final class PinHash {
+	public static final int DEFAULT_ITERATIONS = 20_000;
+	public static final int SALT_LENGTH = 16;
+	public static final int HASH_LENGTH = 32;
+	public static final String TOKEN_PREFIX = "$pbkdf2-sha256$";
+
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final SecureRandom SALT_SOURCE = new SecureRandom();
+	private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+	private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+	private final int iterations;
+	private final byte[] salt;
+	private final byte[] hash;
+
+	/**
+	 * @param iterations: the PBKDF2 iteration count the hash was made with.
+	 * @param salt: the salt, SALT_LENGTH bytes.
+	 * @param hash: the hash, HASH_LENGTH bytes.
+	 */
+	public PinHash(int iterations, byte[] salt, byte[] hash) {
+		if (iterations < 1 || salt.length != SALT_LENGTH || hash.length != HASH_LENGTH) {
+			throw new IllegalArgumentException("Malformed PIN hash");
+		}
+		this.iterations = iterations;
+		this.salt = salt.clone();
+		this.hash = hash.clone();
+	}
+
+	/**
+	 * Hashes a PIN with a new random salt and the default iteration count.
+	 *
+	 * @param pinNumber: the PIN to hash.
+	 * @return the hash.
+	 */
+	public static PinHash create(int pinNumber) {
+		return create(pinNumber, DEFAULT_ITERATIONS);
+	}
+
+	/**
+	 * Hashes a PIN with a new random salt.
+	 *
+	 * @param pinNumber: the PIN to hash.
+	 * @param iterations: the PBKDF2 iteration count.
+	 * @return the hash.
+	 */
+	public static PinHash create(int pinNumber, int iterations) {
+		byte[] salt = new byte[SALT_LENGTH];
+		SALT_SOURCE.nextBytes(salt);
+		return new PinHash(iterations, salt, derive(pinNumber, salt, iterations));
+	}
+
+	/**
+	 * Parses a hash written in the text token form.
+	 *
+	 * @param token: the token.
+	 * @return the hash.
+	 * @throws IllegalArgumentException if the token is not a PIN hash.
+	 */
+	public static PinHash parse(String token) {
+		if (!token.startsWith(TOKEN_PREFIX)) {
+			throw new IllegalArgumentException("Not a PIN hash");
+		}
+		String[] fields = token.substring(TOKEN_PREFIX.length()).split("\\$", -1);
+		if (fields.length != 3) {
+			throw new IllegalArgumentException("Not a PIN hash");
+		}
+		return new PinHash(Integer.parseInt(fields[0]), DECODER.decode(fields[1]), DECODER.decode(fields[2]));
+	}
+
+	/**
+	 * Checks if a PIN is the one this hash was made from. This costs the full
+	 * iteration count every time.
+	 *
+	 * @param pinNumber: the PIN entered.
+	 * @return {true} if the PIN matches; {false} otherwise.
+	 */
+	public boolean matches(int pinNumber) {
+		return MessageDigest.isEqual(derive(pinNumber, salt, iterations), hash);
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public byte[] getSalt() {
+		return salt.clone();
+	}
+
+	public byte[] getHash() {
+		return hash.clone();
+	}
+
+	/**
+	 * Appends the hash in its text token form.
+	 *
+	 * @param sb: the builder to append to.
+	 * @return the builder.
+	 */
+	public StringBuilder appendTo(StringBuilder sb) {
+		sb.append(TOKEN_PREFIX).append(iterations).append('$');
+		sb.append(ENCODER.encodeToString(salt)).append('$');
+		return sb.append(ENCODER.encodeToString(hash));
+	}
+
+	@Override
+	public String toString() {
+		return appendTo(new StringBuilder(96)).toString();
+	}
+
+	private static byte[] derive(int pinNumber, byte[] salt, int iterations) {
+		char[] pin = Integer.toString(pinNumber).toCharArray();
+		PBEKeySpec spec = new PBEKeySpec(pin, salt, iterations, HASH_LENGTH * 8);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(ALGORITHM + " is not available", e);
+		} finally {
+			spec.clearPassword();
+		}
+	}
+}
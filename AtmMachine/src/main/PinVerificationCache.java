@@ -0,0 +1,104 @@
+package main;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers recent successful PIN verifications so that logging in to the same
+ * account again soon after skips the cost of the iterated hash. The cache has a
+ * fixed number of slots, each account maps to exactly one of them, and a newer
+ * verification simply replaces whatever was in its slot. Entries expire after a
+ * fixed time.
+ *
+ * A slot never holds the PIN itself, only a fingerprint of the account number
+ * and PIN keyed with a secret chosen when the cache is created, so a cached
+ * entry matches nothing but the right PIN for the right account. The cache lives
+ * only in memory and is never written out.
+ */
+public class PinVerificationCache {
+	private final AtomicReferenceArray<Entry> slots;
+	private final int slotMask;
+	private final long timeToLiveNanos;
+	private final long fingerprintKey;
+
+	/**
+	 * @param capacity: the number of slots, rounded up to a power of two.
+	 * @param timeToLiveNanos: how long a successful verification is remembered.
+	 */
+	public PinVerificationCache(int capacity, long timeToLiveNanos) {
+		int slotCount = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		this.slots = new AtomicReferenceArray<>(slotCount);
+		this.slotMask = slotCount - 1;
+		this.timeToLiveNanos = timeToLiveNanos;
+		this.fingerprintKey = new SecureRandom().nextLong();
+	}
+
+	/**
+	 * Verifies a PIN for an account, consulting the cache first and falling back
+	 * to the account's PIN hash.
+	 *
+	 * @param account: the account being logged in to.
+	 * @param pinNumber: the PIN entered.
+	 * @return {true} if the PIN is correct; {false} otherwise.
+	 */
+	public boolean verify(BankAccount account, int pinNumber) {
+		int accountNumber = account.getAccountNumber();
+		long fingerprint = fingerprint(accountNumber, pinNumber);
+		int slot = slotFor(accountNumber);
+		long now = System.nanoTime();
+		Entry entry = slots.get(slot);
+		if (entry != null && entry.accountNumber == accountNumber && entry.fingerprint == fingerprint
+				&& now - entry.expiresAtNanos < 0) {
+			return true;
+		}
+		if (!account.isCorrectPin(pinNumber)) {
+			return false;
+		}
+		slots.set(slot, new Entry(accountNumber, fingerprint, now + timeToLiveNanos));
+		return true;
+	}
+
+	/**
+	 * Forgets any cached verification for an account, such as when its PIN is
+	 * changed.
+	 *
+	 * @param accountNumber: the account to forget.
+	 */
+	public void invalidate(int accountNumber) {
+		int slot = slotFor(accountNumber);
+		Entry entry = slots.get(slot);
+		if (entry != null && entry.accountNumber == accountNumber) {
+			slots.compareAndSet(slot, entry, null);
+		}
+	}
+
+	private int slotFor(int accountNumber) {
+		return (int) mix(accountNumber) & slotMask;
+	}
+
+	private long fingerprint(int accountNumber, int pinNumber) {
+		return mix(mix(((long) accountNumber << 32 | (pinNumber & 0xffffffffL)) ^ fingerprintKey) + fingerprintKey);
+	}
+
+	/**
+	 * The SplitMix64 finalizer, which spreads every input bit over the whole
+	 * result.
+	 */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+
+	private static final class Entry {
+		private final int accountNumber;
+		private final long fingerprint;
+		private final long expiresAtNanos;
+
+		private Entry(int accountNumber, long fingerprint, long expiresAtNanos) {
+			this.accountNumber = accountNumber;
+			this.fingerprint = fingerprint;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+
+/**
+ * Renders transaction receipts into a reusable byte buffer and writes each
+ * receipt to its sink in a single call. The sink can be the terminal, a file or
+ * a receipt printer. The buffer, the date and time formatters and the builder
+ * used to format amounts are all created once, so rendering a receipt creates
+ * next to no garbage.
+ *
+ * A renderer is not thread-safe; each ATM session uses its own.
+ */
+public class ReceiptRenderer {
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy", Locale.US);
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("hh:mma", Locale.US);
+	private static final String LOCATION = "12 Mid Rivers Dr";
+	private static final String ATM_NUMBER = "4512";
+	private static final String THANK_YOU_MSG = "Thank you for using our ATM.\nFor questions, call 1-800-869-3557\nBusiness customers call 1-800-255-5935\n";
+
+	private final int width;
+	private final StringBuilder field;
+	private byte[] buffer;
+	private int length;
+
+	/**
+	 * @param width: the width of the receipt in characters.
+	 */
+	public ReceiptRenderer(int width) {
+		this.width = width;
+		this.field = new StringBuilder(width);
+		this.buffer = new byte[width * 32];
+		this.length = 0;
+	}
+
+	/**
+	 * Renders the receipt of a transaction made now and writes it to a sink,
+	 * leaving it to the caller to flush the sink.
+	 *
+	 * @param sink: the stream the receipt is written to.
+	 * @param cardNumber: the number of the card used for the transaction.
+	 * @param transactionNumber: the transaction ID, printed in full.
+	 * @param transaction: the approved transaction.
+	 */
+	public void writeReceipt(OutputStream sink, int cardNumber, long transactionNumber,
+			TransactionResult transaction) throws IOException {
+		render(LocalDateTime.now(), cardNumber, transactionNumber, transaction);
+		sink.write(buffer, 0, length);
+	}
+
+	/**
+	 * Renders the receipt of a transaction into the buffer, replacing the last
+	 * receipt rendered.
+	 *
+	 * @param time: the date and time of the transaction.
+	 * @param cardNumber: the number of the card used for the transaction.
+	 * @param transactionNumber: the transaction ID, printed in full.
+	 * @param transaction: the approved transaction.
+	 * @return the number of bytes rendered.
+	 */
+	public int render(TemporalAccessor time, int cardNumber, long transactionNumber, TransactionResult transaction) {
+		length = 0;
+		appendNewScreenGap();
+		appendSeparator('*');
+		appendCenteredText("ATM TRANSACTION RECEIPT");
+		appendSeparator('*');
+		appendNewLine();
+
+		field.setLength(0);
+		DATE_FORMAT.formatTo(time, field);
+		appendLine("Date: ", field);
+		field.setLength(0);
+		TIME_FORMAT.formatTo(time, field);
+		appendLine("Time: ", field);
+		appendLine("Location: ", LOCATION);
+		appendLine("ATM: ", ATM_NUMBER);
+		appendNewLine();
+
+		field.setLength(0);
+		appendLine("Customer Card: ", field.append(cardNumber));
+		field.setLength(0);
+		appendLine("Transaction #: ", field.append(transactionNumber));
+		field.setLength(0);
+		appendLine("Transaction: ", field.append("Checking ").append(transaction.getTransactionType()));
+		field.setLength(0);
+		appendLine("Amount: ", Money.appendCurrency(field, transaction.getAmount()));
+		field.setLength(0);
+		appendLine("From Account #: ", field.append(transaction.getAccountNumber()));
+		field.setLength(0);
+		appendLine("Available Balance: ", Money.appendCurrency(field, transaction.getAvailableBalance()));
+		field.setLength(0);
+		appendLine("Total Balance: ", Money.appendCurrency(field, transaction.getActualBalance()));
+		appendNewLine();
+		appendText(THANK_YOU_MSG);
+		appendNewLine();
+
+		appendSeparator('*');
+		appendNewLine();
+		appendCenteredText("Saint Charles Community Bank");
+		appendCenteredText("N.A. Member FDIC");
+		appendNewScreenGap();
+		return length;
+	}
+
+	/**
+	 * Gets the buffer holding the last receipt rendered, which is only valid up
+	 * to the length returned by render.
+	 *
+	 * @return the buffer.
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Appends a label followed by a value aligned to the right edge of the
+	 * receipt.
+	 */
+	private void appendLine(String label, CharSequence value) {
+		appendText(label);
+		appendBlanks(width - label.length() - value.length());
+		appendText(value);
+		appendNewLine();
+	}
+
+	private void appendCenteredText(String textToCenter) {
+		appendBlanks(width / 2 - textToCenter.length() / 2);
+		appendText(textToCenter);
+		appendNewLine();
+	}
+
+	private void appendSeparator(char separatorChar) {
+		ensureCapacity(width);
+		for (int i = 0; i < width; i++) {
+			buffer[length++] = (byte) separatorChar;
+		}
+		appendNewLine();
+	}
+
+	private void appendNewScreenGap() {
+		appendNewLine();
+		appendNewLine();
+		appendNewLine();
+	}
+
+	private void appendBlanks(int count) {
+		ensureCapacity(count);
+		for (int i = 0; i < count; i++) {
+			buffer[length++] = ' ';
+		}
+	}
+
+	/**
+	 * Appends text as ASCII, replacing any other character with a question mark.
+	 */
+	private void appendText(CharSequence text) {
+		ensureCapacity(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			buffer[length++] = c < 0x80 ? (byte) c : (byte) '?';
+		}
+	}
+
+	private void appendNewLine() {
+		ensureCapacity(1);
+		buffer[length++] = '\n';
+	}
+
+	private void ensureCapacity(int extraBytes) {
+		if (length + extraBytes > buffer.length) {
+			byte[] larger = new byte[Math.max(buffer.length * 2, length + extraBytes)];
+			System.arraycopy(buffer, 0, larger, 0, length);
+			buffer = larger;
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package main;
+
+/**
+ * Thrown to end an ATM session when its user quits.
+ */
+public class SessionEndedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public SessionEndedException() {
+		super("The ATM session has ended");
+	}
+}
@@ -0,0 +1,91 @@
+package main;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs out sessions that have been left waiting for input for longer than an
+ * idle timeout. One background thread sweeps every registered session once a
+ * sweep period. Checking a session that is not idle only reads the time of its
+ * last input, so a single thread keeps up with thousands of sessions, and a
+ * session is only locked when it is actually timed out.
+ */
+public class SessionIdleMonitor implements AutoCloseable {
+	private final long idleMillis;
+	private final long sweepMillis;
+	private final Set<AtmSession> sessions;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * @param idleMillis: how long a session may wait for input before it is
+	 *        logged out.
+	 * @param sweepMillis: how often the sessions are checked.
+	 */
+	public SessionIdleMonitor(long idleMillis, long sweepMillis) {
+		this.idleMillis = idleMillis;
+		this.sweepMillis = sweepMillis;
+		this.sessions = ConcurrentHashMap.newKeySet();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "session-idle-monitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts sweeping the registered sessions.
+	 */
+	public void start() {
+		scheduler.scheduleWithFixedDelay(this::logOutIdleSessions, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param session: the session to watch until it ends.
+	 */
+	public void register(AtmSession session) {
+		sessions.add(session);
+	}
+
+	/**
+	 * @param session: the session to stop watching.
+	 */
+	public void unregister(AtmSession session) {
+		sessions.remove(session);
+	}
+
+	/**
+	 * Logs out every session that has been idle for longer than the timeout and
+	 * forgets sessions that have ended.
+	 *
+	 * @return the number of sessions logged out.
+	 */
+	public int logOutIdleSessions() {
+		int timedOut = 0;
+		long now = System.currentTimeMillis();
+		for (AtmSession session : sessions) {
+			if (session.logOutIfIdle(now, idleMillis)) {
+				timedOut++;
+			} else if (session.isEnded()) {
+				sessions.remove(session);
+			}
+		}
+		return timedOut;
+	}
+
+	/**
+	 * Gets the number of sessions being watched.
+	 *
+	 * @return the session count.
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+}
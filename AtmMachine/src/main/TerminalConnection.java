@@ -0,0 +1,291 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * One terminal's connection to an AtmServer. The server's selector thread
+ * reads whatever input has arrived and splits it into lines, which are handed
+ * to the terminal's AtmSession one at a time and in order on a worker thread.
+ * What the session prints is queued and written back by the selector thread
+ * whenever the socket can take it. No thread ever blocks reading from or
+ * writing to a terminal, and a worker is only busy while a line is handled.
+ *
+ * A terminal that sends faster than its lines are handled, or that stops
+ * reading its output, is not read from while MAX_PENDING_LINES lines or
+ * MAX_PENDING_OUTPUT_BYTES bytes of output are queued. Reading resumes once
+ * the session or the socket catches up, so a single terminal cannot make the
+ * server hold more than a bounded amount of its input and output.
+ */
+public class TerminalConnection {
+	private static final int READ_BUFFER_SIZE = 1024;
+	private static final int MAX_LINE_LENGTH = 256;
+	private static final int MAX_PENDING_LINES = 32;
+	private static final int MAX_PENDING_OUTPUT_BYTES = 64 * 1024;
+
+	private final SocketChannel channel;
+	private final Executor inputExecutor;
+	private final Consumer<TerminalConnection> writeRequester;
+	private final ByteBuffer readBuffer;
+	private final ByteArrayOutputStream currentLine;
+	private final ArrayDeque<String> pendingLines;
+	private final ArrayDeque<ByteBuffer> pendingOutput;
+	private final TerminalOutput output;
+	private AtmSession session;
+	private SelectionKey key;
+	private int pendingOutputBytes;
+	private boolean isHandlingInput;
+	private boolean isClosing;
+	private volatile boolean isReadingPaused;
+
+	/**
+	 * @param channel: the terminal's socket, in non-blocking mode.
+	 * @param inputExecutor: the executor the session handles lines on.
+	 * @param writeRequester: called when output is waiting to be written or
+	 *        paused input can be read again, to ask the selector thread to call
+	 *        updateInterestOps.
+	 */
+	public TerminalConnection(SocketChannel channel, Executor inputExecutor,
+			Consumer<TerminalConnection> writeRequester) {
+		this.channel = channel;
+		this.inputExecutor = inputExecutor;
+		this.writeRequester = writeRequester;
+		this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		this.currentLine = new ByteArrayOutputStream(MAX_LINE_LENGTH);
+		this.pendingLines = new ArrayDeque<>();
+		this.pendingOutput = new ArrayDeque<>();
+		this.output = new TerminalOutput();
+	}
+
+	/**
+	 * Gets the stream the session prints to. Everything written is sent to the
+	 * terminal when the stream is flushed.
+	 *
+	 * @return the output stream.
+	 */
+	public OutputStream getOutput() {
+		return output;
+	}
+
+	/**
+	 * Starts handing input to a session.
+	 *
+	 * @param session: the session the terminal's input is handled by.
+	 * @param key: the socket's registration with the selector.
+	 */
+	public void open(AtmSession session, SelectionKey key) {
+		this.session = session;
+		this.key = key;
+	}
+
+	/**
+	 * Reads the input that has arrived and queues each complete line for the
+	 * session. Called on the selector thread when the socket is readable.
+	 */
+	public void onReadable() throws IOException {
+		int bytesRead = channel.read(readBuffer);
+		if (bytesRead < 0) {
+			disconnect();
+			return;
+		}
+		queueBufferedLines();
+	}
+
+	/**
+	 * Writes as much of the queued output as the socket takes, closing the
+	 * connection once everything has been written if the session has ended.
+	 * Called on the selector thread when the socket is writable.
+	 */
+	public synchronized void onWritable() throws IOException {
+		while (!pendingOutput.isEmpty()) {
+			ByteBuffer buffer = pendingOutput.peek();
+			channel.write(buffer);
+			if (buffer.hasRemaining()) {
+				return;
+			}
+			pendingOutput.poll();
+			pendingOutputBytes -= buffer.capacity();
+		}
+		if (isClosing) {
+			close();
+		} else if (key.isValid()) {
+			key.interestOps(isReadingPaused ? 0 : SelectionKey.OP_READ);
+			if (isReadingPaused) {
+				queueBufferedLines();
+			}
+		}
+	}
+
+	/**
+	 * Asks to be told when the socket is writable, and resumes reading if the
+	 * input was paused and there is room for it again. Called on the selector
+	 * thread after a write has been requested.
+	 */
+	public void updateInterestOps() {
+		if (!key.isValid()) {
+			return;
+		}
+		key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+		if (isReadingPaused) {
+			queueBufferedLines();
+		}
+	}
+
+	/**
+	 * Closes the connection at once, such as when the terminal has disconnected,
+	 * and ends the session on a worker thread.
+	 */
+	public void disconnect() {
+		close();
+		inputExecutor.execute(session::end);
+	}
+
+	private void close() {
+		key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			System.out.printf("* Error: Unable to close terminal connection: %s\n", e.getMessage());
+		}
+	}
+
+	/**
+	 * Queues the complete lines in the read buffer until the queues are full,
+	 * keeping the rest in the buffer, and reads from the socket again only while
+	 * there is room. Called on the selector thread.
+	 */
+	private void queueBufferedLines() {
+		readBuffer.flip();
+		while (readBuffer.hasRemaining() && !isInputFull()) {
+			byte b = readBuffer.get();
+			if (b == '\n') {
+				queueLine(currentLine.toString(StandardCharsets.UTF_8));
+				currentLine.reset();
+			} else if (b != '\r' && currentLine.size() < MAX_LINE_LENGTH) {
+				currentLine.write(b);
+			}
+		}
+		readBuffer.compact();
+		synchronized (this) {
+			isReadingPaused = isInputFull();
+		}
+		if (key.isValid()) {
+			int interestOps = key.interestOps();
+			key.interestOps(isReadingPaused ? interestOps & ~SelectionKey.OP_READ
+					: interestOps | SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Checks if as many lines or as much output is queued as a terminal may have.
+	 *
+	 * @return {true} if the terminal should not be read from; {false} otherwise.
+	 */
+	private synchronized boolean isInputFull() {
+		return pendingLines.size() >= MAX_PENDING_LINES || pendingOutputBytes >= MAX_PENDING_OUTPUT_BYTES;
+	}
+
+	/**
+	 * Queues a line for the session, starting a worker to handle it unless one is
+	 * already handling this terminal's earlier lines.
+	 */
+	private synchronized void queueLine(String line) {
+		if (isClosing) {
+			return;
+		}
+		pendingLines.add(line);
+		if (!isHandlingInput) {
+			isHandlingInput = true;
+			inputExecutor.execute(this::handlePendingLines);
+		}
+	}
+
+	/**
+	 * Hands the queued lines to the session until none are left. A session that
+	 * ends, or that fails while handling a line, has its connection closed once
+	 * its output has been written, so the terminal is never left waiting on a
+	 * worker that has gone.
+	 */
+	private void handlePendingLines() {
+		String line = nextPendingLine();
+		try {
+			while (line != null) {
+				if (!session.handleInput(line)) {
+					return;
+				}
+				if (isReadingPaused) {
+					writeRequester.accept(this);
+				}
+				line = nextPendingLine();
+			}
+		} catch (RuntimeException e) {
+			System.out.printf("* Error: Ending terminal session after a failure: %s\n", e);
+			session.end();
+		} finally {
+			if (line != null) {
+				closeAfterOutput();
+			}
+		}
+	}
+
+	private synchronized String nextPendingLine() {
+		String line = pendingLines.poll();
+		if (line == null) {
+			isHandlingInput = false;
+		}
+		return line;
+	}
+
+	private void closeAfterOutput() {
+		synchronized (this) {
+			isClosing = true;
+			isHandlingInput = false;
+			pendingLines.clear();
+		}
+		writeRequester.accept(this);
+	}
+
+	private void queueOutput(ByteBuffer buffer) {
+		synchronized (this) {
+			if (!channel.isOpen()) {
+				return;
+			}
+			pendingOutput.add(buffer);
+			pendingOutputBytes += buffer.capacity();
+		}
+		writeRequester.accept(this);
+	}
+
+	/**
+	 * Collects what the session prints and queues it for the terminal on flush.
+	 */
+	private final class TerminalOutput extends OutputStream {
+		private final ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+
+		@Override
+		public void write(int b) {
+			buffered.write(b);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			buffered.write(bytes, offset, length);
+		}
+
+		@Override
+		public void flush() {
+			if (buffered.size() > 0) {
+				queueOutput(ByteBuffer.wrap(buffered.toByteArray()));
+				buffered.reset();
+			}
+		}
+	}
+}
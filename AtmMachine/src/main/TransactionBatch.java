@@ -0,0 +1,103 @@
+package main;
+
+/**
+ * A group of transaction records from a batch file, held in parallel arrays
+ * and applied to the ledger in file order. The batch is reused from one group
+ * to the next, so reading a large file does not create an object per record.
+ */
+public class TransactionBatch {
+	private final int[] lineNumbers;
+	private final int[] accountNumbers;
+	private final byte[] transactionTypes;
+	private final long[] amounts;
+	private final TransactionStatus[] statuses;
+	private int size;
+
+	/**
+	 * @param capacity: the most records the batch can hold.
+	 */
+	public TransactionBatch(int capacity) {
+		this.lineNumbers = new int[capacity];
+		this.accountNumbers = new int[capacity];
+		this.transactionTypes = new byte[capacity];
+		this.amounts = new long[capacity];
+		this.statuses = new TransactionStatus[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a record to be applied.
+	 *
+	 * @param lineNumber: the line of the batch file the record came from.
+	 * @param accountNumber: the account to apply it to.
+	 * @param transactionType: TransactionJournal.DEPOSIT, WITHDRAWAL or
+	 *        HOLD_RELEASE.
+	 * @param amount: the amount in cents.
+	 */
+	public void add(int lineNumber, int accountNumber, byte transactionType, long amount) {
+		lineNumbers[size] = lineNumber;
+		accountNumbers[size] = accountNumber;
+		transactionTypes[size] = transactionType;
+		amounts[size] = amount;
+		statuses[size] = null;
+		size++;
+	}
+
+	/**
+	 * Adds a record that could not be read, so that it is reported in order with
+	 * the others without being applied.
+	 *
+	 * @param lineNumber: the line of the batch file the record came from.
+	 */
+	public void addInvalid(int lineNumber) {
+		add(lineNumber, 0, (byte) 0, 0);
+		statuses[size - 1] = TransactionStatus.INVALID_RECORD;
+	}
+
+	/**
+	 * Checks if the batch cannot hold another record.
+	 *
+	 * @return {true} if the batch is full; {false} otherwise.
+	 */
+	public boolean isFull() {
+		return size == lineNumbers.length;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getLineNumber(int index) {
+		return lineNumbers[index];
+	}
+
+	public int getAccountNumber(int index) {
+		return accountNumbers[index];
+	}
+
+	public byte getTransactionType(int index) {
+		return transactionTypes[index];
+	}
+
+	public long getAmount(int index) {
+		return amounts[index];
+	}
+
+	/**
+	 * Gets the outcome of a record.
+	 *
+	 * @param index: the record's position in the batch.
+	 * @return the outcome, or null if the record has not been applied yet.
+	 */
+	public TransactionStatus getStatus(int index) {
+		return statuses[index];
+	}
+
+	public void setStatus(int index, TransactionStatus status) {
+		statuses[index] = status;
+	}
+}
@@ -0,0 +1,160 @@
+package main;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Makes sure a transaction sent more than once under the same transaction ID,
+ * such as one retried after its reply was lost, is applied only once. The
+ * first request with an ID claims it and applies the transaction, and every
+ * later request with that ID gets the first one's result instead, waiting for
+ * it if the first is still being applied. Claims are made with a single
+ * putIfAbsent, so two concurrent requests with the same ID can never both
+ * apply it. Each claim remembers what the transaction was, and a later request
+ * with the same ID for a different account, type or amount is refused with
+ * TRANSACTION_ID_CONFLICT rather than handed someone else's result.
+ *
+ * The cache remembers a fixed number of the most recent IDs, forgetting the
+ * oldest as new ones arrive, so a retry must come within that many
+ * transactions of the original. A transaction refused with a
+ * TransactionNotAppliedException left nothing behind and is forgotten at once
+ * so that it can be retried. Any other failure may have come after the
+ * transaction took effect, so its claim is kept and a retry fails too rather
+ * than applying it a second time.
+ */
+public class TransactionDeduplicator {
+	/**
+	 * A transaction to apply at most once.
+	 */
+	public interface Transaction {
+		TransactionResult apply() throws IOException;
+	}
+
+	private final ConcurrentHashMap<Long, Claim> claims;
+	private final AtomicLongArray admittedIds;
+	private final AtomicLong admissionCount;
+	private final AtmMetrics metrics;
+
+	/**
+	 * @param capacity: the number of recent transaction IDs remembered.
+	 * @param metrics: the metrics duplicate requests are counted in.
+	 */
+	public TransactionDeduplicator(int capacity, AtmMetrics metrics) {
+		this.claims = new ConcurrentHashMap<>(capacity * 2);
+		this.admittedIds = new AtomicLongArray(capacity);
+		this.admissionCount = new AtomicLong();
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Applies a transaction unless one with the same ID has been applied or is
+	 * being applied.
+	 *
+	 * @param transactionId: the ID of the transaction.
+	 * @param transactionType: the kind of transaction, such as {"Deposit"}.
+	 * @param request: the accounts and amount of the transaction, which a
+	 *        duplicate must repeat exactly.
+	 * @param transaction: applies the transaction.
+	 * @return the result of the transaction, which is the first request's result
+	 *         for a duplicate, or TRANSACTION_ID_CONFLICT if the ID was already
+	 *         used for a different transaction.
+	 */
+	public TransactionResult applyOnce(long transactionId, String transactionType, String request,
+			Transaction transaction) throws IOException {
+		String fingerprint = transactionType + ' ' + request;
+		while (true) {
+			Claim claim = new Claim(fingerprint);
+			Claim earlierClaim = claims.putIfAbsent(transactionId, claim);
+			if (earlierClaim == null) {
+				forgetOldestIfFull(transactionId);
+				return applyClaimed(transactionId, claim, transaction);
+			}
+			if (!earlierClaim.fingerprint.equals(fingerprint)) {
+				metrics.recordEvent(AtmMetrics.Event.TRANSACTION_ID_CONFLICT);
+				return TransactionResult.withoutAccount(TransactionStatus.TRANSACTION_ID_CONFLICT, transactionType);
+			}
+			TransactionResult earlierResult = awaitResult(earlierClaim.result);
+			if (earlierResult != null) {
+				metrics.recordEvent(AtmMetrics.Event.DUPLICATE_TRANSACTION);
+				return earlierResult;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of transaction IDs remembered.
+	 *
+	 * @return the ID count.
+	 */
+	public int size() {
+		return claims.size();
+	}
+
+	private TransactionResult applyClaimed(long transactionId, Claim claim, Transaction transaction)
+			throws IOException {
+		try {
+			TransactionResult result = transaction.apply();
+			claim.result.complete(result);
+			return result;
+		} catch (TransactionNotAppliedException e) {
+			claims.remove(transactionId, claim);
+			claim.result.complete(null);
+			throw e;
+		} catch (IOException | RuntimeException e) {
+			claim.result.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for an earlier request with the same ID to finish.
+	 *
+	 * @return its result, or null if it was not applied and should be applied
+	 *         again.
+	 * @throws IOException if it failed in a way that may have left it applied.
+	 */
+	private static TransactionResult awaitResult(CompletableFuture<TransactionResult> earlierClaim)
+			throws IOException {
+		try {
+			return earlierClaim.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a duplicate transaction");
+		} catch (ExecutionException e) {
+			throw new IOException("An earlier request with the same transaction ID failed and may have been applied",
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Records an admitted ID in a ring of the most recent ones, forgetting the ID
+	 * it replaces once the ring has filled.
+	 */
+	private void forgetOldestIfFull(long transactionId) {
+		long admission = admissionCount.getAndIncrement();
+		int slot = (int) (admission % admittedIds.length());
+		long forgottenId = admittedIds.getAndSet(slot, transactionId);
+		if (admission >= admittedIds.length()) {
+			claims.remove(forgottenId);
+		}
+	}
+
+	/**
+	 * A transaction ID's claim: what the transaction was, and its result once
+	 * applied.
+	 */
+	private static final class Claim {
+		private final String fingerprint;
+		private final CompletableFuture<TransactionResult> result;
+
+		private Claim(String fingerprint) {
+			this.fingerprint = fingerprint;
+			this.result = new CompletableFuture<>();
+		}
+	}
+}
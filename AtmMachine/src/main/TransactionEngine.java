@@ -0,0 +1,441 @@
+package main;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The headless ATM transaction API. Every operation takes the caller's
+ * TransactionSession and returns a TransactionResult instead of printing or
+ * reading anything, so the engine can be driven by the console, by networked
+ * terminals or by scripted clients alike. One engine is shared by every session
+ * and is safe to call from many threads at once.
+ *
+ * Every deposit, withdrawal and transfer carries a transaction ID, and one
+ * sent again with an ID the engine has recently seen returns the first
+ * result instead of being applied twice. An ID seen before with a different
+ * account, type or amount is refused with TRANSACTION_ID_CONFLICT.
+ *
+ * Finding accounts, checking PINs and applying transactions go through
+ * protected hooks that use the local AccountLedger, so a subclass can keep the
+ * accounts elsewhere while sharing the session handling and metrics.
+ */
+public class TransactionEngine {
+	public static final String LOGIN = "Login";
+	public static final String DEPOSIT = "Deposit";
+	public static final String WITHDRAWAL = "Withdrawal";
+	public static final String TRANSFER = "Transfer";
+	public static final String BALANCE = "Balance";
+	public static final String LOGOUT = "Logout";
+
+	private static final int MAX_FAILED_PIN_ATTEMPTS = 3;
+	private static final int PIN_CACHE_CAPACITY = 1 << 16;
+	private static final long PIN_CACHE_TIME_TO_LIVE_NANOS = TimeUnit.MINUTES.toNanos(5);
+	private static final int DEDUPLICATION_CAPACITY = 1 << 16;
+
+	private final AccountLedger ledger;
+	private final AtmMetrics metrics;
+	private final PinVerificationCache pinVerificationCache;
+	private final TransactionDeduplicator deduplicator;
+
+	public TransactionEngine(AccountLedger ledger) {
+		this(ledger, ledger.getMetrics());
+	}
+
+	/**
+	 * @param ledger: the ledger holding the accounts, or null for a subclass that
+	 *        overrides every hook that uses it.
+	 * @param metrics: the metrics operations are recorded in.
+	 */
+	protected TransactionEngine(AccountLedger ledger, AtmMetrics metrics) {
+		this.ledger = ledger;
+		this.metrics = metrics;
+		this.pinVerificationCache = new PinVerificationCache(PIN_CACHE_CAPACITY, PIN_CACHE_TIME_TO_LIVE_NANOS);
+		this.deduplicator = new TransactionDeduplicator(DEDUPLICATION_CAPACITY, metrics);
+	}
+
+	/**
+	 * Checks if an account number exists in the system.
+	 *
+	 * @param accountNumber: the account number to check.
+	 * @return {true} if the account exists; {false} otherwise.
+	 */
+	public boolean accountExists(int accountNumber) {
+		return findAccount(accountNumber) != null;
+	}
+
+	/**
+	 * Checks if a card number belongs to an account in the system.
+	 *
+	 * @param cardNumber: the card number to check.
+	 * @return {true} if the card exists; {false} otherwise.
+	 */
+	public boolean cardExists(int cardNumber) {
+		return findAccountByCardNumber(cardNumber) != null;
+	}
+
+	/**
+	 * Logs a session into an account, checking the PIN against the account's PIN
+	 * hash unless the same PIN was verified recently. After too many consecutive
+	 * incorrect PINs for the same account the session is logged out and the
+	 * attempt count starts over.
+	 *
+	 * @param session:       the session to log in.
+	 * @param accountNumber: the account number to log into.
+	 * @param pinNumber:     the PIN entered for the account.
+	 * @return APPROVED, ACCOUNT_NOT_FOUND, INCORRECT_PIN or TOO_MANY_ATTEMPTS.
+	 */
+	public TransactionResult login(TransactionSession session, int accountNumber, int pinNumber) {
+		return logInAndRecord(session, findAccount(accountNumber), pinNumber, System.nanoTime());
+	}
+
+	/**
+	 * Logs a session into the account a card belongs to, just as login does for
+	 * an account number.
+	 *
+	 * @param session:    the session to log in.
+	 * @param cardNumber: the card number of the account to log into.
+	 * @param pinNumber:  the PIN entered for the card.
+	 * @return APPROVED, ACCOUNT_NOT_FOUND, INCORRECT_PIN or TOO_MANY_ATTEMPTS.
+	 */
+	public TransactionResult loginWithCard(TransactionSession session, int cardNumber, int pinNumber) {
+		return logInAndRecord(session, findAccountByCardNumber(cardNumber), pinNumber, System.nanoTime());
+	}
+
+	private TransactionResult logInAndRecord(TransactionSession session, BankAccount account, int pinNumber,
+			long startTime) {
+		TransactionResult result = checkPinAndLogIn(session, account, pinNumber);
+		metrics.recordSince(AtmMetrics.Operation.LOGIN, startTime);
+		if (result.getStatus() == TransactionStatus.INCORRECT_PIN) {
+			metrics.recordEvent(AtmMetrics.Event.FAILED_PIN_ATTEMPT);
+		} else if (result.getStatus() == TransactionStatus.TOO_MANY_ATTEMPTS) {
+			metrics.recordEvent(AtmMetrics.Event.FAILED_PIN_ATTEMPT);
+			metrics.recordEvent(AtmMetrics.Event.TOO_MANY_PIN_ATTEMPTS);
+		}
+		return result;
+	}
+
+	/**
+	 * Deposits an amount into the session's account under a new transaction ID.
+	 *
+	 * @param session: the logged in session.
+	 * @param amount:  the amount in cents.
+	 * @return APPROVED, NOT_LOGGED_IN or INVALID_AMOUNT.
+	 */
+	public TransactionResult deposit(TransactionSession session, long amount) throws IOException {
+		return deposit(session, amount, TransactionIdGenerator.getShared().nextId());
+	}
+
+	/**
+	 * Deposits an amount into the session's account unless a deposit with the
+	 * same transaction ID was made recently, in which case that deposit's result
+	 * is returned.
+	 *
+	 * @param session:       the logged in session.
+	 * @param amount:        the amount in cents.
+	 * @param transactionId: the ID of the deposit, the same for every retry.
+	 * @return APPROVED, NOT_LOGGED_IN, INVALID_AMOUNT, PARTITION_UNAVAILABLE or
+	 *         TRANSACTION_ID_CONFLICT.
+	 */
+	public TransactionResult deposit(TransactionSession session, long amount, long transactionId)
+			throws IOException {
+		TransactionResult rejection = validate(session, amount, DEPOSIT);
+		if (rejection != null) {
+			return rejection;
+		}
+		long startTime = System.nanoTime();
+		BankAccount account = session.getCurrentAccount();
+		TransactionResult result = deduplicator.applyOnce(transactionId, DEPOSIT,
+				account.getAccountNumber() + " " + amount, () -> applyDeposit(account, amount, transactionId));
+		metrics.recordSince(AtmMetrics.Operation.DEPOSIT, startTime);
+		return result;
+	}
+
+	/**
+	 * Withdraws an amount from the session's account under a new transaction ID.
+	 *
+	 * @param session: the logged in session.
+	 * @param amount:  the amount in cents.
+	 * @return APPROVED, NOT_LOGGED_IN, INVALID_AMOUNT, INSUFFICIENT_FUNDS,
+	 *         DAILY_LIMIT_EXCEEDED or WITHDRAWAL_RATE_EXCEEDED.
+	 */
+	public TransactionResult withdraw(TransactionSession session, long amount) throws IOException {
+		return withdraw(session, amount, TransactionIdGenerator.getShared().nextId());
+	}
+
+	/**
+	 * Withdraws an amount from the session's account unless a withdrawal with the
+	 * same transaction ID was made recently, in which case that withdrawal's
+	 * result is returned.
+	 *
+	 * @param session:       the logged in session.
+	 * @param amount:        the amount in cents.
+	 * @param transactionId: the ID of the withdrawal, the same for every retry.
+	 * @return APPROVED, NOT_LOGGED_IN, INVALID_AMOUNT, INSUFFICIENT_FUNDS,
+	 *         DAILY_LIMIT_EXCEEDED, WITHDRAWAL_RATE_EXCEEDED, PARTITION_UNAVAILABLE
+	 *         or TRANSACTION_ID_CONFLICT.
+	 */
+	public TransactionResult withdraw(TransactionSession session, long amount, long transactionId)
+			throws IOException {
+		TransactionResult rejection = validate(session, amount, WITHDRAWAL);
+		if (rejection != null) {
+			return rejection;
+		}
+		long startTime = System.nanoTime();
+		BankAccount account = session.getCurrentAccount();
+		TransactionResult result = deduplicator.applyOnce(transactionId, WITHDRAWAL,
+				account.getAccountNumber() + " " + amount, () -> applyWithdrawal(account, amount, transactionId));
+		metrics.recordSince(AtmMetrics.Operation.WITHDRAWAL, startTime);
+		if (result.getStatus() == TransactionStatus.INSUFFICIENT_FUNDS) {
+			metrics.recordEvent(AtmMetrics.Event.INSUFFICIENT_FUNDS);
+		} else if (result.getStatus() == TransactionStatus.DAILY_LIMIT_EXCEEDED) {
+			metrics.recordEvent(AtmMetrics.Event.DAILY_LIMIT_EXCEEDED);
+		} else if (result.getStatus() == TransactionStatus.WITHDRAWAL_RATE_EXCEEDED) {
+			metrics.recordEvent(AtmMetrics.Event.WITHDRAWAL_RATE_EXCEEDED);
+		}
+		return result;
+	}
+
+	/**
+	 * Transfers an amount from the session's account to another account under a
+	 * new transaction ID.
+	 *
+	 * @param session:         the logged in session.
+	 * @param toAccountNumber: the account number of the account to transfer to.
+	 * @param amount:          the amount in cents.
+	 * @return APPROVED, NOT_LOGGED_IN, INVALID_AMOUNT, ACCOUNT_NOT_FOUND,
+	 *         SAME_ACCOUNT or INSUFFICIENT_FUNDS.
+	 */
+	public TransactionResult transfer(TransactionSession session, int toAccountNumber, long amount)
+			throws IOException {
+		return transfer(session, toAccountNumber, amount, TransactionIdGenerator.getShared().nextId());
+	}
+
+	/**
+	 * Transfers an amount from the session's account to another account unless a
+	 * transfer with the same transaction ID was made recently, in which case that
+	 * transfer's result is returned.
+	 *
+	 * @param session:         the logged in session.
+	 * @param toAccountNumber: the account number of the account to transfer to.
+	 * @param amount:          the amount in cents.
+	 * @param transactionId:   the ID of the transfer, the same for every retry.
+	 * @return APPROVED, NOT_LOGGED_IN, INVALID_AMOUNT, ACCOUNT_NOT_FOUND,
+	 *         SAME_ACCOUNT, INSUFFICIENT_FUNDS, CROSS_PARTITION_TRANSFER,
+	 *         PARTITION_UNAVAILABLE or TRANSACTION_ID_CONFLICT.
+	 */
+	public TransactionResult transfer(TransactionSession session, int toAccountNumber, long amount,
+			long transactionId) throws IOException {
+		TransactionResult rejection = validate(session, amount, TRANSFER);
+		if (rejection != null) {
+			return rejection;
+		}
+		BankAccount toAccount = findAccount(toAccountNumber);
+		if (toAccount == null) {
+			return TransactionResult.withoutAccount(TransactionStatus.ACCOUNT_NOT_FOUND, TRANSFER);
+		}
+		if (toAccountNumber == session.getCurrentAccount().getAccountNumber()) {
+			return TransactionResult.withoutAccount(TransactionStatus.SAME_ACCOUNT, TRANSFER);
+		}
+		long startTime = System.nanoTime();
+		BankAccount fromAccount = session.getCurrentAccount();
+		TransactionResult result = deduplicator.applyOnce(transactionId, TRANSFER,
+				fromAccount.getAccountNumber() + " " + toAccountNumber + " " + amount,
+				() -> applyTransfer(fromAccount, toAccount, amount, transactionId));
+		metrics.recordSince(AtmMetrics.Operation.TRANSFER, startTime);
+		if (result.getStatus() == TransactionStatus.INSUFFICIENT_FUNDS) {
+			metrics.recordEvent(AtmMetrics.Event.INSUFFICIENT_FUNDS);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the balances of the session's account.
+	 *
+	 * @param session: the logged in session.
+	 * @return APPROVED with the balances, or NOT_LOGGED_IN.
+	 */
+	public TransactionResult balance(TransactionSession session) {
+		if (!session.isLoggedIn()) {
+			return TransactionResult.withoutAccount(TransactionStatus.NOT_LOGGED_IN, BALANCE);
+		}
+		long startTime = System.nanoTime();
+		TransactionResult result = readBalances(session.getCurrentAccount(), BALANCE);
+		metrics.recordSince(AtmMetrics.Operation.BALANCE, startTime);
+		return result;
+	}
+
+	/**
+	 * Gets the most recent transactions on the session's account, newest first.
+	 *
+	 * @param session: the logged in session.
+	 * @param count:   the most transactions to return.
+	 * @return the transactions, or an empty list if the session is not logged in
+	 *         or no history is kept.
+	 */
+	public List<HistoryEntry> miniStatement(TransactionSession session, int count) {
+		TransactionHistory history = getHistory();
+		if (!session.isLoggedIn() || history == null) {
+			return Collections.emptyList();
+		}
+		return history.getLatestEntries(session.getCurrentAccount().getAccountNumber(), count);
+	}
+
+	/**
+	 * Gets a page of the transactions on the session's account made within a time
+	 * range, newest first.
+	 *
+	 * @param session:    the logged in session.
+	 * @param fromMillis: the start of the range, inclusive.
+	 * @param toMillis:   the end of the range, exclusive.
+	 * @param cursor:     the entry id of the oldest transaction of the previous
+	 *                    page, or TransactionHistory.NO_CURSOR for the first page.
+	 * @param count:      the most transactions to return.
+	 * @return the transactions, or an empty list if the session is not logged in
+	 *         or no history is kept, or if the cursor is not one of the account's
+	 *         transactions.
+	 */
+	public List<HistoryEntry> statementBetween(TransactionSession session, long fromMillis, long toMillis,
+			int cursor, int count) {
+		TransactionHistory history = getHistory();
+		if (!session.isLoggedIn() || history == null) {
+			return Collections.emptyList();
+		}
+		return history.getEntriesBetween(session.getCurrentAccount().getAccountNumber(), fromMillis, toMillis,
+				cursor, count);
+	}
+
+	/**
+	 * Logs a session out of its account.
+	 *
+	 * @param session: the session to log out.
+	 * @return APPROVED.
+	 */
+	public TransactionResult logout(TransactionSession session) {
+		session.logOut();
+		return TransactionResult.withoutAccount(TransactionStatus.APPROVED, LOGOUT);
+	}
+
+	/**
+	 * Compacts the accounts into a new snapshot and closes the ledger, such as
+	 * when the ATM shuts down.
+	 */
+	public void saveAndClose() throws IOException {
+		try {
+			ledger.compact();
+		} finally {
+			ledger.close();
+		}
+	}
+
+	/**
+	 * @return the ledger holding the accounts, or null if a subclass keeps them
+	 *         elsewhere.
+	 */
+	public AccountLedger getLedger() {
+		return ledger;
+	}
+
+	public AtmMetrics getMetrics() {
+		return metrics;
+	}
+
+	private TransactionResult checkPinAndLogIn(TransactionSession session, BankAccount account, int pinNumber) {
+		if (account == null) {
+			return TransactionResult.withoutAccount(TransactionStatus.ACCOUNT_NOT_FOUND, LOGIN);
+		}
+		if (!verifyPin(account, pinNumber)) {
+			if (session.recordFailedPinAttempt(account) >= MAX_FAILED_PIN_ATTEMPTS) {
+				session.logOut();
+				return TransactionResult.withoutAccount(TransactionStatus.TOO_MANY_ATTEMPTS, LOGIN);
+			}
+			return TransactionResult.withoutAccount(TransactionStatus.INCORRECT_PIN, LOGIN);
+		}
+		session.logIn(account);
+		return readBalances(account, LOGIN);
+	}
+
+	/**
+	 * Finds an account by its account number.
+	 *
+	 * @param accountNumber: the account number to look up.
+	 * @return the account if found; null otherwise.
+	 */
+	protected BankAccount findAccount(int accountNumber) {
+		return ledger.getAccount(accountNumber);
+	}
+
+	/**
+	 * Finds an account by its card number.
+	 *
+	 * @param cardNumber: the card number to look up.
+	 * @return the account if found; null otherwise.
+	 */
+	protected BankAccount findAccountByCardNumber(int cardNumber) {
+		return ledger.getAccountByCardNumber(cardNumber);
+	}
+
+	/**
+	 * Checks a PIN against an account's PIN hash unless the same PIN was verified
+	 * recently.
+	 *
+	 * @param account:   an account returned by findAccount.
+	 * @param pinNumber: the PIN entered.
+	 * @return {true} if the PIN is correct; {false} otherwise.
+	 */
+	protected boolean verifyPin(BankAccount account, int pinNumber) {
+		return pinVerificationCache.verify(account, pinNumber);
+	}
+
+	/**
+	 * Applies a deposit. Called at most once for each transaction ID that is
+	 * still remembered, so a retry with the same ID is never applied twice.
+	 *
+	 * @param transactionId: the ID of the deposit, for hooks that pass it on.
+	 */
+	protected TransactionResult applyDeposit(BankAccount account, long amount, long transactionId)
+			throws IOException {
+		return ledger.deposit(account, amount);
+	}
+
+	protected TransactionResult applyWithdrawal(BankAccount account, long amount, long transactionId)
+			throws IOException {
+		return ledger.withdraw(account, amount);
+	}
+
+	protected TransactionResult applyTransfer(BankAccount fromAccount, BankAccount toAccount, long amount,
+			long transactionId) throws IOException {
+		return ledger.transfer(fromAccount, toAccount, amount);
+	}
+
+	/**
+	 * Reads both of an account's balances together.
+	 *
+	 * @param account:         the account to read.
+	 * @param transactionType: the kind of request the balances are read for.
+	 * @return APPROVED with the balances.
+	 */
+	protected TransactionResult readBalances(BankAccount account, String transactionType) {
+		synchronized (account.getLock()) {
+			return TransactionResult.forAccount(TransactionStatus.APPROVED, transactionType, account, 0);
+		}
+	}
+
+	/**
+	 * @return the history statements are read from, or null if none is kept.
+	 */
+	protected TransactionHistory getHistory() {
+		return ledger.getHistory();
+	}
+
+	private static TransactionResult validate(TransactionSession session, long amount, String transactionType) {
+		if (!session.isLoggedIn()) {
+			return TransactionResult.withoutAccount(TransactionStatus.NOT_LOGGED_IN, transactionType);
+		}
+		if (amount <= 0) {
+			return TransactionResult.withoutAccount(TransactionStatus.INVALID_AMOUNT, transactionType);
+		}
+		return null;
+	}
+}
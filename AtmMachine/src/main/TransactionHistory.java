@@ -0,0 +1,289 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An append-only log of every deposit and withdrawal, kept in a memory-mapped
+ * file so that the history lives in the page cache rather than on the heap.
+ * The file holds a short header followed by fixed-size entries:
+ *
+ * <pre>
+ * long  timestamp in milliseconds since the epoch, 0 for an unused entry
+ * int   account number
+ * byte  transaction type, then 3 bytes of padding
+ * long  amount in cents
+ * long  actual balance after the transaction in cents
+ * long  available balance after the transaction in cents
+ * int   id of the account's previous entry, or -1 for its first
+ * int   padding
+ * </pre>
+ *
+ * Each entry points back at the previous entry for the same account, and an
+ * index maps every account number to its newest entry, so reading an account's
+ * recent history touches only that account's entries however long the whole
+ * log grows. The file is mapped in fixed-size segments and grows a segment at a
+ * time.
+ *
+ * The timestamp of an entry is written last, so an entry torn by a crash in the
+ * middle of an append reads as unused and is overwritten by the next append.
+ */
+public class TransactionHistory implements AutoCloseable {
+	public static final int NO_CURSOR = -1;
+
+	private static final int MAGIC = 0x41544d48;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 48;
+	private static final int ENTRIES_PER_SEGMENT = 1 << 20;
+	private static final long SEGMENT_SIZE = (long) ENTRY_SIZE * ENTRIES_PER_SEGMENT;
+	private static final int NO_ENTRY = -1;
+
+	private static final int TIMESTAMP_OFFSET = 0;
+	private static final int ACCOUNT_OFFSET = 8;
+	private static final int TYPE_OFFSET = 12;
+	private static final int AMOUNT_OFFSET = 16;
+	private static final int ACTUAL_BALANCE_OFFSET = 24;
+	private static final int AVAILABLE_BALANCE_OFFSET = 32;
+	private static final int PREVIOUS_ENTRY_OFFSET = 40;
+
+	private final FileChannel channel;
+	private final List<MappedByteBuffer> segments;
+	private final IntIndexMap newestEntries;
+	private final ReentrantReadWriteLock lock;
+	private int entryCount;
+
+	public TransactionHistory(Path historyFile) throws IOException {
+		this.channel = FileChannel.open(historyFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.segments = new ArrayList<>();
+		this.newestEntries = new IntIndexMap();
+		this.lock = new ReentrantReadWriteLock();
+		readOrWriteHeader();
+		indexExistingEntries();
+	}
+
+	/**
+	 * Appends a transaction that has just been applied to an account. The caller
+	 * must hold the account's lock so that the account's entries are appended in
+	 * the order its transactions were applied.
+	 *
+	 * @param transactionType: TransactionJournal.DEPOSIT, WITHDRAWAL,
+	 *        TRANSFER_OUT or TRANSFER_IN.
+	 * @param account: the account after the transaction was applied.
+	 * @param amount: the amount of the transaction in cents.
+	 */
+	public void append(byte transactionType, BankAccount account, long amount) throws IOException {
+		long timestampMillis = System.currentTimeMillis();
+		int accountNumber = account.getAccountNumber();
+		lock.writeLock().lock();
+		try {
+			if (entryCount == Integer.MAX_VALUE - 1) {
+				throw new IOException("The transaction history is full");
+			}
+			int entryId = entryCount;
+			ByteBuffer segment = segmentFor(entryId);
+			int offset = offsetOf(entryId);
+			segment.putInt(offset + ACCOUNT_OFFSET, accountNumber);
+			segment.put(offset + TYPE_OFFSET, transactionType);
+			segment.putLong(offset + AMOUNT_OFFSET, amount);
+			segment.putLong(offset + ACTUAL_BALANCE_OFFSET, account.getActualBalance());
+			segment.putLong(offset + AVAILABLE_BALANCE_OFFSET, account.getAvailableBalance());
+			segment.putInt(offset + PREVIOUS_ENTRY_OFFSET, newestEntries.get(accountNumber));
+			segment.putLong(offset + TIMESTAMP_OFFSET, timestampMillis);
+			newestEntries.put(accountNumber, entryId);
+			entryCount++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the newest entries of an account, newest first, as for a
+	 * mini-statement.
+	 *
+	 * @param accountNumber: the account.
+	 * @param count: the most entries to return.
+	 * @return the entries.
+	 */
+	public List<HistoryEntry> getLatestEntries(int accountNumber, int count) {
+		return getEntriesBefore(accountNumber, NO_CURSOR, count);
+	}
+
+	/**
+	 * Gets a page of an account's entries that are older than a cursor, newest
+	 * first.
+	 *
+	 * @param accountNumber: the account.
+	 * @param cursor: the id of the oldest entry of the previous page, or NO_CURSOR
+	 *        to start from the newest entry.
+	 * @param count: the most entries to return.
+	 * @return the entries.
+	 */
+	public List<HistoryEntry> getEntriesBefore(int accountNumber, int cursor, int count) {
+		return getEntriesBetween(accountNumber, Long.MIN_VALUE, Long.MAX_VALUE, cursor, count);
+	}
+
+	/**
+	 * Gets a page of an account's entries made within a time range, newest first.
+	 * Only the account's entries from the newest one back to the start of the
+	 * range are read.
+	 *
+	 * @param accountNumber: the account.
+	 * @param fromMillis: the start of the range, inclusive.
+	 * @param toMillis: the end of the range, exclusive.
+	 * @param cursor: the id of the oldest entry of the previous page, or NO_CURSOR
+	 *        to start from the newest entry.
+	 * @param count: the most entries to return.
+	 * @return the entries, or none if the cursor is not one of the account's
+	 *         entries.
+	 */
+	public List<HistoryEntry> getEntriesBetween(int accountNumber, long fromMillis, long toMillis, int cursor,
+			int count) {
+		List<HistoryEntry> entries = new ArrayList<>(Math.min(Math.max(count, 0), 64));
+		lock.readLock().lock();
+		try {
+			int entryId = cursor == NO_CURSOR ? newestEntries.get(accountNumber) : previousEntryOf(accountNumber, cursor);
+			while (entryId != NO_ENTRY && entries.size() < count) {
+				ByteBuffer segment = segments.get(entryId / ENTRIES_PER_SEGMENT);
+				int offset = offsetOf(entryId);
+				long timestampMillis = segment.getLong(offset + TIMESTAMP_OFFSET);
+				if (timestampMillis < fromMillis) {
+					break;
+				}
+				if (timestampMillis < toMillis) {
+					entries.add(readEntry(segment, offset, entryId));
+				}
+				entryId = segment.getInt(offset + PREVIOUS_ENTRY_OFFSET);
+			}
+			return entries;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of entries in the whole history.
+	 *
+	 * @return the entry count.
+	 */
+	public int getEntryCount() {
+		lock.readLock().lock();
+		try {
+			return entryCount;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Forces every entry appended so far to disk.
+	 */
+	public void force() {
+		lock.readLock().lock();
+		try {
+			for (MappedByteBuffer segment : segments) {
+				segment.force();
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			for (MappedByteBuffer segment : segments) {
+				segment.force();
+			}
+			segments.clear();
+			channel.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void readOrWriteHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		if (channel.size() < HEADER_SIZE) {
+			header.putInt(MAGIC).putInt(VERSION).putInt(ENTRY_SIZE).putInt(0).flip();
+			channel.write(header, 0);
+			return;
+		}
+		channel.read(header, 0);
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != ENTRY_SIZE) {
+			throw new IOException("Unrecognized transaction history format");
+		}
+	}
+
+	/**
+	 * Maps every segment already in the file and rebuilds the index of each
+	 * account's newest entry by reading the entries in order up to the first unused
+	 * one.
+	 */
+	private void indexExistingEntries() throws IOException {
+		long segmentCount = (channel.size() - HEADER_SIZE + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+		for (int i = 0; i < segmentCount; i++) {
+			mapSegment(i);
+		}
+		int entryId = 0;
+		while (entryId / ENTRIES_PER_SEGMENT < segments.size()) {
+			ByteBuffer segment = segments.get(entryId / ENTRIES_PER_SEGMENT);
+			int offset = offsetOf(entryId);
+			if (segment.getLong(offset + TIMESTAMP_OFFSET) == 0) {
+				break;
+			}
+			newestEntries.put(segment.getInt(offset + ACCOUNT_OFFSET), entryId);
+			entryId++;
+		}
+		entryCount = entryId;
+	}
+
+	private ByteBuffer segmentFor(int entryId) throws IOException {
+		int segmentIndex = entryId / ENTRIES_PER_SEGMENT;
+		while (segments.size() <= segmentIndex) {
+			mapSegment(segments.size());
+		}
+		return segments.get(segmentIndex);
+	}
+
+	private void mapSegment(int segmentIndex) throws IOException {
+		long position = HEADER_SIZE + segmentIndex * SEGMENT_SIZE;
+		segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE));
+	}
+
+	/**
+	 * Gets the entry before a cursor, refusing a cursor that is not one of the
+	 * account's own entries so that paging cannot walk another account's history.
+	 */
+	private int previousEntryOf(int accountNumber, int entryId) {
+		if (entryId < 0 || entryId >= entryCount) {
+			return NO_ENTRY;
+		}
+		ByteBuffer segment = segments.get(entryId / ENTRIES_PER_SEGMENT);
+		int offset = offsetOf(entryId);
+		if (segment.getInt(offset + ACCOUNT_OFFSET) != accountNumber) {
+			return NO_ENTRY;
+		}
+		return segment.getInt(offset + PREVIOUS_ENTRY_OFFSET);
+	}
+
+	private static int offsetOf(int entryId) {
+		return (entryId % ENTRIES_PER_SEGMENT) * ENTRY_SIZE;
+	}
+
+	private static HistoryEntry readEntry(ByteBuffer segment, int offset, int entryId) {
+		return new HistoryEntry(entryId, segment.getLong(offset + TIMESTAMP_OFFSET),
+				segment.getInt(offset + ACCOUNT_OFFSET), segment.get(offset + TYPE_OFFSET),
+				segment.getLong(offset + AMOUNT_OFFSET), segment.getLong(offset + ACTUAL_BALANCE_OFFSET),
+				segment.getLong(offset + AVAILABLE_BALANCE_OFFSET));
+	}
+}
@@ -0,0 +1,159 @@
+package main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks paging through statements. Two accounts take turns making deposits, a
+ * few milliseconds apart so that they can be told apart by time, and then
+ * each account's history is read a page at a time from the cursor of the page
+ * before. Every page must hold only the account's own entries, newest first,
+ * and together the pages must hold each of its deposits exactly once. A page
+ * asked for with a cursor taken from the other account's history must come
+ * back empty, and a page of a time range must hold exactly the entries made
+ * within it. Exits with status 1 if any check fails.
+ *
+ * <pre>
+ * java main.TransactionHistoryCheck [deposits per account] [page size]
+ * </pre>
+ */
+public class TransactionHistoryCheck {
+	private static final int FIRST_ACCOUNT_NUMBER = 1_000_001;
+	private static final int SECOND_ACCOUNT_NUMBER = 1_000_002;
+	private static final int PIN_NUMBER = 1234;
+	private static final long MILLIS_BETWEEN_DEPOSITS = 2;
+
+	public static void main(String[] args) throws Exception {
+		int depositsPerAccount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int pageSize = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+
+		Path directory = Files.createTempDirectory("history-check");
+		List<String> accountRecords = List.of(
+				new BankAccount(FIRST_ACCOUNT_NUMBER, PinHash.create(PIN_NUMBER, 1000), 0, "First Account")
+						.toString(),
+				new BankAccount(SECOND_ACCOUNT_NUMBER, PinHash.create(PIN_NUMBER, 1000), 0, "Second Account")
+						.toString());
+		Files.write(directory.resolve("accounts.txt"), accountRecords);
+		AccountDataStore accountDataStore = new AccountDataStore(directory.resolve("accounts.snapshot").toString(),
+				directory.resolve("accounts.txt").toString(), directory.resolve("accounts.journal").toString());
+		TransactionHistory history = new TransactionHistory(directory.resolve("accounts.history"));
+		AccountLedger ledger = new AccountLedger(accountDataStore.load(new BankAccountList()), accountDataStore,
+				history);
+		TransactionEngine engine = new TransactionEngine(ledger);
+
+		TransactionSession firstSession = new TransactionSession();
+		TransactionSession secondSession = new TransactionSession();
+		engine.login(firstSession, FIRST_ACCOUNT_NUMBER, PIN_NUMBER);
+		engine.login(secondSession, SECOND_ACCOUNT_NUMBER, PIN_NUMBER);
+		for (int i = 1; i <= depositsPerAccount; i++) {
+			engine.deposit(firstSession, Money.fromDollars(i));
+			Thread.sleep(MILLIS_BETWEEN_DEPOSITS);
+			engine.deposit(secondSession, Money.fromDollars(i));
+			Thread.sleep(MILLIS_BETWEEN_DEPOSITS);
+		}
+
+		List<HistoryEntry> firstEntries = readAllPages(engine, firstSession, Long.MIN_VALUE, Long.MAX_VALUE,
+				pageSize);
+		List<HistoryEntry> secondEntries = readAllPages(engine, secondSession, Long.MIN_VALUE, Long.MAX_VALUE,
+				pageSize);
+		boolean passed = checkEntries(firstEntries, FIRST_ACCOUNT_NUMBER, depositsPerAccount);
+		passed &= checkEntries(secondEntries, SECOND_ACCOUNT_NUMBER, depositsPerAccount);
+		passed &= checkForeignCursors(engine, secondSession, firstEntries, pageSize);
+		passed &= checkTimeRange(engine, firstSession, firstEntries, pageSize);
+		ledger.close();
+
+		System.out.printf("%d accounts, %d deposits each, read %d entries at a time: %s\n", 2, depositsPerAccount,
+				pageSize, passed ? "PASSED" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static List<HistoryEntry> readAllPages(TransactionEngine engine, TransactionSession session,
+			long fromMillis, long toMillis, int pageSize) {
+		List<HistoryEntry> entries = new ArrayList<>();
+		int cursor = TransactionHistory.NO_CURSOR;
+		while (true) {
+			List<HistoryEntry> page = engine.statementBetween(session, fromMillis, toMillis, cursor, pageSize);
+			entries.addAll(page);
+			if (page.size() < pageSize) {
+				return entries;
+			}
+			cursor = page.get(page.size() - 1).getEntryId();
+		}
+	}
+
+	/**
+	 * Checks that an account's pages hold only its own deposits, each once and
+	 * newest first.
+	 */
+	private static boolean checkEntries(List<HistoryEntry> entries, int accountNumber, int depositCount) {
+		if (entries.size() != depositCount) {
+			System.out.printf("* Account %d has %d entries instead of %d\n", accountNumber, entries.size(),
+					depositCount);
+			return false;
+		}
+		for (int i = 0; i < entries.size(); i++) {
+			HistoryEntry entry = entries.get(i);
+			if (entry.getAccountNumber() != accountNumber) {
+				System.out.printf("* Account %d was given entry %s\n", accountNumber, entry);
+				return false;
+			}
+			long expectedAmount = Money.fromDollars(depositCount - i);
+			if (entry.getAmount() != expectedAmount) {
+				System.out.printf("* Entry %d of account %d is for %s instead of %s\n", i, accountNumber,
+						Money.formatCurrency(entry.getAmount()), Money.formatCurrency(expectedAmount));
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that paging with a cursor from another account's history reads
+	 * nothing.
+	 */
+	private static boolean checkForeignCursors(TransactionEngine engine, TransactionSession session,
+			List<HistoryEntry> otherAccountEntries, int pageSize) {
+		for (HistoryEntry entry : otherAccountEntries) {
+			List<HistoryEntry> page = engine.statementBetween(session, Long.MIN_VALUE, Long.MAX_VALUE,
+					entry.getEntryId(), pageSize);
+			if (!page.isEmpty()) {
+				System.out.printf("* Cursor %d of account %d read %s\n", entry.getEntryId(),
+						entry.getAccountNumber(), page.get(0));
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that paging through the middle half of an account's history by time
+	 * reads exactly the entries made within it.
+	 */
+	private static boolean checkTimeRange(TransactionEngine engine, TransactionSession session,
+			List<HistoryEntry> allEntries, int pageSize) {
+		long fromMillis = allEntries.get(allEntries.size() * 3 / 4).getTimestampMillis();
+		long toMillis = allEntries.get(allEntries.size() / 4).getTimestampMillis();
+		List<HistoryEntry> expected = new ArrayList<>();
+		for (HistoryEntry entry : allEntries) {
+			if (entry.getTimestampMillis() >= fromMillis && entry.getTimestampMillis() < toMillis) {
+				expected.add(entry);
+			}
+		}
+		List<HistoryEntry> entries = readAllPages(engine, session, fromMillis, toMillis, pageSize);
+		if (entries.size() != expected.size()) {
+			System.out.printf("* Read %d entries between %d and %d instead of %d\n", entries.size(), fromMillis,
+					toMillis, expected.size());
+			return false;
+		}
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i).getEntryId() != expected.get(i).getEntryId()) {
+				System.out.printf("* Entry %d between %d and %d is %s instead of %s\n", i, fromMillis, toMillis,
+						entries.get(i), expected.get(i));
+				return false;
+			}
+		}
+		return true;
+	}
+}
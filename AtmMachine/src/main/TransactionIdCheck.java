@@ -0,0 +1,161 @@
+package main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Checks transaction IDs and retry deduplication under contention. First many
+ * threads take IDs from one TransactionIdGenerator at once, and every ID must
+ * be unique, increase within each thread and carry the generator's terminal
+ * ID. Then many threads deposit into one account through a shared
+ * TransactionEngine, every thread sending each deposit under the same
+ * transaction ID at the same moment as if each were a retry of the others, and
+ * the account must end up with each deposit applied exactly once. Exits with
+ * status 1 if any check fails.
+ *
+ * <pre>
+ * java main.TransactionIdCheck [threads] [IDs per thread] [deposits]
+ * </pre>
+ */
+public class TransactionIdCheck {
+	private static final int TERMINAL_ID = 17;
+	private static final int ACCOUNT_NUMBER = 1_000_000;
+	private static final int PIN_NUMBER = 1234;
+	private static final long DEPOSIT_AMOUNT = Money.fromDollars(1);
+
+	public static void main(String[] args) throws Exception {
+		int threadCount = args.length > 0 ? Integer.parseInt(args[0])
+				: Runtime.getRuntime().availableProcessors() * 2;
+		int idsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+		int depositCount = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+		long startTime = System.nanoTime();
+		boolean passed = checkIds(threadCount, idsPerThread);
+		long idNanos = System.nanoTime() - startTime;
+		System.out.printf("%d threads took %d IDs in %d ms (%.0f IDs/s)\n", threadCount,
+				(long) threadCount * idsPerThread, idNanos / 1_000_000,
+				threadCount * idsPerThread / (idNanos / 1e9));
+
+		passed &= checkRetriedDeposits(threadCount, depositCount);
+		System.out.println(passed ? "PASSED" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static boolean checkIds(int threadCount, int idsPerThread) throws InterruptedException {
+		TransactionIdGenerator generator = new TransactionIdGenerator(TERMINAL_ID);
+		long[][] idsByThread = new long[threadCount][idsPerThread];
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			long[] ids = idsByThread[i];
+			threads.add(new Thread(() -> {
+				for (int j = 0; j < ids.length; j++) {
+					ids[j] = generator.nextId();
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		boolean passed = true;
+		long[] allIds = new long[threadCount * idsPerThread];
+		for (int i = 0; i < threadCount; i++) {
+			long[] ids = idsByThread[i];
+			for (int j = 0; j < ids.length; j++) {
+				if (j > 0 && ids[j] <= ids[j - 1]) {
+					System.out.printf("* Thread %d took ID %d after %d\n", i, ids[j], ids[j - 1]);
+					passed = false;
+				}
+				if (TransactionIdGenerator.terminalIdOf(ids[j]) != TERMINAL_ID) {
+					System.out.printf("* ID %d has terminal ID %d\n", ids[j],
+							TransactionIdGenerator.terminalIdOf(ids[j]));
+					passed = false;
+				}
+			}
+			System.arraycopy(ids, 0, allIds, i * idsPerThread, idsPerThread);
+		}
+		Arrays.sort(allIds);
+		for (int i = 1; i < allIds.length; i++) {
+			if (allIds[i] == allIds[i - 1]) {
+				System.out.printf("* ID %d was issued twice\n", allIds[i]);
+				return false;
+			}
+		}
+		long drift = TransactionIdGenerator.millisOf(allIds[allIds.length - 1]) - System.currentTimeMillis();
+		System.out.printf("Newest ID %d is %d ms ahead of the clock\n", allIds[allIds.length - 1],
+				Math.max(drift, 0));
+		return passed;
+	}
+
+	private static boolean checkRetriedDeposits(int threadCount, int depositCount) throws Exception {
+		Path directory = Files.createTempDirectory("transaction-id-check");
+		BankAccount account = new BankAccount(ACCOUNT_NUMBER, PinHash.create(PIN_NUMBER, 1000), 0, "Retry Account");
+		Files.write(directory.resolve("accounts.txt"), List.of(account.toString()));
+		AccountDataStore accountDataStore = new AccountDataStore(directory.resolve("accounts.snapshot").toString(),
+				directory.resolve("accounts.txt").toString(), directory.resolve("accounts.journal").toString());
+		AccountLedger ledger = new AccountLedger(accountDataStore.load(new BankAccountList()), accountDataStore);
+		TransactionEngine engine = new TransactionEngine(ledger);
+		TransactionIdGenerator generator = new TransactionIdGenerator(TERMINAL_ID);
+		long[] depositIds = new long[depositCount];
+		for (int i = 0; i < depositCount; i++) {
+			depositIds[i] = generator.nextId();
+		}
+
+		CyclicBarrier retryTogether = new CyclicBarrier(threadCount);
+		List<Thread> threads = new ArrayList<>();
+		List<Exception> failures = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			threads.add(new Thread(() -> {
+				try {
+					TransactionSession session = new TransactionSession();
+					engine.login(session, ACCOUNT_NUMBER, PIN_NUMBER);
+					for (long depositId : depositIds) {
+						retryTogether.await();
+						engine.deposit(session, DEPOSIT_AMOUNT, depositId);
+					}
+				} catch (Exception e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			}));
+		}
+		long startTime = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+		long balance = ledger.getAccount(ACCOUNT_NUMBER).getActualBalance();
+		ledger.close();
+
+		long duplicates = engine.getMetrics().getEventCount(AtmMetrics.Event.DUPLICATE_TRANSACTION);
+		System.out.printf("%d threads sent %d deposits %d times each in %d ms, %d sends were duplicates\n",
+				threadCount, depositCount, threadCount, elapsedNanos / 1_000_000, duplicates);
+		if (!failures.isEmpty()) {
+			System.out.printf("* Deposit failed: %s\n", failures.get(0));
+			return false;
+		}
+		long expectedBalance = DEPOSIT_AMOUNT * depositCount;
+		if (balance != expectedBalance) {
+			System.out.printf("* Balance is %s but should be %s\n", Money.formatCurrency(balance),
+					Money.formatCurrency(expectedBalance));
+			return false;
+		}
+		if (duplicates != (long) depositCount * (threadCount - 1)) {
+			System.out.printf("* Counted %d duplicates instead of %d\n", duplicates,
+					(long) depositCount * (threadCount - 1));
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,107 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out unique 64-bit transaction IDs that increase with time. Each ID packs,
+ * from the top bit down, a zero sign bit, 41 bits of milliseconds since the
+ * start of 2021, a 10-bit terminal ID and a 12-bit sequence number, so IDs from
+ * different terminals never collide and sort by when they were issued.
+ *
+ * The millisecond and sequence are kept together in one AtomicLong and advanced
+ * by compare-and-set, so any number of threads can take IDs without a lock.
+ * When more than 4096 IDs are taken within one millisecond, or the clock steps
+ * backwards, the sequence carries into the millisecond and the generator runs
+ * slightly ahead of the clock until it catches up, so IDs still only increase.
+ *
+ * The shared generator takes its terminal ID from the atm.terminalId system
+ * property, 0 if it is not set. Every ATM process issuing IDs to the same
+ * accounts needs its own, which the partition nodes enforce.
+ */
+public final class TransactionIdGenerator {
+	public static final int MAX_TERMINAL_ID = (1 << 10) - 1;
+
+	private static final long EPOCH_MILLIS = 1_609_459_200_000L;
+	private static final int SEQUENCE_BITS = 12;
+	private static final int TERMINAL_ID_BITS = 10;
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+	private static final TransactionIdGenerator SHARED = new TransactionIdGenerator(
+			Integer.getInteger("atm.terminalId", 0));
+
+	private final int terminalId;
+	private final long terminalIdBits;
+	private final AtomicLong lastTimeAndSequence;
+
+	/**
+	 * @param terminalId: the ID of the terminal issuing the IDs, from 0 to
+	 *        MAX_TERMINAL_ID.
+	 * @throws IllegalArgumentException if the terminal ID is out of range.
+	 */
+	public TransactionIdGenerator(int terminalId) {
+		if (terminalId < 0 || terminalId > MAX_TERMINAL_ID) {
+			throw new IllegalArgumentException("Terminal ID must be from 0 to " + MAX_TERMINAL_ID);
+		}
+		this.terminalId = terminalId;
+		this.terminalIdBits = (long) terminalId << SEQUENCE_BITS;
+		this.lastTimeAndSequence = new AtomicLong();
+	}
+
+	/**
+	 * Gets the generator every session in the process uses.
+	 *
+	 * @return the shared generator.
+	 */
+	public static TransactionIdGenerator getShared() {
+		return SHARED;
+	}
+
+	public int getTerminalId() {
+		return terminalId;
+	}
+
+	/**
+	 * Takes the next ID.
+	 *
+	 * @return an ID greater than every ID this generator has issued before.
+	 */
+	public long nextId() {
+		long timeAndSequence = nextTimeAndSequence(System.currentTimeMillis() - EPOCH_MILLIS);
+		long millis = timeAndSequence >>> SEQUENCE_BITS;
+		return (millis << (TERMINAL_ID_BITS + SEQUENCE_BITS)) | terminalIdBits | (timeAndSequence & SEQUENCE_MASK);
+	}
+
+	/**
+	 * Gets the time an ID was issued at.
+	 *
+	 * @param transactionId: an ID from any generator.
+	 * @return the time in milliseconds since 1970.
+	 */
+	public static long millisOf(long transactionId) {
+		return (transactionId >>> (TERMINAL_ID_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+	}
+
+	/**
+	 * Gets the terminal an ID was issued by.
+	 *
+	 * @param transactionId: an ID from any generator.
+	 * @return the terminal ID.
+	 */
+	public static int terminalIdOf(long transactionId) {
+		return (int) ((transactionId >>> SEQUENCE_BITS) & MAX_TERMINAL_ID);
+	}
+
+	/**
+	 * Moves to the start of the current millisecond if the clock has passed the
+	 * last one used, or to the next sequence number otherwise.
+	 */
+	private long nextTimeAndSequence(long nowMillis) {
+		long nowStart = nowMillis << SEQUENCE_BITS;
+		while (true) {
+			long last = lastTimeAndSequence.get();
+			long next = nowStart > last ? nowStart : last + 1;
+			if (lastTimeAndSequence.compareAndSet(last, next)) {
+				return next;
+			}
+		}
+	}
+}
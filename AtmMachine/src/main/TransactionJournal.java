@@ -0,0 +1,402 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal holding one fixed-size record per deposit,
+ * withdrawal or release of held funds. Each record carries the balances of the account after the
+ * transaction, so replaying a record is idempotent and the journal can be
+ * replayed on top of any snapshot taken before it was last rotated.
+ *
+ * A transfer is journaled as a TRANSFER_OUT record for the account paying
+ * followed straight away by a TRANSFER_IN record for the account paid. Replay
+ * only applies a TRANSFER_OUT record together with the TRANSFER_IN after it,
+ * so a crash part way through writing a transfer never leaves half of it
+ * applied.
+ *
+ * Appending only copies a record into a pending buffer. Commits write the
+ * pending records and force them to disk, and a thread whose record was already
+ * forced by another thread's commit returns without forcing again, so
+ * concurrent sessions share each disk flush.
+ *
+ * Rotating seals the active journal file under a second name and starts a new
+ * one, letting a snapshot be taken while transactions keep being journaled. The
+ * sealed file is deleted once the snapshot is safely written.
+ *
+ * Version 2 records hold amounts as long cents. Version 1 journals, which held
+ * them as doubles, can still be replayed but must be rotated away before any
+ * new record is appended.
+ */
+public class TransactionJournal implements AutoCloseable {
+	public static final byte DEPOSIT = 1;
+	public static final byte WITHDRAWAL = 2;
+	public static final byte HOLD_RELEASE = 3;
+	public static final byte TRANSFER_OUT = 4;
+	public static final byte TRANSFER_IN = 5;
+
+	private static final int MAGIC = 0x41544d4a;
+	private static final int VERSION = 2;
+	private static final int DOUBLE_AMOUNTS_VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int RECORD_SIZE = 33;
+	private static final int PENDING_RECORDS = 256;
+
+	private final Path activeFile;
+	private final Path sealedFile;
+	private final Object appendLock;
+	private final Object commitLock;
+	private final ByteBuffer pending;
+	private final CRC32 checksum;
+	private FileChannel channel;
+	private int fileVersion;
+	private long recordCount;
+	private long appendedSequence;
+	private long durableSequence;
+
+	public TransactionJournal(String fileName) throws IOException {
+		this.activeFile = Paths.get(fileName);
+		this.sealedFile = Paths.get(fileName + ".sealed");
+		this.appendLock = new Object();
+		this.commitLock = new Object();
+		this.pending = ByteBuffer.allocateDirect(RECORD_SIZE * PENDING_RECORDS);
+		this.checksum = new CRC32();
+		openActiveFile();
+	}
+
+	/**
+	 * Applies every complete record in the sealed and active journal files to the
+	 * matching accounts, oldest first. A record torn by a crash in the middle of a
+	 * write is discarded along with anything after it, and new records are
+	 * appended from that point on.
+	 *
+	 * @param bankAccounts: the accounts loaded from the last snapshot.
+	 * @return the number of records replayed.
+	 */
+	public long replay(BankAccountList bankAccounts) throws IOException {
+		synchronized (commitLock) {
+			synchronized (appendLock) {
+				long replayed = 0;
+				if (Files.exists(sealedFile)) {
+					try (FileChannel sealedChannel = FileChannel.open(sealedFile, StandardOpenOption.READ)) {
+						int sealedVersion = readHeader(sealedChannel);
+						replayed += replayRecords(sealedChannel, sealedVersion, bankAccounts);
+					}
+				}
+				recordCount = replayRecords(channel, fileVersion, bankAccounts);
+				long validEnd = HEADER_SIZE + recordCount * RECORD_SIZE;
+				channel.truncate(validEnd);
+				channel.position(validEnd);
+				return replayed + recordCount;
+			}
+		}
+	}
+
+	/**
+	 * Adds a record of a transaction to the pending records. The record is not
+	 * durable until a commit covering its sequence number returns.
+	 *
+	 * @param transactionType: DEPOSIT, WITHDRAWAL or HOLD_RELEASE.
+	 * @param account:         the account after the transaction was applied.
+	 * @param amount:          the amount of the transaction in cents.
+	 * @return the sequence number of the record.
+	 */
+	public long append(byte transactionType, BankAccount account, long amount) throws IOException {
+		synchronized (appendLock) {
+			checkAppendable();
+			putRecord(transactionType, account, amount);
+			return ++appendedSequence;
+		}
+	}
+
+	/**
+	 * Adds the pair of records of a transfer to the pending records. Both records
+	 * become durable with the same commit.
+	 *
+	 * @param fromAccount: the account paying, after the transfer was applied.
+	 * @param toAccount:   the account paid, after the transfer was applied.
+	 * @param amount:      the amount transferred in cents.
+	 * @return the sequence number of the second record.
+	 */
+	public long appendTransfer(BankAccount fromAccount, BankAccount toAccount, long amount) throws IOException {
+		synchronized (appendLock) {
+			checkAppendable();
+			putRecord(TRANSFER_OUT, fromAccount, amount);
+			putRecord(TRANSFER_IN, toAccount, amount);
+			appendedSequence += 2;
+			return appendedSequence;
+		}
+	}
+
+	private void checkAppendable() throws IOException {
+		if (fileVersion != VERSION) {
+			throw new IOException("The transaction journal must be rotated before it can be appended to");
+		}
+	}
+
+	/**
+	 * Copies a record into the pending records. Called with the append lock held.
+	 */
+	private void putRecord(byte transactionType, BankAccount account, long amount) throws IOException {
+		if (!pending.hasRemaining()) {
+			writePending();
+		}
+		int recordStart = pending.position();
+		pending.putInt(account.getAccountNumber());
+		pending.put(transactionType);
+		pending.putLong(amount);
+		pending.putLong(account.getActualBalance());
+		pending.putLong(account.getAvailableBalance());
+		checksum.reset();
+		checksum.update(pending.duplicate().position(recordStart).limit(pending.position()));
+		pending.putInt((int) checksum.getValue());
+		recordCount++;
+	}
+
+	/**
+	 * Makes every record up to a sequence number durable, writing the pending
+	 * records and forcing them to disk unless another commit already has.
+	 *
+	 * @param sequence: the sequence number returned by append.
+	 */
+	public void commit(long sequence) throws IOException {
+		synchronized (commitLock) {
+			if (durableSequence >= sequence) {
+				return;
+			}
+			long writtenSequence;
+			synchronized (appendLock) {
+				writePending();
+				writtenSequence = appendedSequence;
+			}
+			channel.force(false);
+			durableSequence = writtenSequence;
+		}
+	}
+
+	/**
+	 * Makes every record appended so far durable.
+	 */
+	public void commit() throws IOException {
+		long sequence;
+		synchronized (appendLock) {
+			sequence = appendedSequence;
+		}
+		commit(sequence);
+	}
+
+	/**
+	 * Appends and commits a single transaction record.
+	 *
+	 * @param transactionType: DEPOSIT, WITHDRAWAL or HOLD_RELEASE.
+	 * @param account:         the account after the transaction was applied.
+	 * @param amount:          the amount of the transaction in cents.
+	 */
+	public void record(byte transactionType, BankAccount account, long amount) throws IOException {
+		commit(append(transactionType, account, amount));
+	}
+
+	/**
+	 * Gets the size of the active journal file, counting records not yet written
+	 * out.
+	 *
+	 * @return the size in bytes.
+	 */
+	public long getByteCount() {
+		synchronized (appendLock) {
+			return HEADER_SIZE + recordCount * RECORD_SIZE;
+		}
+	}
+
+	/**
+	 * Seals the active journal file and starts a new, empty one. Every record in
+	 * the sealed file belongs to a transaction that had already been applied to
+	 * its account before the rotation.
+	 */
+	public void rotate() throws IOException {
+		synchronized (commitLock) {
+			synchronized (appendLock) {
+				writePending();
+				channel.force(true);
+				channel.close();
+				Files.move(activeFile, sealedFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				openActiveFile();
+				durableSequence = appendedSequence;
+			}
+		}
+	}
+
+	/**
+	 * Checks if a sealed journal file is waiting for its records to be captured in
+	 * a snapshot.
+	 *
+	 * @return {true} if a sealed file exists; {false} otherwise.
+	 */
+	public boolean hasSealedFile() {
+		return Files.exists(sealedFile);
+	}
+
+	/**
+	 * Deletes the sealed journal file once a snapshot containing the effects of
+	 * its records has been safely written.
+	 */
+	public void deleteSealedFile() throws IOException {
+		Files.deleteIfExists(sealedFile);
+	}
+
+	/**
+	 * Checks if the active journal file is in an older format that must be rotated
+	 * away before new records can be appended.
+	 *
+	 * @return {true} if the journal must be rotated first; {false} otherwise.
+	 */
+	public boolean isOlderFormat() {
+		synchronized (appendLock) {
+			return fileVersion != VERSION;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (commitLock) {
+			synchronized (appendLock) {
+				writePending();
+				channel.force(false);
+				channel.close();
+			}
+		}
+	}
+
+	private void openActiveFile() throws IOException {
+		channel = FileChannel.open(activeFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		recordCount = 0;
+		if (channel.size() < HEADER_SIZE) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			channel.truncate(0);
+			channel.write(header, 0);
+			channel.force(true);
+			fileVersion = VERSION;
+		} else {
+			fileVersion = readHeader(channel);
+		}
+		channel.position(channel.size());
+	}
+
+	private static int readHeader(FileChannel journalChannel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		journalChannel.read(header, 0);
+		header.flip();
+		int magic = header.getInt();
+		int version = header.getInt();
+		if (magic != MAGIC || (version != VERSION && version != DOUBLE_AMOUNTS_VERSION)) {
+			throw new IOException("Unrecognized transaction journal format");
+		}
+		return version;
+	}
+
+	/**
+	 * Applies the records of one journal file, stopping at the end of the file or
+	 * at the first record whose checksum does not match.
+	 *
+	 * @return the number of records applied.
+	 */
+	private long replayRecords(FileChannel journalChannel, int version, BankAccountList bankAccounts)
+			throws IOException {
+		ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * PENDING_RECORDS);
+		long position = HEADER_SIZE;
+		long replayed = 0;
+		boolean hasTransferOut = false;
+		int transferOutAccountNumber = 0;
+		long transferOutActualBalance = 0;
+		long transferOutAvailableBalance = 0;
+		while (true) {
+			readRecords(journalChannel, records, position);
+			if (records.remaining() < RECORD_SIZE) {
+				return replayed;
+			}
+			while (records.remaining() >= RECORD_SIZE) {
+				if (!hasValidChecksum(records)) {
+					return replayed;
+				}
+				int accountNumber = records.getInt();
+				byte transactionType = records.get();
+				records.getLong();
+				long actualBalance = readAmount(records, version);
+				long availableBalance = readAmount(records, version);
+				records.getInt();
+				position += RECORD_SIZE;
+				if (hasTransferOut != (transactionType == TRANSFER_IN)) {
+					return replayed;
+				}
+				if (transactionType == TRANSFER_OUT) {
+					hasTransferOut = true;
+					transferOutAccountNumber = accountNumber;
+					transferOutActualBalance = actualBalance;
+					transferOutAvailableBalance = availableBalance;
+					continue;
+				}
+				if (hasTransferOut) {
+					restoreBalances(bankAccounts, transferOutAccountNumber, transferOutActualBalance,
+							transferOutAvailableBalance);
+					hasTransferOut = false;
+					replayed++;
+				}
+				restoreBalances(bankAccounts, accountNumber, actualBalance, availableBalance);
+				replayed++;
+			}
+		}
+	}
+
+	private static void restoreBalances(BankAccountList bankAccounts, int accountNumber, long actualBalance,
+			long availableBalance) {
+		BankAccount account = bankAccounts.getAccount(accountNumber);
+		if (account != null) {
+			account.restoreBalances(actualBalance, availableBalance);
+		}
+	}
+
+	private void writePending() throws IOException {
+		pending.flip();
+		while (pending.hasRemaining()) {
+			channel.write(pending);
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Fills the buffer with as many bytes of a journal file as are available from a
+	 * position onwards, leaving it ready to be read.
+	 */
+	private static void readRecords(FileChannel journalChannel, ByteBuffer records, long position)
+			throws IOException {
+		records.clear();
+		int bytesRead = 0;
+		while (records.hasRemaining() && bytesRead >= 0) {
+			bytesRead = journalChannel.read(records, position + records.position());
+		}
+		records.flip();
+	}
+
+	private static long readAmount(ByteBuffer records, int version) {
+		if (version == DOUBLE_AMOUNTS_VERSION) {
+			return Math.round(records.getDouble() * 100);
+		}
+		return records.getLong();
+	}
+
+	private boolean hasValidChecksum(ByteBuffer records) {
+		int recordStart = records.position();
+		checksum.reset();
+		checksum.update(records.duplicate().limit(recordStart + RECORD_SIZE - 4));
+		return records.getInt(recordStart + RECORD_SIZE - 4) == (int) checksum.getValue();
+	}
+}
@@ -0,0 +1,15 @@
+package main;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a transaction could not be journaled and was rolled back, so the
+ * accounts are just as they were before it and it is safe to apply it again.
+ */
+public class TransactionNotAppliedException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public TransactionNotAppliedException(Throwable cause) {
+		super("The transaction was not applied: " + cause.getMessage(), cause);
+	}
+}
@@ -0,0 +1,111 @@
+package main;
+
+/**
+ * The result of a request made to the TransactionEngine: its status and, when
+ * an account was involved, the account's balances as they stood right after the
+ * request was processed.
+ */
+public class TransactionResult {
+	private final TransactionStatus status;
+	private final String transactionType;
+	private final int accountNumber;
+	private final long amount;
+	private final long availableBalance;
+	private final long actualBalance;
+
+	private TransactionResult(TransactionStatus status, String transactionType, int accountNumber, long amount,
+			long availableBalance, long actualBalance) {
+		this.status = status;
+		this.transactionType = transactionType;
+		this.accountNumber = accountNumber;
+		this.amount = amount;
+		this.availableBalance = availableBalance;
+		this.actualBalance = actualBalance;
+	}
+
+	/**
+	 * Creates a result that records an account's balances. The caller must hold
+	 * the account's lock so that the two balances are read together.
+	 *
+	 * @param status:          the outcome of the request.
+	 * @param transactionType: the kind of request, such as {"Deposit"}.
+	 * @param account:         the account the request was made against.
+	 * @param amount:          the amount of the request in cents.
+	 * @return the result.
+	 */
+	public static TransactionResult forAccount(TransactionStatus status, String transactionType,
+			BankAccount account, long amount) {
+		return new TransactionResult(status, transactionType, account.getAccountNumber(), amount,
+				account.getAvailableBalance(), account.getActualBalance());
+	}
+
+	/**
+	 * Creates a result from balances reported by whoever processed the request,
+	 * such as the partition node that owns the account.
+	 *
+	 * @param status:           the outcome of the request.
+	 * @param transactionType:  the kind of request, such as {"Deposit"}.
+	 * @param accountNumber:    the account the request was made against.
+	 * @param amount:           the amount of the request in cents.
+	 * @param availableBalance: the available balance right after the request.
+	 * @param actualBalance:    the actual balance right after the request.
+	 * @return the result.
+	 */
+	public static TransactionResult forBalances(TransactionStatus status, String transactionType,
+			int accountNumber, long amount, long availableBalance, long actualBalance) {
+		return new TransactionResult(status, transactionType, accountNumber, amount, availableBalance,
+				actualBalance);
+	}
+
+	/**
+	 * Creates a result for a request that did not touch any account's balances,
+	 * such as one rejected before reaching an account.
+	 *
+	 * @param status:          the outcome of the request.
+	 * @param transactionType: the kind of request, such as {"Deposit"}.
+	 * @return the result.
+	 */
+	public static TransactionResult withoutAccount(TransactionStatus status, String transactionType) {
+		return new TransactionResult(status, transactionType, 0, 0, 0, 0);
+	}
+
+	public boolean isApproved() {
+		return status == TransactionStatus.APPROVED;
+	}
+
+	public TransactionStatus getStatus() {
+		return status;
+	}
+
+	public String getTransactionType() {
+		return transactionType;
+	}
+
+	public int getAccountNumber() {
+		return accountNumber;
+	}
+
+	public long getAmount() {
+		return amount;
+	}
+
+	public long getAvailableBalance() {
+		return availableBalance;
+	}
+
+	public long getActualBalance() {
+		return actualBalance;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(64);
+		sb.append(transactionType).append(' ').append(status);
+		if (accountNumber != 0) {
+			sb.append(" account ").append(accountNumber).append(" available ");
+			Money.appendCurrency(sb, availableBalance).append(" total ");
+			Money.appendCurrency(sb, actualBalance);
+		}
+		return sb.toString();
+	}
+}
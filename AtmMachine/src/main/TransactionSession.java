@@ -0,0 +1,58 @@
+package main;
+
+/**
+ * The login state of one client of the TransactionEngine, such as a terminal
+ * or a scripted client. A session is used by one thread at a time.
+ */
+public class TransactionSession {
+	private BankAccount currentAccount;
+	private boolean isAuthenticated;
+	private int failedPinAttempts;
+
+	/**
+	 * Checks if the session is logged into an account.
+	 *
+	 * @return {true} if an account has been logged into; {false} otherwise.
+	 */
+	public boolean isLoggedIn() {
+		return currentAccount != null && isAuthenticated;
+	}
+
+	/**
+	 * Gets the account the session is logged into.
+	 *
+	 * @return the current account, or null if not logged in.
+	 */
+	public BankAccount getCurrentAccount() {
+		return isLoggedIn() ? currentAccount : null;
+	}
+
+	void logIn(BankAccount account) {
+		currentAccount = account;
+		isAuthenticated = true;
+		failedPinAttempts = 0;
+	}
+
+	/**
+	 * Records a failed PIN attempt against an account, starting the count over if
+	 * the attempt is against a different account than the last one. Accounts are
+	 * compared by number, since an account list may hand out a new BankAccount for
+	 * the same account on every lookup.
+	 *
+	 * @return the number of consecutive failed attempts against the account.
+	 */
+	int recordFailedPinAttempt(BankAccount account) {
+		if (currentAccount == null || currentAccount.getAccountNumber() != account.getAccountNumber()) {
+			currentAccount = account;
+			failedPinAttempts = 0;
+		}
+		isAuthenticated = false;
+		return ++failedPinAttempts;
+	}
+
+	void logOut() {
+		currentAccount = null;
+		isAuthenticated = false;
+		failedPinAttempts = 0;
+	}
+}
@@ -0,0 +1,21 @@
+package main;
+
+/**
+ * The outcome of a request made to the TransactionEngine.
+ */
+public enum TransactionStatus {
+	APPROVED,
+	ACCOUNT_NOT_FOUND,
+	INCORRECT_PIN,
+	TOO_MANY_ATTEMPTS,
+	NOT_LOGGED_IN,
+	INVALID_AMOUNT,
+	INSUFFICIENT_FUNDS,
+	DAILY_LIMIT_EXCEEDED,
+	WITHDRAWAL_RATE_EXCEEDED,
+	SAME_ACCOUNT,
+	CROSS_PARTITION_TRANSFER,
+	PARTITION_UNAVAILABLE,
+	TRANSACTION_ID_CONFLICT,
+	INVALID_RECORD
+}
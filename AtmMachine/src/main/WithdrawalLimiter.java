@@ -0,0 +1,246 @@
+package main;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Enforces a daily withdrawal limit per account and a velocity rule per card:
+ * at most a number of withdrawals within a sliding window of time. Both checks
+ * cost the same however many accounts and cards there are.
+ *
+ * The amount withdrawn today is kept per account along with the day it was
+ * counted on. A count from an earlier day is treated as zero and overwritten by
+ * the next withdrawal, so counters start over at midnight without ever being
+ * swept.
+ *
+ * Each card's recent withdrawal times are kept in a small ring in a table with
+ * a fixed number of entries, so the memory used does not grow with the number
+ * of cards. A card may use any of four entries in its set of the table, and a
+ * new card takes the entry of a card with no withdrawals in the window. Only
+ * if all four cards in a set have withdrawn within the window is the least
+ * recently used one forgotten.
+ *
+ * There is no lock over the whole limiter. The daily totals are split into
+ * stripes by account number, each with its own lock, and each set of the card
+ * table is guarded by one of a fixed array of locks, so withdrawals from
+ * unrelated accounts and cards seldom wait for one another. A withdrawal takes
+ * its account's stripe lock and then its card's set lock, always in that
+ * order.
+ */
+public class WithdrawalLimiter {
+	private static final int WAYS = 4;
+	private static final int DAILY_STRIPES = 64;
+	private static final int MAX_VELOCITY_LOCKS = 1024;
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+	private static final int NO_TIME = 0;
+
+	private final long dailyLimit;
+	private final int maxWithdrawals;
+	private final long windowSeconds;
+	private final long startMillis;
+	private final DailyTotals[] dailyTotals;
+	private final int setMask;
+	private final Object[] velocityLocks;
+	private final int[] cardNumbers;
+	private final int[] nextTimeIndexes;
+	private final int[] withdrawalTimes;
+
+	/**
+	 * @param dailyLimit: the most an account may withdraw in a day, in cents.
+	 * @param maxWithdrawals: the most withdrawals a card may make in a window.
+	 * @param windowMillis: the length of the velocity window.
+	 * @param cardCapacity: the number of cards whose recent withdrawals are
+	 *        tracked at once, rounded up to a power of two.
+	 */
+	public WithdrawalLimiter(long dailyLimit, int maxWithdrawals, long windowMillis, int cardCapacity) {
+		if (maxWithdrawals < 1) {
+			throw new IllegalArgumentException("At least one withdrawal must be allowed per window");
+		}
+		int entryCount = Integer.highestOneBit(Math.max(cardCapacity - 1, WAYS)) << 1;
+		int setCount = entryCount / WAYS;
+		this.dailyLimit = dailyLimit;
+		this.maxWithdrawals = maxWithdrawals;
+		this.windowSeconds = Math.max(windowMillis / 1000, 1);
+		this.startMillis = System.currentTimeMillis();
+		this.dailyTotals = new DailyTotals[DAILY_STRIPES];
+		for (int i = 0; i < DAILY_STRIPES; i++) {
+			dailyTotals[i] = new DailyTotals();
+		}
+		this.setMask = setCount - 1;
+		this.velocityLocks = new Object[Math.min(setCount, MAX_VELOCITY_LOCKS)];
+		for (int i = 0; i < velocityLocks.length; i++) {
+			velocityLocks[i] = new Object();
+		}
+		this.cardNumbers = new int[entryCount];
+		this.nextTimeIndexes = new int[entryCount];
+		this.withdrawalTimes = new int[entryCount * maxWithdrawals];
+	}
+
+	/**
+	 * Checks a withdrawal against the limits and, if it is within them, counts it.
+	 * The caller must hold the account's lock and go on to make the withdrawal.
+	 *
+	 * @param account: the account being withdrawn from.
+	 * @param amount: the amount in cents.
+	 * @return APPROVED, DAILY_LIMIT_EXCEEDED or WITHDRAWAL_RATE_EXCEEDED.
+	 */
+	public TransactionStatus checkAndRecordWithdrawal(BankAccount account, long amount) {
+		long nowMillis = System.currentTimeMillis();
+		int today = dayOf(nowMillis);
+		int accountNumber = account.getAccountNumber();
+		DailyTotals totals = dailyTotals[mix(accountNumber) & (DAILY_STRIPES - 1)];
+		synchronized (totals) {
+			int dailySlot = totals.slotFor(accountNumber);
+			long withdrawn = totals.countedDays[dailySlot] == today ? totals.withdrawnToday[dailySlot] : 0;
+			if (withdrawn + amount > dailyLimit) {
+				return TransactionStatus.DAILY_LIMIT_EXCEEDED;
+			}
+			if (!checkAndRecordCardWithdrawal(account.getCardNumber(), nowMillis)) {
+				return TransactionStatus.WITHDRAWAL_RATE_EXCEEDED;
+			}
+			totals.countedDays[dailySlot] = today;
+			totals.withdrawnToday[dailySlot] = withdrawn + amount;
+			return TransactionStatus.APPROVED;
+		}
+	}
+
+	/**
+	 * Takes back a withdrawal counted by checkAndRecordWithdrawal that was not
+	 * made after all, such as because it could not be journaled. The caller must
+	 * still hold the account's lock it held when the withdrawal was counted.
+	 *
+	 * @param account: the account the withdrawal was counted against.
+	 * @param amount: the amount counted in cents.
+	 */
+	public void cancelWithdrawal(BankAccount account, long amount) {
+		int today = dayOf(System.currentTimeMillis());
+		int accountNumber = account.getAccountNumber();
+		DailyTotals totals = dailyTotals[mix(accountNumber) & (DAILY_STRIPES - 1)];
+		synchronized (totals) {
+			int dailySlot = totals.slotFor(accountNumber);
+			if (totals.countedDays[dailySlot] == today) {
+				totals.withdrawnToday[dailySlot] = Math.max(totals.withdrawnToday[dailySlot] - amount, 0);
+			}
+			cancelCardWithdrawal(account.getCardNumber());
+		}
+	}
+
+	/**
+	 * Forgets the most recent withdrawal time of a card, if the card still has an
+	 * entry in its set of the table.
+	 */
+	private void cancelCardWithdrawal(int cardNumber) {
+		int set = mix(cardNumber) & setMask;
+		synchronized (velocityLocks[set & (velocityLocks.length - 1)]) {
+			for (int entry = set * WAYS; entry < (set + 1) * WAYS; entry++) {
+				if (cardNumbers[entry] == cardNumber && lastWithdrawalTime(entry) != NO_TIME) {
+					int lastTimeIndex = (nextTimeIndexes[entry] + maxWithdrawals - 1) % maxWithdrawals;
+					withdrawalTimes[entry * maxWithdrawals + lastTimeIndex] = NO_TIME;
+					nextTimeIndexes[entry] = lastTimeIndex;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts a withdrawal against the card's velocity window unless the window is
+	 * already full, holding only the lock of the card's set of the table.
+	 *
+	 * @return {true} if the withdrawal was within the window's limit; {false}
+	 *         otherwise.
+	 */
+	private boolean checkAndRecordCardWithdrawal(int cardNumber, long nowMillis) {
+		int now = (int) ((nowMillis - startMillis) / 1000) + 1;
+		int set = mix(cardNumber) & setMask;
+		synchronized (velocityLocks[set & (velocityLocks.length - 1)]) {
+			int entry = velocityEntryFor(cardNumber, set, now);
+			int oldestTimeIndex = entry * maxWithdrawals + nextTimeIndexes[entry];
+			int oldestTime = withdrawalTimes[oldestTimeIndex];
+			if (oldestTime != NO_TIME && now - oldestTime < windowSeconds) {
+				return false;
+			}
+			withdrawalTimes[oldestTimeIndex] = now;
+			nextTimeIndexes[entry] = (nextTimeIndexes[entry] + 1) % maxWithdrawals;
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the local day a time falls on, as a number of days since the epoch.
+	 */
+	private static int dayOf(long millis) {
+		return (int) Math.floorDiv(millis + TimeZone.getDefault().getOffset(millis), MILLIS_PER_DAY);
+	}
+
+	/**
+	 * Finds the card's entry in its set, or makes one by taking over the entry of
+	 * a card with no withdrawals in the window, or failing that the entry whose
+	 * last withdrawal is the oldest.
+	 */
+	private int velocityEntryFor(int cardNumber, int set, int now) {
+		int firstEntry = set * WAYS;
+		int replacement = firstEntry;
+		int replacementLastTime = Integer.MAX_VALUE;
+		for (int entry = firstEntry; entry < firstEntry + WAYS; entry++) {
+			int lastTime = lastWithdrawalTime(entry);
+			if (lastTime != NO_TIME && cardNumbers[entry] == cardNumber) {
+				return entry;
+			}
+			boolean isIdle = lastTime == NO_TIME || now - lastTime >= windowSeconds;
+			int rank = isIdle ? Integer.MIN_VALUE : lastTime;
+			if (rank < replacementLastTime) {
+				replacement = entry;
+				replacementLastTime = rank;
+			}
+		}
+		cardNumbers[replacement] = cardNumber;
+		nextTimeIndexes[replacement] = 0;
+		int firstTimeIndex = replacement * maxWithdrawals;
+		for (int i = 0; i < maxWithdrawals; i++) {
+			withdrawalTimes[firstTimeIndex + i] = NO_TIME;
+		}
+		return replacement;
+	}
+
+	private int lastWithdrawalTime(int entry) {
+		int lastTimeIndex = (nextTimeIndexes[entry] + maxWithdrawals - 1) % maxWithdrawals;
+		return withdrawalTimes[entry * maxWithdrawals + lastTimeIndex];
+	}
+
+	private static int mix(int value) {
+		value *= 0x9e3779b9;
+		return value ^ (value >>> 16);
+	}
+
+	/**
+	 * The amounts withdrawn today by the accounts of one stripe, along with the
+	 * day each was counted on. Guarded by its own monitor.
+	 */
+	private static final class DailyTotals {
+		private final IntIndexMap index;
+		private int[] countedDays;
+		private long[] withdrawnToday;
+		private int count;
+
+		private DailyTotals() {
+			this.index = new IntIndexMap();
+			this.countedDays = new int[16];
+			this.withdrawnToday = new long[16];
+		}
+
+		private int slotFor(int accountNumber) {
+			int slot = index.get(accountNumber);
+			if (slot >= 0) {
+				return slot;
+			}
+			slot = count++;
+			if (slot == countedDays.length) {
+				countedDays = Arrays.copyOf(countedDays, slot * 2);
+				withdrawnToday = Arrays.copyOf(withdrawnToday, slot * 2);
+			}
+			index.put(accountNumber, slot);
+			return slot;
+		}
+	}
+}